@@ -13,13 +13,89 @@ repositories {
     mavenCentral()
 }
 
+sourceSets {
+    // classes needing a newer JDK, loaded reflectively so the library still runs on Java 8
+    create("java17") {
+        compileClasspath += sourceSets.main.get().output
+    }
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output + sourceSets["java17"].output
+        // benchmarks run against the same images used by the tests
+        resources.srcDir("src/test/resources")
+    }
+}
+
+val jmhImplementation by configurations.getting
+val jmhAnnotationProcessor by configurations.getting
+
 dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.10.1")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.10.1")
+
+    jmhImplementation("org.openjdk.jmh:jmh-core:1.37")
+    jmhAnnotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
+val java17Compiler = javaToolchains.compilerFor {
+    languageVersion.set(JavaLanguageVersion.of(17))
+}
+val java17Launcher = javaToolchains.launcherFor {
+    languageVersion.set(JavaLanguageVersion.of(17))
+}
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+
 tasks {
     test {
         useJUnitPlatform()
     }
+
+    named<JavaCompile>("compileJava17Java") {
+        javaCompiler.set(java17Compiler)
+        sourceCompatibility = "17"
+        targetCompatibility = "17"
+        options.compilerArgs.addAll(vectorModule)
+    }
+
+    jar {
+        from(sourceSets["java17"].output)
+    }
+
+    // Runs the tests again on JDK 17, with the Vector API filter handler
+    val testJava17 = register<Test>("testJava17") {
+        description = "Runs the tests on JDK 17 with the jdk.incubator.vector module."
+        group = "verification"
+        useJUnitPlatform()
+        testClassesDirs = sourceSets.test.get().output.classesDirs
+        classpath = sourceSets.test.get().runtimeClasspath + sourceSets["java17"].output
+        javaLauncher.set(java17Launcher)
+        jvmArgs(vectorModule)
+    }
+
+    check {
+        dependsOn(testJava17)
+    }
+
+    // Usage: ./gradlew jmh -Pjmh="DecodeBenchmark -p image=optimizer/lena.png"
+    // Any JMH command line option can be passed through the 'jmh' property,
+    // results are written to build/reports/jmh/results.json
+    // Add -PjmhJava17 to run on JDK 17 with the Vector API filter handler.
+    register<JavaExec>("jmh") {
+        group = "benchmark"
+        description = "Runs the JMH benchmarks."
+        classpath = sourceSets["jmh"].runtimeClasspath
+        mainClass.set("org.openjdk.jmh.Main")
+        if (project.hasProperty("jmhJava17")) {
+            javaLauncher.set(java17Launcher)
+            jvmArgs(vectorModule)
+        }
+
+        val resultFile = layout.buildDirectory.file("reports/jmh/results.json")
+        val options = (project.findProperty("jmh") as String?)?.trim()?.split(Regex("\\s+")).orEmpty()
+        args(listOf("-prof", "gc", "-rf", "json", "-rff", resultFile.get().asFile.path) + options)
+
+        doFirst {
+            resultFile.get().asFile.parentFile.mkdirs()
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,187 @@
+package me.andreroldan.featherpng.processing;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import me.andreroldan.featherpng.PngException;
+import me.andreroldan.featherpng.PngFilterType;
+
+/**
+ * Png filtering and defiltering using the (incubating) Vector API, needs
+ * JDK 17+ running with {@code --add-modules jdk.incubator.vector}. It is
+ * picked up by {@link me.andreroldan.featherpng.PngProcessor} whenever it
+ * can be loaded, unless the {@code featherpng.vector} system property is
+ * set to {@code false}.
+ *
+ * <p>UP, AVERAGE and PAETH filtering are vectorized, there is no
+ * dependency between the bytes of a line so 8 bytes are filtered at a
+ * time. Defiltering depends on the pixel just decoded, so PAETH is
+ * vectorized across the channels of one pixel at a time, the way libpng
+ * does it, which only pays off from 3 bytes per pixel on. AVERAGE
+ * defiltering is cheap enough that doing the same only breaks even, so it
+ * is left to the scalar kernels of {@link PngtasticFilterHandler}, along
+ * with everything else.</p>
+ *
+ * <p>Bytes are widened to 16 bit lanes for the arithmetic, and the line
+ * being defiltered is read from a copy, so that loading the next pixel
+ * never depends on the store of the previous one.</p>
+ */
+public class VectorFilterHandler extends PngtasticFilterHandler {
+	private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Byte> BYTES_64 = ByteVector.SPECIES_64;
+	private static final VectorSpecies<Short> SHORTS_128 = ShortVector.SPECIES_128;
+	private static final int LANES = BYTES_64.length();
+
+	/* the filtered bytes of the line being defiltered */
+	private final ThreadLocal<byte[]> copies = ThreadLocal.withInitial(() -> new byte[0]);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void filter(byte[] line, int offset, int length, byte[] previousLine, int previousOffset, int sampleBitCount) throws PngException {
+		final int bpp = PngFilterKernels.bytesPerPixel(sampleBitCount);
+		switch (PngFilterType.forValue(line[offset])) {
+			case UP:
+				up(line, offset, length, previousLine, previousOffset);
+				break;
+			case AVERAGE:
+				average(line, offset, length, previousLine, previousOffset, bpp);
+				break;
+			case PAETH:
+				paeth(line, offset, length, previousLine, previousOffset, bpp);
+				break;
+			default:
+				super.filter(line, offset, length, previousLine, previousOffset, sampleBitCount);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deFilter(byte[] line, int offset, int length, byte[] previousLine, int previousOffset, int sampleBitCount) throws PngException {
+		final int bpp = PngFilterKernels.bytesPerPixel(sampleBitCount);
+		final PngFilterType filterType = PngFilterType.forValue(line[offset]);
+		if (filterType == PngFilterType.UP) {
+			unUp(line, offset, length, previousLine, previousOffset);
+		} else if (filterType == PngFilterType.PAETH && bpp >= 3) {
+			unPaeth(line, offset, length, previousLine, previousOffset, bpp);
+		} else {
+			super.deFilter(line, offset, length, previousLine, previousOffset, sampleBitCount);
+		}
+	}
+
+	/* */
+	private static void up(byte[] line, int offset, int length, byte[] previousLine, int previousOffset) {
+		int x = 1;
+		for (final int bound = 1 + BYTES.loopBound(length - 1); x < bound; x += BYTES.length()) {
+			ByteVector.fromArray(BYTES, line, offset + x).sub(ByteVector.fromArray(BYTES, previousLine, previousOffset + x)).intoArray(line, offset + x);
+		}
+		for (; x < length; x++) {
+			line[offset + x] -= previousLine[previousOffset + x];
+		}
+	}
+
+	/* right to left, see PngFilterKernels */
+	private static void average(byte[] line, int offset, int length, byte[] previousLine, int previousOffset, int bpp) {
+		int x = length - LANES;
+		for (; x > bpp; x -= LANES) {
+			final ShortVector a = unsigned(line, offset + x - bpp);
+			final ShortVector b = unsigned(previousLine, previousOffset + x);
+			final ShortVector average = a.add(b).lanewise(VectorOperators.LSHR, 1);
+			ByteVector.fromArray(BYTES_64, line, offset + x).sub(narrow(average)).intoArray(line, offset + x);
+		}
+		for (x = Math.min(x + LANES, length) - 1; x > 0; x--) {
+			final int a = (x > bpp) ? line[offset + x - bpp] & 0xff : 0;
+			line[offset + x] -= (a + (previousLine[previousOffset + x] & 0xff)) >>> 1;
+		}
+	}
+
+	/* right to left, see PngFilterKernels */
+	private static void paeth(byte[] line, int offset, int length, byte[] previousLine, int previousOffset, int bpp) {
+		int x = length - LANES;
+		for (; x > bpp; x -= LANES) {
+			final ShortVector a = unsigned(line, offset + x - bpp);
+			final ShortVector b = unsigned(previousLine, previousOffset + x);
+			final ShortVector c = unsigned(previousLine, previousOffset + x - bpp);
+			ByteVector.fromArray(BYTES_64, line, offset + x).sub(narrow(paethPredictor(a, b, c))).intoArray(line, offset + x);
+		}
+		for (x = Math.min(x + LANES, length) - 1; x > 0; x--) {
+			final int a = (x > bpp) ? line[offset + x - bpp] & 0xff : 0;
+			final int c = (x > bpp) ? previousLine[previousOffset + x - bpp] & 0xff : 0;
+			line[offset + x] -= PngFilterKernels.paethPredictor(a, previousLine[previousOffset + x] & 0xff, c);
+		}
+	}
+
+	/* */
+	private static void unUp(byte[] line, int offset, int length, byte[] previousLine, int previousOffset) {
+		int x = 1;
+		for (final int bound = 1 + BYTES.loopBound(length - 1); x < bound; x += BYTES.length()) {
+			ByteVector.fromArray(BYTES, line, offset + x).add(ByteVector.fromArray(BYTES, previousLine, previousOffset + x)).intoArray(line, offset + x);
+		}
+		for (; x < length; x++) {
+			line[offset + x] += previousLine[previousOffset + x];
+		}
+	}
+
+	/* one pixel at a time, the lanes past the pixel are written back unchanged */
+	private void unPaeth(byte[] line, int offset, int length, byte[] previousLine, int previousOffset, int bpp) {
+		final byte[] filtered = copy(line, offset, length);
+		final VectorMask<Byte> pixel = BYTES_64.indexInRange(0, bpp);
+
+		ShortVector a = ShortVector.zero(SHORTS_128);
+		ShortVector c = a;
+		int x = 1;
+		for (; x + LANES <= length; x += bpp) {
+			final ByteVector raw = ByteVector.fromArray(BYTES_64, filtered, x);
+			final ShortVector b = unsigned(previousLine, previousOffset + x);
+			a = unsigned(raw).add(paethPredictor(a, b, c)).and((short) 0xff);
+			raw.blend(narrow(a), pixel).intoArray(line, offset + x);
+			c = b;
+		}
+		for (; x < length; x++) {
+			final int left = (x > bpp) ? line[offset + x - bpp] & 0xff : 0;
+			final int upperLeft = (x > bpp) ? previousLine[previousOffset + x - bpp] & 0xff : 0;
+			line[offset + x] += PngFilterKernels.paethPredictor(left, previousLine[previousOffset + x] & 0xff, upperLeft);
+		}
+	}
+
+	/* see PngFilterKernels#paethPredictor(int, int, int) */
+	private static ShortVector paethPredictor(ShortVector a, ShortVector b, ShortVector c) {
+		final ShortVector pa = b.sub(c).abs();
+		final ShortVector pb = a.sub(c).abs();
+		final ShortVector pc = a.add(b).sub(c).sub(c).abs();
+
+		final VectorMask<Short> useA = pa.compare(VectorOperators.LE, pb).and(pa.compare(VectorOperators.LE, pc));
+		return c.blend(b, pb.compare(VectorOperators.LE, pc)).blend(a, useA);
+	}
+
+	/* */
+	private byte[] copy(byte[] line, int offset, int length) {
+		byte[] copy = copies.get();
+		if (copy.length < length) {
+			copy = new byte[length];
+			copies.set(copy);
+		}
+		System.arraycopy(line, offset, copy, 0, length);
+		return copy;
+	}
+
+	/* */
+	private static ShortVector unsigned(byte[] bytes, int offset) {
+		return unsigned(ByteVector.fromArray(BYTES_64, bytes, offset));
+	}
+
+	/* */
+	private static ShortVector unsigned(ByteVector bytes) {
+		return ((ShortVector) bytes.convertShape(VectorOperators.B2S, SHORTS_128, 0)).and((short) 0xff);
+	}
+
+	/* */
+	private static ByteVector narrow(ShortVector shorts) {
+		return (ByteVector) shorts.convertShape(VectorOperators.S2B, BYTES_64, 0);
+	}
+}
@@ -0,0 +1,73 @@
+package me.andreroldan.featherpng;
+
+import me.andreroldan.featherpng.processing.PngByteArrayOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Loads the benchmark images from the classpath, they are the same
+ * images used by the tests (see src/test/resources)
+ */
+public final class BenchmarkImages {
+
+	private BenchmarkImages() {
+	}
+
+	/** */
+	public static byte[] bytes(String name) throws IOException {
+		try (final InputStream ins = BenchmarkImages.class.getResourceAsStream("/" + name)) {
+			if (ins == null) {
+				throw new IOException("Missing benchmark image " + name);
+			}
+
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] block = new byte[8192];
+			int readLength;
+			while ((readLength = ins.read(block)) != -1) {
+				out.write(block, 0, readLength);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	/** */
+	public static PngImage image(String name) throws IOException {
+		return PngImage.read(bytes(name));
+	}
+
+	/**
+	 * The size of the raw (unfiltered, uncompressed) pixel data of
+	 * the given image, this is what throughput is measured against.
+	 */
+	public static long rawSize(PngImage image) {
+		final long rowBytes = (image.width() * image.getSampleBitCount() + 7) / 8;
+		return rowBytes * image.height();
+	}
+
+	/**
+	 * The uncompressed image data of the given image, as stored
+	 * in its IDAT chunks (filtered and possibly interlaced)
+	 */
+	public static PngByteArrayOutputStream inflated(PngImage image) throws IOException {
+		return new PngReader().inflate(new PngByteArrayOutputStream(image.getImageData()));
+	}
+
+	/**
+	 * The defiltered and deinterlaced scanlines of the given image,
+	 * each one still starts with its filter type byte
+	 */
+	public static List<byte[]> scanlines(PngImage image) throws IOException {
+		final PngProcessor processor = new PngReader();
+		final PngByteArrayOutputStream inflated = inflated(image);
+		final int sampleBitCount = image.getSampleBitCount();
+		if (image.getInterlace() == 1) {
+			return processor.pngInterlaceHandler.deInterlace((int) image.width(), (int) image.height(), sampleBitCount, inflated);
+		}
+
+		final int scanlineLength = (int) ((image.width() * sampleBitCount + 7) / 8) + 1;
+		return processor.getScanlines(inflated, sampleBitCount, scanlineLength, image.height());
+	}
+}
@@ -0,0 +1,56 @@
+package me.andreroldan.featherpng;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link PngColorCounter#count}, greyscale images are
+ * left out since the color counter doesn't support them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColorCounterBenchmark {
+
+	@Param({
+			"optimizer/amigaball.png",
+			"optimizer/lena.png",
+			"optimizer/phoenix.png",
+			"optimizer/reference.png",
+			"optimizer/pngsuite/basn2c16.png",
+			"optimizer/pngsuite/basn6a08.png"
+	})
+	public String image;
+
+	private PngImage png;
+	private long rawSize;
+
+	@Setup
+	public void setup() throws IOException {
+		png = BenchmarkImages.image(image);
+		rawSize = BenchmarkImages.rawSize(png);
+	}
+
+	@Benchmark
+	public PngColorCounter.ColorCounterResult count(RawBytes raw) throws IOException {
+		raw.add(rawSize);
+		final PngColorCounter counter = new PngColorCounter();
+		counter.count(png);
+		return counter.getResult();
+	}
+}
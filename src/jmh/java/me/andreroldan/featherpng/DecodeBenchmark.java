@@ -0,0 +1,93 @@
+package me.andreroldan.featherpng;
+
+import me.andreroldan.featherpng.processing.PngByteArrayOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the decoding path: chunk parsing, inflating,
+ * defiltering and the conversion to RGBA8.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+	@Param({
+			"optimizer/amigaball.png",
+			"optimizer/edinburgh-castle.png",
+			"optimizer/lena.png",
+			"optimizer/phoenix.png",
+			"optimizer/interlaced.png",
+			"optimizer/pngsuite/basn0g16.png",
+			"optimizer/pngsuite/basn3p02.png",
+			"optimizer/pngsuite/basn6a16.png",
+			"optimizer/pngsuite/basi2c08.png"
+	})
+	public String image;
+
+	private byte[] bytes;
+	private PngImage png;
+	private long rawSize;
+
+	private PngProcessor processor;
+	private PngByteArrayOutputStream compressed;
+	private PngByteArrayOutputStream inflated;
+
+	@Setup
+	public void setup() throws IOException {
+		bytes = BenchmarkImages.bytes(image);
+		png = PngImage.read(bytes);
+		rawSize = BenchmarkImages.rawSize(png);
+
+		processor = new PngReader();
+		compressed = new PngByteArrayOutputStream(png.getImageData());
+		inflated = processor.inflate(compressed);
+	}
+
+	@Benchmark
+	public PngImage read(RawBytes raw) throws IOException {
+		raw.add(rawSize);
+		return PngImage.read(bytes);
+	}
+
+	@Benchmark
+	public PngByteArrayOutputStream inflate(RawBytes raw) throws IOException {
+		raw.add(rawSize);
+		return processor.inflate(compressed);
+	}
+
+	@Benchmark
+	public List<byte[]> getScanlines(RawBytes raw) {
+		raw.add(rawSize);
+		final int sampleBitCount = png.getSampleBitCount();
+		if (png.getInterlace() == 1) {
+			return processor.pngInterlaceHandler.deInterlace((int) png.width(), (int) png.height(), sampleBitCount, inflated);
+		}
+
+		final int scanlineLength = (int) ((png.width() * sampleBitCount + 7) / 8) + 1;
+		return processor.getScanlines(inflated, sampleBitCount, scanlineLength, png.height());
+	}
+
+	@Benchmark
+	public byte[] readRGBA8(RawBytes raw) throws IOException {
+		raw.add(rawSize);
+		return new PngReader().readRGBA8(png);
+	}
+}
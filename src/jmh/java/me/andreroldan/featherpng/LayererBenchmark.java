@@ -0,0 +1,62 @@
+package me.andreroldan.featherpng;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link PngLayerer#layer} on the layerer test images,
+ * the base image is one of the backgrounds and the layer an RGBA
+ * sprite of the same size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayererBenchmark {
+
+	@Param({
+			"layerer/bg1/000#robotBG-11.png",
+			"layerer/bg1/001#robotBG-12.png"
+	})
+	public String base;
+
+	@Param({
+			"layerer/yellow/000#Mouth/000#yellow_mouth-03.png",
+			"layerer/yellow/003#01Body/000#yellow_body-04.png"
+	})
+	public String layer;
+
+	@Param({ "6", "9" })
+	public int compressionLevel;
+
+	private PngImage baseImage;
+	private PngImage layerImage;
+	private long rawSize;
+
+	@Setup
+	public void setup() throws IOException {
+		baseImage = BenchmarkImages.image(base);
+		layerImage = BenchmarkImages.image(layer);
+		rawSize = BenchmarkImages.rawSize(layerImage);
+	}
+
+	@Benchmark
+	public PngImage layer(RawBytes raw) throws IOException {
+		raw.add(rawSize);
+		return new PngLayerer().layer(baseImage, layerImage, compressionLevel, false);
+	}
+}
@@ -0,0 +1,28 @@
+package me.andreroldan.featherpng;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary JMH counter reporting the throughput of a benchmark in
+ * bytes of raw pixel data per second, so results for images of
+ * different sizes can be compared with each other.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class RawBytes {
+	public long rawBytes;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		rawBytes = 0;
+	}
+
+	/** */
+	public void add(long bytes) {
+		rawBytes += bytes;
+	}
+}
@@ -0,0 +1,70 @@
+package me.andreroldan.featherpng.processing;
+
+import me.andreroldan.featherpng.BenchmarkImages;
+import me.andreroldan.featherpng.PngImage;
+import me.andreroldan.featherpng.RawBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link PngtasticCompressionHandler#deflate} on the image data
+ * as found in the images, a compression level of -1 stands for the
+ * brute force trial of all compression levels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CompressionBenchmark {
+
+	@Param({
+			"optimizer/amigaball.png",
+			"optimizer/edinburgh-castle.png",
+			"optimizer/lena.png",
+			"optimizer/phoenix.png"
+	})
+	public String image;
+
+	@Param({ "1", "6", "9", "-1" })
+	public int compressionLevel;
+
+	@Param({ "false", "true" })
+	public boolean concurrent;
+
+	/** Whether to search the compression levels (see DeflateSearch) instead of trying them all */
+	@Param({ "false" })
+	public boolean search;
+
+	private PngCompressionHandler compressionHandler;
+
+	private PngByteArrayOutputStream inflated;
+	private long rawSize;
+
+	@Setup
+	public void setup() throws IOException {
+		compressionHandler = new PngtasticCompressionHandler(PngExecutors.shared(), search ? new DeflateSearch() : null);
+		final PngImage png = BenchmarkImages.image(image);
+		inflated = BenchmarkImages.inflated(png);
+		rawSize = BenchmarkImages.rawSize(png);
+	}
+
+	@Benchmark
+	public byte[] deflate(RawBytes raw) throws IOException {
+		raw.add(rawSize);
+		return compressionHandler.deflate(inflated, (compressionLevel < 0) ? null : compressionLevel, concurrent);
+	}
+}
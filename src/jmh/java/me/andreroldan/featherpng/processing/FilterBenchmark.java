@@ -0,0 +1,107 @@
+package me.andreroldan.featherpng.processing;
+
+import me.andreroldan.featherpng.BenchmarkImages;
+import me.andreroldan.featherpng.PngFilterType;
+import me.andreroldan.featherpng.PngImage;
+import me.andreroldan.featherpng.RawBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link PngFilterHandler#filter} and {@link PngFilterHandler#deFilter}
+ * for every standard filter type, one whole image per operation.
+ *
+ * <p>Filtering works in place, so every row is copied into a scratch
+ * row before being (de)filtered, the copy is part of the measurement.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+	@Param({
+			"optimizer/amigaball.png",
+			"optimizer/edinburgh-castle.png",
+			"optimizer/lena.png",
+			"optimizer/phoenix.png",
+			"optimizer/pngsuite/basn0g16.png",
+			"optimizer/pngsuite/basn6a16.png"
+	})
+	public String image;
+
+	@Param({ "NONE", "SUB", "UP", "AVERAGE", "PAETH" })
+	public PngFilterType filterType;
+
+	/** VectorFilterHandler needs -PjmhJava17 */
+	@Param({ "PngtasticFilterHandler" })
+	public String handler;
+
+	private PngFilterHandler filterHandler;
+
+	private int sampleBitCount;
+	private long rawSize;
+
+	private List<byte[]> scanlines;
+	private List<byte[]> filteredScanlines;
+	private byte[] scratch;
+
+	@Setup
+	public void setup() throws ReflectiveOperationException, IOException {
+		filterHandler = (PngFilterHandler) Class.forName(PngFilterHandler.class.getPackage().getName() + "." + handler)
+				.getConstructor().newInstance();
+
+		final PngImage png = BenchmarkImages.image(image);
+		sampleBitCount = png.getSampleBitCount();
+		rawSize = BenchmarkImages.rawSize(png);
+
+		scanlines = BenchmarkImages.scanlines(png);
+		filteredScanlines = new ArrayList<>(scanlines.size());
+		for (byte[] scanline : scanlines) {
+			filteredScanlines.add(scanline.clone());
+		}
+		filterHandler.applyFiltering(filterType, filteredScanlines, sampleBitCount);
+		scratch = new byte[scanlines.get(0).length];
+	}
+
+	@Benchmark
+	public byte[] filter(RawBytes raw) {
+		raw.add(rawSize);
+		byte[] previous = new byte[scratch.length];
+		for (byte[] scanline : scanlines) {
+			System.arraycopy(scanline, 0, scratch, 0, scratch.length);
+			scratch[0] = filterType.getValue();
+			filterHandler.filter(scratch, previous, sampleBitCount);
+			previous = scanline;
+		}
+		return scratch;
+	}
+
+	@Benchmark
+	public byte[] deFilter(RawBytes raw) {
+		raw.add(rawSize);
+		byte[] previous = new byte[scratch.length];
+		for (int i = 0; i < filteredScanlines.size(); i++) {
+			System.arraycopy(filteredScanlines.get(i), 0, scratch, 0, scratch.length);
+			filterHandler.deFilter(scratch, previous, sampleBitCount);
+			previous = scanlines.get(i);
+		}
+		return scratch;
+	}
+}
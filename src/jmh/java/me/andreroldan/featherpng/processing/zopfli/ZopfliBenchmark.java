@@ -0,0 +1,69 @@
+package me.andreroldan.featherpng.processing.zopfli;
+
+import me.andreroldan.featherpng.BenchmarkImages;
+import me.andreroldan.featherpng.PngImage;
+import me.andreroldan.featherpng.RawBytes;
+import me.andreroldan.featherpng.processing.PngByteArrayOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link Zopfli#compress}, limited to the smaller images
+ * since a single zopfli run on a large image takes several seconds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ZopfliBenchmark {
+
+	@Param({
+			"optimizer/1px.png",
+			"optimizer/reference.png",
+			"optimizer/amigaball.png"
+	})
+	public String image;
+
+	@Param({ "1", "15" })
+	public int iterations;
+
+	private Zopfli zopfli;
+	private Options options;
+
+	private byte[] inflated;
+	private long rawSize;
+
+	@Setup
+	public void setup() throws IOException {
+		final PngImage png = BenchmarkImages.image(image);
+		final PngByteArrayOutputStream data = BenchmarkImages.inflated(png);
+		inflated = data.toByteArray();
+		rawSize = BenchmarkImages.rawSize(png);
+
+		zopfli = new Zopfli(8 * 1024 * 1024);
+		options = new Options(Options.OutputFormat.ZLIB, Options.BlockSplitting.FIRST, iterations);
+	}
+
+	@Benchmark
+	public byte[] compress(RawBytes raw) throws IOException {
+		raw.add(rawSize);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		zopfli.compress(options, inflated, out);
+		return out.toByteArray();
+	}
+}
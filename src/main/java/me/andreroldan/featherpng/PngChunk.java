@@ -1,5 +1,8 @@
 package me.andreroldan.featherpng;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.zip.CRC32;
 
 /**
@@ -31,12 +34,32 @@ public final class PngChunk {
 	public static final int IMAGE_LAST_MODIFICATION_TIME	= 0x74494d45; // tIME
 
 	private final int type;
-	private final byte[] data;
+
+	/*
+	 * the payload lives either on the heap (data) or in a buffer (e.g. a mapped file); for
+	 * the latter data caches a heap copy, written once by data() and used from then on
+	 */
+	private volatile byte[] data;
+	private final ByteBuffer buffer;
 
 	/** */
 	public PngChunk(int type, byte[] data) {
 		this.type = type;
 		this.data = data;
+		this.buffer = null;
+	}
+
+	/**
+	 * Creates a chunk whose payload is the remaining content of the given
+	 * buffer, which is not copied. Used for chunks of memory-mapped images,
+	 * see {@link PngImage#map(java.nio.file.Path)}.
+	 *
+	 * @param type the chunk type
+	 * @param data the chunk payload
+	 */
+	public PngChunk(int type, ByteBuffer data) {
+		this.type = type;
+		this.buffer = data.slice().asReadOnlyBuffer();
 	}
 
 	/**
@@ -66,14 +89,91 @@ public final class PngChunk {
 		return this.type;
 	}
 
-	/** */
+	/**
+	 * Returns the payload of this chunk. Chunks backed by a buffer copy
+	 * their payload onto the heap the first time this is called, prefer
+	 * {@link #buffer()} or {@link #writeData(OutputStream)} for those.
+	 *
+	 * @return the payload of this chunk
+	 */
 	public byte[] data() {
-		return this.data;
+		byte[] data = this.data;
+		if (data == null) {
+			synchronized (this) {
+				data = this.data;
+				if (data == null) {
+					data = this.toByteArray();
+					this.data = data;
+				}
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Returns a read-only view of the payload of this chunk, positioned
+	 * at its start. Doesn't copy the payload.
+	 *
+	 * @return the payload of this chunk
+	 */
+	public ByteBuffer buffer() {
+		final byte[] data = this.data;
+		return (data != null)
+				? ByteBuffer.wrap(data).asReadOnlyBuffer()
+				: this.buffer.duplicate();
+	}
+
+	/**
+	 * Whether the payload of this chunk is held in a byte array,
+	 * i.e. {@link #data()} can be called without copying it.
+	 *
+	 * @return true if this chunk payload lives on the heap
+	 */
+	public boolean hasArray() {
+		return this.data != null;
+	}
+
+	/**
+	 * Returns a copy of the payload of this chunk.
+	 *
+	 * @return a new byte array holding the payload of this chunk
+	 */
+	public byte[] toByteArray() {
+		final byte[] data = this.data;
+		if (data != null) {
+			return data.clone();
+		}
+		final byte[] copy = new byte[this.buffer.remaining()];
+		this.buffer.duplicate().get(copy);
+		return copy;
+	}
+
+	/**
+	 * Writes the payload of this chunk to the given stream, without
+	 * copying buffer backed payloads onto the heap as a whole.
+	 *
+	 * @param out the stream to write to
+	 */
+	public void writeData(OutputStream out) throws IOException {
+		final byte[] data = this.data;
+		if (data != null) {
+			out.write(data);
+			return;
+		}
+
+		final ByteBuffer payload = this.buffer.duplicate();
+		final byte[] block = new byte[Math.min(8192, payload.remaining())];
+		while (payload.hasRemaining()) {
+			final int length = Math.min(block.length, payload.remaining());
+			payload.get(block, 0, length);
+			out.write(block, 0, length);
+		}
 	}
 
 	/** */
 	public int length() {
-		return this.data.length;
+		final byte[] data = this.data;
+		return (data != null) ? data.length : this.buffer.remaining();
 	}
 
 	//#region IHDR properties
@@ -169,7 +269,7 @@ public final class PngChunk {
 	 * @param interlace the interlace method of this image
 	 */
 	public void writeInterlace(final byte interlace) {
-		this.data[12] = interlace;
+		this.data()[12] = interlace;
 	}
 	//#endregion IHDR properties
 
@@ -177,7 +277,7 @@ public final class PngChunk {
 	public long getUnsignedInt(int offset) {
 		long value = 0;
 		for (int i = 0; i < 4; i++) {
-			value += (this.data[offset + i] & 0xff) << ((3 - i) * 8);
+			value += this.getUnsignedByte(offset + i) << ((3 - i) * 8);
 		}
 
 		return value;
@@ -185,7 +285,9 @@ public final class PngChunk {
 
 	/** */
 	public short getUnsignedByte(int offset) {
-		return (short) (this.data[offset] & 0x00ff);
+		final byte[] data = this.data;
+		final byte value = (data != null) ? data[offset] : this.buffer.get(offset);
+		return (short) (value & 0x00ff);
 	}
 
 	/** */
@@ -211,7 +313,12 @@ public final class PngChunk {
 		crc32.update(this.type >> 16);
 		crc32.update(this.type >> 8);
 		crc32.update(this.type);
-		crc32.update(this.data);
+		final byte[] data = this.data;
+		if (data != null) {
+			crc32.update(data);
+		} else {
+			crc32.update(this.buffer.duplicate());
+		}
 		return crc32.getValue();
 	}
 
@@ -232,7 +339,7 @@ public final class PngChunk {
 			result.append("Interlace:   ").append(this.readInterlace());
 		}
 		if (type == PngChunk.TEXTUAL_DATA) {
-			result.append("Text:        ").append(new String(this.data));
+			result.append("Text:        ").append(new String(this.toByteArray()));
 		}
 		if (type == PngChunk.IMAGE_DATA) {
 			result.append("Image Data:  ")
@@ -0,0 +1,250 @@
+package me.andreroldan.featherpng;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Pull parser for the chunks of a png datastream. Only the header of
+ * each chunk is read eagerly, payloads can be read at once, streamed
+ * or skipped. The CRC of every chunk is verified incrementally as its
+ * payload goes by, so no chunk has to be held in memory to check it.
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *     PngChunkReader reader = new PngChunkReader(input);
+ *     while (reader.next()) {
+ *         if (reader.type() == PngChunk.IMAGE_DATA) {
+ *             InputStream compressed = reader.imageData(); // all consecutive IDAT chunks
+ *             ...
+ *         }
+ *     }
+ * </pre>
+ */
+public final class PngChunkReader implements Closeable {
+
+	private final DataInputStream ins;
+	private final CRC32 crc = new CRC32();
+	private final byte[] skipBuffer = new byte[512];
+
+	private int type;
+	private int length;
+	private int remaining;
+
+	/** The header of the current chunk has been read, but not its crc */
+	private boolean inChunk;
+
+	/** A chunk header has been read ahead (by {@link #imageData()}) and not returned by {@link #next()} yet */
+	private boolean headerPending;
+	private boolean finished;
+
+	/**
+	 * Creates a chunk reader for the given png datastream, the png
+	 * signature is read and checked immediately.
+	 *
+	 * @param ins the png datastream, positioned at its signature
+	 * @throws PngException if the stream doesn't start with a png signature
+	 */
+	public PngChunkReader(final InputStream ins) throws IOException {
+		this.ins = (ins instanceof DataInputStream) ? (DataInputStream) ins : new DataInputStream(ins);
+		if (this.ins.readLong() != PngImage.SIGNATURE) {
+			throw new PngException("Bad png signature");
+		}
+	}
+
+	/**
+	 * Advances to the next chunk, skipping whatever is left unread of
+	 * the current one (its CRC is still verified).
+	 *
+	 * @return true if a chunk header was read, false if the previous
+	 * chunk was the image trailer (IEND)
+	 */
+	public boolean next() throws IOException {
+		if (headerPending) {
+			headerPending = false;
+			return true;
+		}
+		if (finished) {
+			return false;
+		}
+		if (type != 0) {
+			finishChunk();
+			if (type == PngChunk.IMAGE_TRAILER) {
+				finished = true;
+				return false;
+			}
+		}
+		readHeader();
+		return true;
+	}
+
+	/**
+	 * Returns the type of the current chunk, which is one of the
+	 * static constants in {@link PngChunk}.
+	 */
+	public int type() {
+		return type;
+	}
+
+	/** Returns the payload length of the current chunk. */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Reads the whole (remaining) payload of the current chunk and
+	 * verifies its CRC.
+	 */
+	public byte[] readData() throws IOException {
+		final byte[] data = new byte[remaining];
+		ins.readFully(data);
+		crc.update(data, 0, data.length);
+		remaining = 0;
+		finishChunk();
+		return data;
+	}
+
+	/** Reads the current chunk into memory. */
+	public PngChunk readChunk() throws IOException {
+		final int chunkType = type;
+		return new PngChunk(chunkType, readData());
+	}
+
+	/**
+	 * Returns a stream over the (remaining) payload of the current
+	 * chunk. The CRC is verified once the end of the payload is
+	 * reached, a mismatch is reported as a {@link PngException}.
+	 */
+	public InputStream payload() {
+		return new PayloadInputStream(false);
+	}
+
+	/**
+	 * Returns a stream over the payload of the current IDAT chunk and
+	 * all of the IDAT chunks directly following it, i.e. the complete
+	 * zlib stream of the image, meant to be fed to an
+	 * {@link java.util.zip.Inflater}. Once exhausted the reader is left
+	 * on the first chunk after the image data, which is returned by
+	 * the next call to {@link #next()}.
+	 */
+	public InputStream imageData() {
+		if (type != PngChunk.IMAGE_DATA) {
+			throw new PngException("Not an image data chunk: " + typeName());
+		}
+		return new PayloadInputStream(true);
+	}
+
+	/** Closes the underlying stream. */
+	@Override
+	public void close() throws IOException {
+		ins.close();
+	}
+
+	/* */
+	private String typeName() {
+		return new PngChunk(type, new byte[0]).typeName();
+	}
+
+	/* */
+	private void readHeader() throws IOException {
+		length = ins.readInt();
+		type = ins.readInt();
+		if (length < 0) {
+			throw new PngException("Invalid chunk length " + (length & 0xffffffffL));
+		}
+		remaining = length;
+		inChunk = true;
+
+		crc.reset();
+		crc.update(type >> 24);
+		crc.update(type >> 16);
+		crc.update(type >> 8);
+		crc.update(type);
+	}
+
+	/* reads what is left of the current chunk, then its crc */
+	private void finishChunk() throws IOException {
+		while (remaining > 0) {
+			final int n = ins.read(skipBuffer, 0, Math.min(remaining, skipBuffer.length));
+			if (n < 0) {
+				throw new EOFException("Expected " + remaining + " more bytes of " + typeName() + " chunk data");
+			}
+			crc.update(skipBuffer, 0, n);
+			remaining -= n;
+		}
+
+		if (inChunk) {
+			inChunk = false;
+			final long expected = ins.readInt() & 0x00000000ffffffffL; // Make it unsigned.
+			if (crc.getValue() != expected) {
+				throw new PngException("Corrupted file, crc check failed");
+			}
+		}
+	}
+
+	/**
+	 * Streams chunk payloads, optionally continuing into the following
+	 * IDAT chunks.
+	 */
+	private final class PayloadInputStream extends InputStream {
+		private final boolean imageData;
+		private boolean eof;
+
+		private PayloadInputStream(boolean imageData) {
+			this.imageData = imageData;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (!eof && remaining == 0) {
+				advance();
+			}
+			if (eof) {
+				return -1;
+			}
+
+			final int n = ins.read(b, off, Math.min(len, remaining));
+			if (n < 0) {
+				throw new EOFException("Expected " + remaining + " more bytes of " + typeName() + " chunk data");
+			}
+			crc.update(b, off, n);
+			remaining -= n;
+			if (remaining == 0 && !imageData) {
+				finishChunk();
+				eof = true;
+			}
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return eof ? 0 : remaining;
+		}
+
+		/* the current chunk is exhausted, move on to the next IDAT chunk if any */
+		private void advance() throws IOException {
+			finishChunk();
+			if (!imageData) {
+				eof = true;
+				return;
+			}
+			readHeader();
+			if (type != PngChunk.IMAGE_DATA) {
+				headerPending = true;
+				eof = true;
+			}
+		}
+	}
+}
@@ -1,8 +1,6 @@
 package me.andreroldan.featherpng;
 
-import me.andreroldan.featherpng.processing.PngByteArrayOutputStream;
-import me.andreroldan.featherpng.processing.PngInterlaceHandler;
-import me.andreroldan.featherpng.processing.PngtasticInterlaceHandler;
+import me.andreroldan.featherpng.processing.ScanlineDecoder;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
@@ -21,8 +19,6 @@ import java.util.Map.Entry;
  */
 public class PngColorCounter extends PngProcessor {
 
-	private final PngInterlaceHandler pngInterlaceHandler;
-
 	private final double distThreshold;
 	private final double freqThreshold;
 	private final int minAlpha;
@@ -44,47 +40,33 @@ public class PngColorCounter extends PngProcessor {
 		this.freqThreshold = freqThreshold;
 		this.minAlpha = minAlpha;
 		this.timeout = timeout;
-
-		this.pngInterlaceHandler = new PngtasticInterlaceHandler(pngFilterHandler);
 	}
 
 	/** */
 	public void count(PngImage image) throws IOException {
-		// FIXME: support low bit depth interlaced images
-		if (image.getInterlace() == 1 && image.getSampleBitCount() < 8) {
-			return;
-		}
-
 		final long start = System.currentTimeMillis();
 
 		final Iterator<PngChunk> itChunks = image.chunks().iterator();
 		final PngChunk chunk = processHeadChunks(null, false, itChunks);
 
-		// collect image data chunks
-		final PngByteArrayOutputStream inflatedImageData = getInflatedImageData(chunk, itChunks);
-
-		final long width = image.width();
-		final long height = image.height();
-		final int scanlineLength = (int) (Math.ceil(width * image.getSampleBitCount() / 8F)) + 1;
-
-		final List<byte[]> originalScanlines = (image.getInterlace() == 1)
-				? pngInterlaceHandler.deInterlace((int) width, (int) height, image.getSampleBitCount(), inflatedImageData)
-				: getScanlines(inflatedImageData, image.getSampleBitCount(), scanlineLength, height);
-
-		final List<PngPixel> colors = getColors(image, originalScanlines, start);
+		final List<PngPixel> colors;
+		try (final ScanlineDecoder rows = getScanlineDecoder(image, chunk, itChunks)) {
+			colors = getColors(image, rows, start);
+		}
 		final List<PngPixel> results = getMergedColors(image, colors, start);
 
 		final long elapsed = System.currentTimeMillis() - start;
-		colorCounterResult = new ColorCounterResult(width, height, colors.size(), results, elapsed);
+		colorCounterResult = new ColorCounterResult(image.width(), image.height(), colors.size(), results, elapsed);
 	}
 
-	private List<PngPixel> getColors(PngImage original, List<byte[]> rows, long start) throws IOException {
+	private List<PngPixel> getColors(PngImage original, ScanlineDecoder rows, long start) throws IOException {
 		final Map<PngPixel, Integer> colors = new LinkedHashMap<>();
 		final PngImageType imageType = PngImageType.forColorType(original.getColorType());
 		final int sampleSize = original.getSampleBitCount();
 
-		int y = 0;
-		for (byte[] row : rows) {
+		while (rows.hasNext()) {
+			final int y = rows.y();
+			final byte[] row = rows.next();
 			if (timeout > 0 && (System.currentTimeMillis() - start > timeout)) {
 				throw new PngException("Reached " + timeout + "ms timeout");
 			}
@@ -157,7 +139,6 @@ public class PngColorCounter extends PngProcessor {
 						throw new IllegalArgumentException();
 				}
 			}
-			y++;
 		}
 
 		if (freqThreshold > 0) {
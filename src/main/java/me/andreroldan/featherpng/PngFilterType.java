@@ -8,12 +8,16 @@ package me.andreroldan.featherpng;
  */
 public enum PngFilterType {
 	ADAPTIVE(-1),	// NOTE: not a real filter type
+	BRUTE_FORCE(-2),	// NOTE: not a real filter type either, picks each row's filter by trial compression
 	NONE(0),
 	SUB(1),
 	UP(2),
 	AVERAGE(3),
 	PAETH(4);
 
+	/* values() copies the array on every call */
+	private static final PngFilterType[] VALUES = values();
+
 	/** */
 	private byte value;
 	public byte getValue() { return this.value; }
@@ -28,7 +32,7 @@ public enum PngFilterType {
 
 	/** */
 	public static PngFilterType forValue(byte value) {
-		for (PngFilterType type : PngFilterType.values()) {
+		for (PngFilterType type : VALUES) {
 			if (type.getValue() == value)
 				return type;
 		}
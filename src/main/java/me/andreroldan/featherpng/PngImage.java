@@ -1,17 +1,23 @@
 package me.andreroldan.featherpng;
 
+import me.andreroldan.featherpng.processing.PassDecoder;
+
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -40,34 +46,11 @@ public final class PngImage {
 	private PngImageType imageType;
 
 	public static PngImage read(final InputStream ins) throws IOException {
-		PngImage image = new PngImage();
-		DataInputStream dis = new DataInputStream(ins);
-
-		// read PNG signature
-		{
-			final long signature = dis.readLong();
-			if (signature != PngImage.SIGNATURE) {
-				throw new PngException("Bad png signature");
-			}
+		final PngImage image = new PngImage();
+		final PngChunkReader reader = new PngChunkReader(ins);
+		while (reader.next()) {
+			image.addChunk(reader.readChunk());
 		}
-
-		int len;
-		PngChunk chunk;
-
-		do {
-			len = dis.readInt();
-			final int type = dis.readInt();
-			final byte[] data = image.getChunkData(dis, len);
-			long crc = image.getChunkCrc(dis);
-
-			chunk = new PngChunk(type, data);
-
-			if (!chunk.verifyCRC(crc)) {
-				throw new PngException("Corrupted file, crc check failed");
-			}
-
-			image.addChunk(chunk);
-		} while (len > 0 && PngChunk.IMAGE_TRAILER != chunk.type());
 		return image;
 	}
 
@@ -81,6 +64,68 @@ public final class PngImage {
 		}
 	}
 
+	/**
+	 * Memory-maps the given png file. Chunk payloads are slices of the
+	 * mapping ({@link PngChunk#buffer()}), nothing is copied onto the heap
+	 * until a chunk {@link PngChunk#data()} is asked for, and repeated
+	 * reads of the same file are served from the page cache.
+	 *
+	 * @param path the png file
+	 * @return the image, backed by the mapped file
+	 */
+	public static PngImage map(final Path path) throws IOException {
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new PngException(String.format("Can't map %s, %d bytes is too large", path, size));
+			}
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+	}
+
+	/**
+	 * Indexes the chunks of the png datastream held by the given buffer,
+	 * starting at its position. Chunks are slices of the buffer, which
+	 * must not be modified while the image is in use.
+	 *
+	 * @param bytes the png datastream
+	 * @return the image, backed by the given buffer
+	 */
+	public static PngImage read(final ByteBuffer bytes) {
+		final PngImage image = new PngImage();
+		final ByteBuffer in = bytes.duplicate().order(ByteOrder.BIG_ENDIAN);
+
+		try {
+			if (in.getLong() != PngImage.SIGNATURE) {
+				throw new PngException("Bad png signature");
+			}
+
+			PngChunk chunk;
+			do {
+				final int length = in.getInt();
+				final int type = in.getInt();
+				if (length < 0 || length > in.remaining() - 4) {
+					throw new PngException(String.format("Expected %d bytes but got %d", length & 0xffffffffL, Math.max(0, in.remaining() - 4)));
+				}
+
+				final ByteBuffer data = in.slice();
+				data.limit(length);
+				in.position(in.position() + length);
+				final long crc = in.getInt() & 0x00000000ffffffffL; // Make it unsigned.
+
+				chunk = new PngChunk(type, data);
+				if (!chunk.verifyCRC(crc)) {
+					throw new PngException("Corrupted file, crc check failed");
+				}
+
+				image.addChunk(chunk);
+			} while (PngChunk.IMAGE_TRAILER != chunk.type());
+		} catch (BufferUnderflowException e) {
+			throw new PngException("Unexpected end of png datastream", e);
+		}
+		return image;
+	}
+
 	/** */
 	public PngImage() {
 	}
@@ -138,7 +183,7 @@ public final class PngImage {
 		for (PngChunk chunk : chunks) {
 			outs.writeInt(chunk.length());
 			outs.writeInt(chunk.type());
-			outs.write(chunk.data());
+			chunk.writeData(outs);
 			outs.writeInt((int) chunk.crc());
 		}
 		outs.close();
@@ -173,7 +218,7 @@ public final class PngImage {
 			// Write all the IDAT data
 			for (PngChunk chunk : chunks) {
 				if (chunk.type() == PngChunk.IMAGE_DATA) {
-					out.write(chunk.data());
+					chunk.writeData(out);
 				}
 			}
 			return out.toByteArray();
@@ -183,31 +228,31 @@ public final class PngImage {
 		return null;
 	}
 
-	/** */
-	public int getSampleBitCount() {
-		this.imageType = (this.imageType == null) ? PngImageType.forColorType(this.colorType) : this.imageType;
-		return this.imageType.channelCount() * this.bitDepth;
-	}
+	/**
+	 * The length of the inflated image data according to the header: a
+	 * filter type byte and the samples of every row, of every pass if
+	 * interlaced.
+	 */
+	public long getInflatedImageDataLength() {
+		final int sampleBitCount = getSampleBitCount();
+		if (interlace != 1) {
+			return height * ((width * sampleBitCount + 7) / 8 + 1);
+		}
 
-	/* */
-	private byte[] getChunkData(InputStream ins, int length) throws PngException {
-		byte[] data = new byte[length];
-		try {
-			int actual = ins.read(data);
-			if (actual < length) {
-				throw new PngException(String.format("Expected %d bytes but got %d", length, actual));
+		long length = 0;
+		for (int pass = 0; pass < PassDecoder.PASSES; pass++) {
+			final long columns = PassDecoder.columns(pass, width);
+			final long rows = PassDecoder.rows(pass, height);
+			if (columns > 0 && rows > 0) {
+				length += rows * ((columns * sampleBitCount + 7) / 8 + 1);
 			}
-		} catch (IOException e) {
-			throw new PngException("Error reading chunk data", e);
 		}
-
-		return data;
+		return length;
 	}
 
-	/* */
-	private long getChunkCrc(DataInputStream ins) throws IOException {
-		int i = ins.readInt();
-		long crc = i & 0x00000000ffffffffL; // Make it unsigned.
-		return crc;
+	/** */
+	public int getSampleBitCount() {
+		this.imageType = (this.imageType == null) ? PngImageType.forColorType(this.colorType) : this.imageType;
+		return this.imageType.channelCount() * this.bitDepth;
 	}
 }
@@ -0,0 +1,69 @@
+package me.andreroldan.featherpng;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Streams the compressed image data held by consecutive IDAT chunks,
+ * reading each chunk payload in place instead of concatenating them.
+ */
+final class PngImageDataInputStream extends InputStream {
+
+	private final Iterator<PngChunk> itChunks;
+	private ByteBuffer data;
+
+	/**
+	 * @param chunk the first IDAT chunk
+	 * @param itChunks the chunks following it
+	 */
+	PngImageDataInputStream(PngChunk chunk, Iterator<PngChunk> itChunks) {
+		this.itChunks = itChunks;
+		this.data = (chunk != null && chunk.type() == PngChunk.IMAGE_DATA) ? chunk.buffer() : null;
+	}
+
+	@Override
+	public int read() {
+		final byte[] b = new byte[1];
+		return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		while (data != null && !data.hasRemaining()) {
+			advance();
+		}
+		if (data == null) {
+			return -1;
+		}
+
+		final int length = Math.min(len, data.remaining());
+		data.get(b, off, length);
+		return length;
+	}
+
+	@Override
+	public int available() {
+		return (data == null) ? 0 : data.remaining();
+	}
+
+	/**
+	 * Consumes the remaining image data chunks, as well as the chunk
+	 * following them, from the chunk iterator.
+	 */
+	@Override
+	public void close() {
+		while (data != null) {
+			advance();
+		}
+	}
+
+	/* */
+	private void advance() {
+		final PngChunk chunk = itChunks.hasNext() ? itChunks.next() : null;
+		data = (chunk != null && chunk.type() == PngChunk.IMAGE_DATA) ? chunk.buffer() : null;
+	}
+}
@@ -1,15 +1,14 @@
 package me.andreroldan.featherpng;
 
 import me.andreroldan.featherpng.processing.PngByteArrayOutputStream;
+import me.andreroldan.featherpng.processing.ScanlineDecoder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
 
 /**
  * Layers PNG images on top of one another. Currently expects two images of the same size.
@@ -20,31 +19,22 @@ import java.util.List;
 public class PngLayerer extends PngProcessor {
 	/** */
 	public PngImage layer(PngImage baseImage, PngImage layerImage, Integer compressionLevel, boolean concurrent) throws IOException {
-		// FIXME: support low bit depth interlaced images
-		if (baseImage.getInterlace() == 1 && baseImage.getSampleBitCount() < 8) {
-			return baseImage;
-		}
-
 		final PngImage result = new PngImage();
 		result.setInterlace((short) 0);
 
 		final Iterator<PngChunk> itBaseChunks = baseImage.chunks().iterator();
 
 		final PngChunk lastBaseChunk = processHeadChunks(new PngImage(), itBaseChunks);
-		final PngByteArrayOutputStream inflatedBaseImageData = getInflatedImageData(lastBaseChunk, itBaseChunks);
-		final List<byte[]> baseImageScanlines = getScanlines(baseImage, inflatedBaseImageData);
-
 		final Iterator<PngChunk> itLayerChunks = layerImage.chunks().iterator();
-
 		final PngChunk lastLayerChunk = processHeadChunks(result, itLayerChunks);
-		final PngByteArrayOutputStream inflatedLayerImageData = getInflatedImageData(lastLayerChunk, itLayerChunks);
-		final List<byte[]> layerImageScanlines = getScanlines(layerImage, inflatedLayerImageData);
-
-		final List<byte[]> newImageScanlines = doLayering(baseImage, layerImage, baseImageScanlines, layerImageScanlines);
 
-		pngFilterHandler.applyFiltering(PngFilterType.NONE, newImageScanlines, layerImage.getSampleBitCount());
+		final PngByteArrayOutputStream newImageData;
+		try (final ScanlineDecoder baseRows = getScanlineDecoder(baseImage, lastBaseChunk, itBaseChunks);
+		     final ScanlineDecoder layerRows = getScanlineDecoder(layerImage, lastLayerChunk, itLayerChunks)) {
+			newImageData = doLayering(baseImage, layerImage, baseRows, layerRows);
+		}
 
-		final byte[] imageResult = pngCompressionHandler.deflate(serialize(newImageScanlines), compressionLevel, concurrent);
+		final byte[] imageResult = pngCompressionHandler.deflate(newImageData, compressionLevel, concurrent);
 
 		final PngChunk imageChunk = new PngChunk(PngChunk.IMAGE_DATA, imageResult);
 		result.addChunk(imageChunk);
@@ -54,17 +44,6 @@ public class PngLayerer extends PngProcessor {
 		return result;
 	}
 
-	/* */
-	private List<byte[]> getScanlines(PngImage image, PngByteArrayOutputStream inflatedImageData) {
-		final int scanlineLength = Double.valueOf(Math.ceil(Long.valueOf(image.width() * image.getSampleBitCount()) / 8F)).intValue() + 1;
-
-		final List<byte[]> originalScanlines = (image.getInterlace() == 1)
-				? pngInterlaceHandler.deInterlace((int)image.width(), (int)image.height(), image.getSampleBitCount(), inflatedImageData)
-				: getScanlines(inflatedImageData, image.getSampleBitCount(), scanlineLength, image.height());
-
-		return originalScanlines;
-	}
-
 	/* */
 	private PngChunk processHeadChunks(PngImage result, Iterator<PngChunk> itChunks) throws IOException {
 		PngChunk chunk = null;
@@ -78,7 +57,7 @@ public class PngLayerer extends PngProcessor {
 				final ByteArrayOutputStream bytes = new ByteArrayOutputStream(chunk.length());
 				final DataOutputStream data = new DataOutputStream(bytes);
 
-				data.write(chunk.data());
+				chunk.writeData(data);
 				data.close();
 
 				final PngChunk newChunk = new PngChunk(chunk.type(), bytes.toByteArray());
@@ -98,7 +77,7 @@ public class PngLayerer extends PngProcessor {
 				final ByteArrayOutputStream bytes = new ByteArrayOutputStream(lastBaseChunk.length());
 				final DataOutputStream data = new DataOutputStream(bytes);
 
-				data.write(lastBaseChunk.data());
+				lastBaseChunk.writeData(data);
 				data.close();
 
 				final PngChunk newChunk = new PngChunk(lastBaseChunk.type(), bytes.toByteArray());
@@ -109,44 +88,33 @@ public class PngLayerer extends PngProcessor {
 		return lastBaseChunk;
 	}
 
-	/* */
-	private PngByteArrayOutputStream serialize(List<byte[]> scanlines) {
-		final int scanlineLength = scanlines.get(0).length;
-		final byte[] imageData = new byte[scanlineLength * scanlines.size()];
-
-		for (int i = 0; i < scanlines.size(); i++) {
-			final int offset = i * scanlineLength;
-			final byte[] scanline = scanlines.get(i);
-			System.arraycopy(scanline, 0, imageData, offset, scanlineLength);
-		}
-
-		return new PngByteArrayOutputStream(imageData);
-	}
-
-	/* */
-	private List<byte[]> doLayering(PngImage baseImage, PngImage layerImage, List<byte[]> baseRows, List<byte[]> layerRows) throws IOException {
-		final List<byte[]> result = new ArrayList<>(baseRows.size());
-
+	/**
+	 * Layers the rows of both images as they are decoded, writing the
+	 * unfiltered (filter type NONE) rgba rows of the result straight into
+	 * its image data.
+	 */
+	private PngByteArrayOutputStream doLayering(PngImage baseImage, PngImage layerImage, ScanlineDecoder baseRows, ScanlineDecoder layerRows) throws IOException {
 		final PngImageType baseImageType = PngImageType.forColorType(baseImage.getColorType());
 		final PngImageType layerImageType = PngImageType.forColorType(layerImage.getColorType());
 		final int sampleSize = baseImage.getSampleBitCount();
+		final int sampleCount = ((baseRows.rowLength() - 1) * 8) / sampleSize;
+
+		final PngByteArrayOutputStream result = new PngByteArrayOutputStream((sampleCount * 4 + 1) * (int) baseImage.height());
+		final DataOutputStream dos = new DataOutputStream(result);
 
-		for (int rowIndex = 0; rowIndex < baseRows.size(); rowIndex++) {
-			final byte[] baseRow = baseRows.get(rowIndex);
-			final byte[] layerRow = layerRows.get(rowIndex);
-			final int sampleCount = ((baseRow.length - 1) * 8) / sampleSize;
+		while (baseRows.hasNext() && layerRows.hasNext()) {
+			final byte[] baseRow = baseRows.next();
+			final byte[] layerRow = layerRows.next();
 
 			final ByteArrayInputStream baseIn = new ByteArrayInputStream(baseRow);
 			final DataInputStream baseDin = new DataInputStream(baseIn);
-			final int filterByte = baseDin.readUnsignedByte();
+			baseDin.readUnsignedByte();	// skip filter byte
 
 			final ByteArrayInputStream layerIn = new ByteArrayInputStream(layerRow);
 			final DataInputStream layerDin = new DataInputStream(layerIn);
 			layerDin.readUnsignedByte();	// skip filter byte
 
-			final ByteArrayOutputStream outs = new ByteArrayOutputStream(baseRow.length);
-			final DataOutputStream dos = new DataOutputStream(outs);
-			dos.writeByte(filterByte);
+			dos.writeByte(PngFilterType.NONE.getValue());
 
 			for (int i = 0; i < sampleCount; i++) {
 				// Zero alpha represents a completely transparent pixel,
@@ -200,9 +168,8 @@ public class PngLayerer extends PngProcessor {
 					dos.writeByte(255);
 				}
 			}
-			dos.flush();
-			result.add(outs.toByteArray());
 		}
+		dos.flush();
 		return result;
 	}
 }
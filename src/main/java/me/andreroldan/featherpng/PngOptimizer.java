@@ -1,6 +1,12 @@
 package me.andreroldan.featherpng;
 
+import me.andreroldan.featherpng.processing.FilterScorer;
+import me.andreroldan.featherpng.processing.FilterScorers;
 import me.andreroldan.featherpng.processing.PngByteArrayOutputStream;
+import me.andreroldan.featherpng.processing.PngExecutors;
+import me.andreroldan.featherpng.processing.PngOffHeapRaster;
+import me.andreroldan.featherpng.processing.PngRaster;
+import me.andreroldan.featherpng.processing.ScanlineDecoder;
 import me.andreroldan.featherpng.processing.ZopfliCompressionHandler;
 
 import java.io.ByteArrayOutputStream;
@@ -10,12 +16,21 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * Optimizes PNG images for smallest possible filesize.
@@ -23,8 +38,20 @@ import java.util.Map.Entry;
  * @author rayvanderborght
  */
 public final class PngOptimizer extends PngProcessor {
+	private static final PngFilterType[] STANDARD_FILTER_TYPES = PngFilterType.standardValues();
+	/* the strategies of the compression handler, tried per candidate on images held off heap */
+	private static final int[] OFF_HEAP_STRATEGIES = { Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY };
+
 	private boolean generateDataUriCss = false;
+	private boolean bruteForceFiltering = false;
+	private FilterScorer filterScorer = FilterScorers.MIN_SUM_ABS;
+	private boolean adaptiveFilteringOnly = false;
+	private int concurrentCandidates = 1;
+	private long offHeapThreshold = 512L * 1024 * 1024;
+	private Path offHeapDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+	private Interlacing interlacing = Interlacing.NEVER;
 	private final List<OptimizerResult> results = new ArrayList<>();
+	private Executor executor = PngExecutors.shared();
 
 	public List<OptimizerResult> getResults() {
 		return results;
@@ -34,6 +61,95 @@ public final class PngOptimizer extends PngProcessor {
 		this.generateDataUriCss = generateDataUriCss;
 	}
 
+	/**
+	 * Also tries {@linkplain PngFilterType#BRUTE_FORCE brute force} filtering,
+	 * which picks the filter type of every row by trial compression. Often
+	 * smaller than adaptive filtering, but several times slower, so off by
+	 * default.
+	 */
+	public void setBruteForceFiltering(boolean bruteForceFiltering) {
+		this.bruteForceFiltering = bruteForceFiltering;
+	}
+
+	/**
+	 * Sets how adaptive filtering scores the rows filtered with each filter
+	 * type, by {@linkplain FilterScorers#MIN_SUM_ABS sum of absolute values}
+	 * by default.
+	 */
+	public void setFilterScorer(FilterScorer filterScorer) {
+		this.filterScorer = filterScorer;
+	}
+
+	/**
+	 * Only deflates the adaptively (and brute force, if enabled) filtered
+	 * image, instead of also deflating the image filtered with each
+	 * standard filter type. Several times faster, at the cost of the
+	 * images one filter type suits best; worth it with a scorer that
+	 * predicts the compressed size well, such as
+	 * {@link FilterScorers#ENTROPY}.
+	 */
+	public void setAdaptiveFilteringOnly(boolean adaptiveFilteringOnly) {
+		this.adaptiveFilteringOnly = adaptiveFilteringOnly;
+	}
+
+	/**
+	 * Sets how many filtered images are deflated at once, one by default.
+	 * Each holds a filtered copy of the image, so the memory used grows with
+	 * it, but the compression trials of a single image may not keep every
+	 * thread of the executor busy.
+	 */
+	public void setConcurrentCandidates(int concurrentCandidates) {
+		if (concurrentCandidates < 1) {
+			throw new IllegalArgumentException("concurrentCandidates must be positive");
+		}
+		this.concurrentCandidates = concurrentCandidates;
+	}
+
+	/**
+	 * Sets the inflated image data length above which images are held off
+	 * the java heap while being optimized, 512 MiB by default. They are
+	 * deflated at the given compression level with each deflate strategy per
+	 * candidate, streaming the rows, instead of by the compression handler,
+	 * whose trials need the whole filtered image in one array; a compressor
+	 * set with {@link #setCompressor(String, Integer)} has no effect on them.
+	 * Interlaced images are never held off heap, since deinterlacing needs the
+	 * whole image data.
+	 */
+	public void setOffHeapThreshold(long offHeapThreshold) {
+		this.offHeapThreshold = offHeapThreshold;
+	}
+
+	/**
+	 * Sets the directory off heap images are held in, in a memory mapped
+	 * temporary file, the default temporary directory by default. With no
+	 * directory they are held in direct buffers, which count against the
+	 * maximum direct memory size.
+	 */
+	public void setOffHeapDirectory(Path offHeapDirectory) {
+		this.offHeapDirectory = offHeapDirectory;
+	}
+
+	/**
+	 * Sets whether optimized images are interlaced, {@linkplain Interlacing#NEVER never}
+	 * by default. Images held off heap are never interlaced.
+	 */
+	public void setInterlacing(Interlacing interlacing) {
+		if (interlacing == null) {
+			throw new IllegalArgumentException("interlacing must not be null");
+		}
+		this.interlacing = interlacing;
+	}
+
+	/**
+	 * Sets the executor running the filtering and compression trials of
+	 * every image, the {@linkplain PngExecutors#shared() shared executor} by default. Pass
+	 * {@code Runnable::run} to run them all on the calling thread, e.g. in
+	 * environments that don't allow thread creation.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
 	/** */
 	public PngImage optimize(PngImage image) throws IOException {
 		return optimize(image, false, null);
@@ -41,60 +157,31 @@ public final class PngOptimizer extends PngProcessor {
 
 	/** */
 	public PngImage optimize(PngImage image, boolean removeGamma, Integer compressionLevel) throws IOException {
-		// FIXME: support low bit depth interlaced images
-		if (image.getInterlace() == 1 && image.getSampleBitCount() < 8) {
-			return image;
-		}
-
 		final PngImage result = new PngImage();
 		result.setInterlace((short) 0);
 
 		final Iterator<PngChunk> itChunks = image.chunks().iterator();
 		PngChunk chunk = processHeadChunks(result, removeGamma, itChunks);
 
-		// collect image data chunks
-		final PngByteArrayOutputStream inflatedImageData = getInflatedImageData(chunk, itChunks);
-
-		final int scanlineLength = (int)(Math.ceil(image.width() * image.getSampleBitCount() / 8F)) + 1;
-
-		final List<byte[]> originalScanlines = (image.getInterlace() == 1)
-				? pngInterlaceHandler.deInterlace((int) image.width(), (int) image.height(), image.getSampleBitCount(), inflatedImageData)
-				: getScanlines(inflatedImageData, image.getSampleBitCount(), scanlineLength, image.height());
-
 		// TODO: use this for bit depth reduction
 //		Map<PngPixel, Integer> colors = getColors(image, originalScanlines, 32);
 
-		// apply each type of filtering
-		final Map<PngFilterType, List<byte[]>> filteredScanlines = new HashMap<>();
-		for (PngFilterType filterType : PngFilterType.standardValues()) {
-			final List<byte[]> scanlines = copyScanlines(originalScanlines);
-			pngFilterHandler.applyFiltering(filterType, scanlines, image.getSampleBitCount());
-
-			filteredScanlines.put(filterType, scanlines);
-		}
-
-		// pick the filter that compresses best
-		PngFilterType bestFilterType = null;
-		byte[] deflatedImageData = null;
-		for (Entry<PngFilterType, List<byte[]>> entry : filteredScanlines.entrySet()) {
-			final byte[] imageResult = pngCompressionHandler.deflate(serialize(entry.getValue()), compressionLevel, true);
-			if (deflatedImageData == null || imageResult.length < deflatedImageData.length) {
-				deflatedImageData = imageResult;
-				bestFilterType = entry.getKey();
+		final byte[] deflatedImageData;
+		if (image.getInterlace() != 1 && image.getInflatedImageDataLength() > offHeapThreshold) {
+			deflatedImageData = deflateOffHeap(image, chunk, itChunks, compressionLevel);
+		} else {
+			final Smallest smallest = deflateSmallest(getOriginalRaster(image, chunk, itChunks), image, compressionLevel);
+			deflatedImageData = smallest.data;
+			if (smallest.interlaced) {
+				for (PngChunk headChunk : result.chunks()) {
+					if (headChunk.type() == PngChunk.IMAGE_HEADER) {
+						headChunk.writeInterlace((byte) 1);
+					}
+				}
+				result.setInterlace((short) 1);
 			}
 		}
 
-		// see if adaptive filtering results in even better compression
-		final List<byte[]> scanlines = copyScanlines(originalScanlines);
-		pngFilterHandler.applyAdaptiveFiltering(inflatedImageData, scanlines, filteredScanlines, image.getSampleBitCount());
-
-		final byte[] adaptiveImageData = pngCompressionHandler.deflate(inflatedImageData, compressionLevel, true);
-
-		if (deflatedImageData == null || adaptiveImageData.length < deflatedImageData.length) {
-			deflatedImageData = adaptiveImageData;
-			bestFilterType = PngFilterType.ADAPTIVE;
-		}
-
 		final PngChunk imageChunk = new PngChunk(PngChunk.IMAGE_DATA, deflatedImageData);
 		result.addChunk(imageChunk);
 
@@ -104,7 +191,7 @@ public final class PngOptimizer extends PngProcessor {
 				ByteArrayOutputStream bytes = new ByteArrayOutputStream(chunk.length());
 				DataOutputStream data = new DataOutputStream(bytes);
 
-				data.write(chunk.data());
+				chunk.writeData(data);
 				data.close();
 
 				PngChunk newChunk = new PngChunk(chunk.type(), bytes.toByteArray());
@@ -122,27 +209,349 @@ public final class PngOptimizer extends PngProcessor {
 		return result;
 	}
 
-	/* */
-	private List<byte[]> copyScanlines(List<byte[]> original) {
-		final List<byte[]> copy = new ArrayList<>(original.size());
-		for (byte[] scanline : original) {
-			copy.add(scanline.clone());
+	/*
+	 * Collects and inflates the image data chunks, then defilters (and
+	 * deinterlaces) them. Image data that isn't interlaced is defiltered
+	 * where it is, otherwise it is dropped on return.
+	 */
+	private PngRaster getOriginalRaster(PngImage image, PngChunk chunk, Iterator<PngChunk> itChunks) throws IOException {
+		final PngByteArrayOutputStream inflatedImageData = getInflatedImageData(image, chunk, itChunks);
+
+		final int scanlineLength = (int)(Math.ceil(image.width() * image.getSampleBitCount() / 8F)) + 1;
+
+		return (image.getInterlace() == 1)
+				? pngInterlaceHandler.deInterlaceRaster((int) image.width(), (int) image.height(), image.getSampleBitCount(), inflatedImageData)
+				: getRaster(inflatedImageData, image.getSampleBitCount(), scanlineLength, image.height());
+	}
+
+	/**
+	 * Filters the image with every standard filter type and adaptively, then
+	 * deflates every filtered image (only the adaptive ones if so set) with
+	 * every trial of the compression handler, all as tasks on the executor.
+	 * The smallest result wins; ties go to the first filter type in standard
+	 * order (adaptive, then brute force if enabled, last), then to the first
+	 * trial, so the result doesn't depend on timing. When interlacing is
+	 * allowed, the passes of the image are filtered the same ways and
+	 * deflated as candidates of their own, after (and losing ties to) the
+	 * ones that aren't interlaced.
+	 *
+	 * <p>The filter types are picked first, then the image is filtered row by
+	 * row straight into the image data to deflate, so the only copy of the
+	 * image besides the original raster (and its passes) is the one being
+	 * deflated. Candidates are deflated one after the other, their trials
+	 * running concurrently, unless more are allowed to run at once.</p>
+	 */
+	private Smallest deflateSmallest(final PngRaster original, final PngImage image, final Integer compressionLevel)
+			throws IOException {
+		final int sampleBitCount = image.getSampleBitCount();
+
+		// how each candidate picks the filter types of the rows of an image (or pass), in tie breaking order
+		final List<Function<PngRaster, byte[]>> filterings = new ArrayList<>();
+		if (!adaptiveFilteringOnly) {
+			for (final PngFilterType filterType : STANDARD_FILTER_TYPES) {
+				filterings.add(raster -> {
+					final byte[] filterTypes = new byte[raster.height()];
+					Arrays.fill(filterTypes, filterType.getValue());
+					return filterTypes;
+				});
+			}
+		}
+		filterings.add(raster -> getAdaptiveFilterTypes(raster, sampleBitCount));
+		if (bruteForceFiltering) {
+			filterings.add(raster -> getBruteForceFilterTypes(raster, sampleBitCount));
+		}
+
+		final List<Supplier<PngByteArrayOutputStream>> candidates = new ArrayList<>();
+		if (interlacing != Interlacing.ALWAYS) {
+			for (final Function<PngRaster, byte[]> filtering : filterings) {
+				candidates.add(() -> filter(original, filtering.apply(original), sampleBitCount).asImageData());
+			}
+		}
+		final int firstInterlaced = candidates.size();
+		if (interlacing != Interlacing.NEVER) {
+			final List<PngRaster> passes = pngInterlaceHandler.interlaceRaster((int) image.width(), (int) image.height(), sampleBitCount, original);
+			for (final Function<PngRaster, byte[]> filtering : filterings) {
+				candidates.add(() -> filter(passes, filtering, sampleBitCount));
+			}
 		}
 
-		return copy;
+		final Smallest smallest = new Smallest();
+		final List<CompletableFuture<Void>> chains = new ArrayList<>(concurrentCandidates);
+		for (int i = 0; i < candidates.size(); i++) {
+			final int candidate = i;
+			final CompletableFuture<Void> previous = (i < concurrentCandidates)
+					? CompletableFuture.completedFuture(null) : chains.get(i % concurrentCandidates);
+			final CompletableFuture<Void> deflated = previous.thenCompose(ignored -> supplyAsync(() -> {
+				final PngByteArrayOutputStream filtered = candidates.get(candidate).get();
+				final List<Callable<byte[]>> trials = pngCompressionHandler.deflateTrials(filtered, compressionLevel);
+				final List<CompletableFuture<Void>> results = new ArrayList<>(trials.size());
+				for (int t = 0; t < trials.size(); t++) {
+					final Callable<byte[]> trial = trials.get(t);
+					final long order = ((long) candidate << 32) | t;
+					results.add(supplyAsync(() -> {
+						try {
+							smallest.offer(trial.call(), order, candidate >= firstInterlaced);
+							return null;
+						} catch (Exception e) {
+							throw new CompletionException(e);
+						}
+					}));
+				}
+				return allOf(results);
+			}).thenCompose(results -> results));
+
+			if (i < concurrentCandidates) {
+				chains.add(deflated);
+			} else {
+				chains.set(i % concurrentCandidates, deflated);
+			}
+		}
+
+		try {
+			allOf(chains).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new PngException("Error deflating image data", e.getCause());
+		}
+		return smallest;
+	}
+
+	/* the filter type adaptive filtering picks for every row */
+	private byte[] getAdaptiveFilterTypes(PngRaster original, int sampleBitCount) {
+		final byte[] data = original.data();
+		final int rowLength = original.rowLength();
+		final byte[] filterTypes = new byte[original.height()];
+		final byte[] row = new byte[rowLength];
+		final byte[] firstPreviousRow = new byte[rowLength];
+		for (int y = 0; y < filterTypes.length; y++) {
+			final int offset = original.offset(y);
+			filterTypes[y] = (y > 0)
+					? getAdaptiveFilterType(data, offset, data, offset - rowLength, row, sampleBitCount)
+					: getAdaptiveFilterType(data, offset, firstPreviousRow, 0, row, sampleBitCount);
+		}
+		return filterTypes;
+	}
+
+	/*
+	 * The standard filter type whose filtered row scores lowest, the
+	 * unfiltered row being copied into the given buffer and filtered with
+	 * each in turn.
+	 */
+	private byte getAdaptiveFilterType(byte[] data, int offset, byte[] previousData, int previousOffset, byte[] row, int sampleBitCount) {
+		byte bestFilterType = PngFilterType.NONE.getValue();
+		double bestScore = Double.POSITIVE_INFINITY;
+		for (PngFilterType filterType : STANDARD_FILTER_TYPES) {
+			System.arraycopy(data, offset, row, 0, row.length);
+			row[0] = filterType.getValue();
+			pngFilterHandler.filter(row, 0, row.length, previousData, previousOffset, sampleBitCount);
+			final double score = filterScorer.score(row);
+			if (score < bestScore) {
+				bestFilterType = filterType.getValue();
+				bestScore = score;
+			}
+		}
+		return bestFilterType;
+	}
+
+	/* brute force filtering works on whole images, only the filter types of its copy are kept */
+	private byte[] getBruteForceFilterTypes(PngRaster original, int sampleBitCount) {
+		final PngRaster raster = original.copy();
+		pngFilterHandler.applyFiltering(PngFilterType.BRUTE_FORCE, raster, sampleBitCount);
+		final byte[] filterTypes = new byte[raster.height()];
+		for (int y = 0; y < filterTypes.length; y++) {
+			filterTypes[y] = raster.data()[raster.offset(y)];
+		}
+		return filterTypes;
+	}
+
+	/* filters the rows one at a time, each with its own filter type, into a new raster */
+	private PngRaster filter(PngRaster original, byte[] filterTypes, int sampleBitCount) {
+		final int rowLength = original.rowLength();
+		final PngRaster filtered = new PngRaster(rowLength, original.height());
+		final byte[] data = filtered.data();
+		final byte[] firstPreviousRow = new byte[rowLength];
+		for (int y = 0; y < filterTypes.length; y++) {
+			final int offset = original.offset(y);
+			System.arraycopy(original.data(), offset, data, offset, rowLength);
+			data[offset] = filterTypes[y];
+			if (y > 0) {
+				pngFilterHandler.filter(data, offset, rowLength, original.data(), offset - rowLength, sampleBitCount);
+			} else {
+				pngFilterHandler.filter(data, offset, rowLength, firstPreviousRow, 0, sampleBitCount);
+			}
+		}
+		return filtered;
+	}
+
+	/* filters every pass with the filter types picked for it, one after the other into the image data */
+	private PngByteArrayOutputStream filter(List<PngRaster> passes, Function<PngRaster, byte[]> filtering, int sampleBitCount) {
+		int length = 0;
+		for (PngRaster pass : passes) {
+			length += pass.length();
+		}
+		final PngByteArrayOutputStream filtered = new PngByteArrayOutputStream(length);
+		for (PngRaster pass : passes) {
+			filtered.write(filter(pass, filtering.apply(pass), sampleBitCount).data(), 0, pass.length());
+		}
+		return filtered;
+	}
+
+	/*
+	 * Decodes the image row by row into an off heap raster, then deflates it
+	 * filtered with every standard filter type and adaptively (only
+	 * adaptively if so set), one after the other. Only a few rows and the
+	 * deflated image data are held on the heap. Brute force filtering isn't
+	 * tried, it needs the whole image in one array, and neither is the
+	 * compression handler, so no zopfli nor level sweep here.
+	 */
+	private byte[] deflateOffHeap(PngImage image, PngChunk chunk, Iterator<PngChunk> itChunks, Integer compressionLevel) throws IOException {
+		final int level = (compressionLevel == null || compressionLevel > Deflater.BEST_COMPRESSION || compressionLevel < Deflater.NO_COMPRESSION)
+				? Deflater.BEST_COMPRESSION : compressionLevel;
+		final List<PngFilterType> filterTypes = new ArrayList<>();
+		if (!adaptiveFilteringOnly) {
+			filterTypes.addAll(Arrays.asList(STANDARD_FILTER_TYPES));
+		}
+		filterTypes.add(PngFilterType.ADAPTIVE);
+
+		try (ScanlineDecoder rows = getScanlineDecoder(image, chunk, itChunks);
+				PngOffHeapRaster raster = (offHeapDirectory == null)
+						? PngOffHeapRaster.allocateDirect(rows.rowLength(), (int) image.height())
+						: PngOffHeapRaster.map(rows.rowLength(), (int) image.height(), offHeapDirectory)) {
+			while (rows.hasNext()) {
+				final int y = rows.y();
+				raster.putRow(y, rows.next());
+			}
+
+			byte[] smallest = null;
+			for (PngFilterType filterType : filterTypes) {
+				final byte[] deflated = deflate(raster, filterType, image.getSampleBitCount(), level);
+				if (smallest == null || deflated.length < smallest.length) {
+					smallest = deflated;
+				}
+			}
+			return smallest;
+		}
+	}
+
+	/*
+	 * Filters the rows one at a time, adaptively if so asked, streaming them
+	 * through a deflater per strategy at once, and returns the smallest
+	 * result, the earlier strategy on a tie.
+	 */
+	private byte[] deflate(PngOffHeapRaster raster, PngFilterType filterType, int sampleBitCount, int level) throws IOException {
+		final int rowLength = raster.rowLength();
+		byte[] row = new byte[rowLength];
+		byte[] previousRow = new byte[rowLength];
+		final byte[] filtered = new byte[rowLength];
+
+		final ByteArrayOutputStream[] deflatedOuts = new ByteArrayOutputStream[OFF_HEAP_STRATEGIES.length];
+		final Deflater[] deflaters = new Deflater[OFF_HEAP_STRATEGIES.length];
+		final DeflaterOutputStream[] outs = new DeflaterOutputStream[OFF_HEAP_STRATEGIES.length];
+		try {
+			for (int i = 0; i < OFF_HEAP_STRATEGIES.length; i++) {
+				deflatedOuts[i] = new ByteArrayOutputStream();
+				deflaters[i] = new Deflater(level);
+				deflaters[i].setStrategy(OFF_HEAP_STRATEGIES[i]);
+				outs[i] = new DeflaterOutputStream(deflatedOuts[i], deflaters[i], 64 * 1024);
+			}
+			for (int y = 0; y < raster.height(); y++) {
+				raster.getRow(y, row);
+				final byte rowFilterType = (filterType == PngFilterType.ADAPTIVE)
+						? getAdaptiveFilterType(row, 0, previousRow, 0, filtered, sampleBitCount)
+						: filterType.getValue();
+				System.arraycopy(row, 0, filtered, 0, rowLength);
+				filtered[0] = rowFilterType;
+				pngFilterHandler.filter(filtered, previousRow, sampleBitCount);
+				for (DeflaterOutputStream out : outs) {
+					out.write(filtered);
+				}
+
+				final byte[] swap = previousRow;
+				previousRow = row;
+				row = swap;
+			}
+			for (DeflaterOutputStream out : outs) {
+				out.finish();
+			}
+		} finally {
+			for (Deflater deflater : deflaters) {
+				if (deflater != null) {
+					deflater.end();
+				}
+			}
+		}
+
+		ByteArrayOutputStream smallest = deflatedOuts[0];
+		for (ByteArrayOutputStream deflatedOut : deflatedOuts) {
+			if (deflatedOut.size() < smallest.size()) {
+				smallest = deflatedOut;
+			}
+		}
+		return smallest.toByteArray();
+	}
+
+	/*
+	 * Runs the task on the executor. Unlike CompletableFuture.supplyAsync,
+	 * the future fails if the executor rejects the task, e.g. once shut
+	 * down, instead of the exception escaping to whichever thread completed
+	 * the stage before and the future never completing.
+	 */
+	private <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(task.get());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
 	}
 
 	/* */
-	private PngByteArrayOutputStream serialize(List<byte[]> scanlines) {
-		final int scanlineLength = scanlines.get(0).length;
-		final byte[] imageData = new byte[scanlineLength * scanlines.size()];
-		for (int i = 0; i < scanlines.size(); i++) {
-			final int offset = i * scanlineLength;
-			final byte[] scanline = scanlines.get(i);
-			System.arraycopy(scanline, 0, imageData, offset, scanlineLength);
+	private static CompletableFuture<Void> allOf(List<? extends CompletableFuture<?>> futures) {
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+	}
+
+	/**
+	 * The smallest deflated image data offered so far, of equal sizes the
+	 * one with the lowest order is kept.
+	 */
+	private static final class Smallest {
+		private byte[] data;
+		private long order;
+		private boolean interlaced;
+
+		synchronized void offer(byte[] data, long order, boolean interlaced) {
+			if (this.data == null || data.length < this.data.length
+					|| (data.length == this.data.length && order < this.order)) {
+				this.data = data;
+				this.order = order;
+				this.interlaced = interlaced;
+			}
 		}
+	}
 
-		return new PngByteArrayOutputStream(imageData);
+	/**
+	 * Whether optimized images are interlaced (Adam7), which lets them be
+	 * shown progressively while downloading but usually makes them larger.
+	 */
+	public enum Interlacing {
+		/** Never interlaced */
+		NEVER,
+		/** Interlaced when that is smaller */
+		SMALLEST,
+		/** Always interlaced */
+		ALWAYS
 	}
 
 	/**
@@ -232,6 +641,11 @@ public final class PngOptimizer extends PngProcessor {
 		return buffer.array();
 	}
 
+	/**
+	 * Sets the compressor, "zopfli" being the only one besides the default
+	 * deflater sweep. Images held off heap (see {@link #setOffHeapThreshold(long)})
+	 * are always deflated by the streaming deflaters, whatever the compressor.
+	 */
 	public void setCompressor(String compressor, Integer iterations) {
 		if ("zopfli".equals(compressor)) {
 			if (iterations != null) {
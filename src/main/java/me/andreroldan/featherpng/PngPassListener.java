@@ -0,0 +1,23 @@
+package me.andreroldan.featherpng;
+
+/**
+ * Gets the image read so far after every pass of an interlaced image, e.g.
+ * to show a low resolution preview before the whole image is decoded.
+ *
+ * @see PngReader#readRGBA8(PngImage, PngPassListener)
+ */
+public interface PngPassListener {
+
+	/**
+	 * Called once a pass has been decoded.
+	 *
+	 * @param pass The pass, 0 for the first of an interlaced image, the last
+	 *        (6) being the only one of an image that isn't interlaced
+	 * @param rgba The image so far, 4 bytes of rgba per pixel and exactly
+	 *        the image width per row (see the note on padding at
+	 *        {@link PngReader#readRGBA8(PngImage, PngPassListener)}), each pixel
+	 *        decoded standing for the ones its pass precedes; it is still
+	 *        being decoded into and must not be modified
+	 */
+	public void passDecoded(int pass, byte[] rgba);
+}
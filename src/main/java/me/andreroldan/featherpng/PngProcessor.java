@@ -1,19 +1,23 @@
 package me.andreroldan.featherpng;
 
 import me.andreroldan.featherpng.processing.PngByteArrayOutputStream;
+import me.andreroldan.featherpng.processing.PngCodecs;
 import me.andreroldan.featherpng.processing.PngCompressionHandler;
 import me.andreroldan.featherpng.processing.PngFilterHandler;
 import me.andreroldan.featherpng.processing.PngInterlaceHandler;
+import me.andreroldan.featherpng.processing.PngRaster;
 import me.andreroldan.featherpng.processing.PngtasticCompressionHandler;
 import me.andreroldan.featherpng.processing.PngtasticFilterHandler;
 import me.andreroldan.featherpng.processing.PngtasticInterlaceHandler;
+import me.andreroldan.featherpng.processing.ScanlineDecoder;
 
 import java.io.ByteArrayInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 /**
@@ -23,32 +27,82 @@ import java.util.zip.InflaterInputStream;
  */
 public abstract class PngProcessor {
 
+	/* null unless running on JDK 17+ with the jdk.incubator.vector module */
+	private static final Class<?> VECTOR_FILTER_HANDLER = findVectorFilterHandler();
+
 	protected final PngFilterHandler pngFilterHandler;
 	protected final PngInterlaceHandler pngInterlaceHandler;
 
 	protected PngCompressionHandler pngCompressionHandler;
 
 	protected PngProcessor() {
-		this.pngFilterHandler = new PngtasticFilterHandler();
+		this.pngFilterHandler = createFilterHandler();
 		this.pngInterlaceHandler = new PngtasticInterlaceHandler(pngFilterHandler);
 		this.pngCompressionHandler = new PngtasticCompressionHandler();
 	}
 
-	protected PngByteArrayOutputStream getInflatedImageData(PngChunk chunk, Iterator<PngChunk> itChunks)
-			throws IOException {
+	/**
+	 * Sets the handler compressing image data, e.g. a
+	 * {@link PngtasticCompressionHandler} running on an executor of your own.
+	 */
+	public void setCompressionHandler(PngCompressionHandler pngCompressionHandler) {
+		this.pngCompressionHandler = pngCompressionHandler;
+	}
 
-		final PngByteArrayOutputStream imageBytes = new PngByteArrayOutputStream(chunk == null ? 0 : chunk.length());
-		try (final DataOutputStream imageData = new DataOutputStream(imageBytes)) {
-			while (chunk != null) {
-				if (chunk.type() == PngChunk.IMAGE_DATA) {
-					imageData.write(chunk.data());
-				} else {
-					break;
-				}
-				chunk = itChunks.hasNext() ? itChunks.next() : null;
+	/**
+	 * Uses the Vector API filter handler when running on JDK 17+ with the
+	 * {@code jdk.incubator.vector} module, unless the {@code featherpng.vector}
+	 * system property is set to {@code false}.
+	 */
+	private static PngFilterHandler createFilterHandler() {
+		if (VECTOR_FILTER_HANDLER != null) {
+			try {
+				return (PngFilterHandler) VECTOR_FILTER_HANDLER.getConstructor().newInstance();
+			} catch (ReflectiveOperationException e) {
+				throw new PngException(e);
 			}
-			return inflate(imageBytes);
 		}
+		return new PngtasticFilterHandler();
+	}
+
+	/* */
+	private static Class<?> findVectorFilterHandler() {
+		if (!Boolean.parseBoolean(System.getProperty("featherpng.vector", "true"))) {
+			return null;
+		}
+		try {
+			return Class.forName("me.andreroldan.featherpng.processing.VectorFilterHandler");
+		} catch (ClassNotFoundException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Inflates the image data held by the given IDAT chunk and the IDAT chunks
+	 * following it, each chunk is fed to the inflater as is, without first
+	 * concatenating them.
+	 */
+	protected PngByteArrayOutputStream getInflatedImageData(PngChunk chunk, Iterator<PngChunk> itChunks)
+			throws IOException {
+		return inflate(new PngImageDataInputStream(chunk, itChunks));
+	}
+
+	/**
+	 * Inflates the image data of the given image like {@link #getInflatedImageData(PngChunk, Iterator)},
+	 * into a buffer sized from its header.
+	 */
+	protected PngByteArrayOutputStream getInflatedImageData(PngImage image, PngChunk chunk, Iterator<PngChunk> itChunks)
+			throws IOException {
+		return inflate(new PngImageDataInputStream(chunk, itChunks), image.getInflatedImageDataLength());
+	}
+
+	/**
+	 * Creates a decoder streaming the defiltered scanlines of the given image
+	 * out of the given IDAT chunk and the IDAT chunks following it.
+	 */
+	protected ScanlineDecoder getScanlineDecoder(PngImage image, PngChunk chunk, Iterator<PngChunk> itChunks)
+			throws IOException {
+		return new ScanlineDecoder(image, new PngImageDataInputStream(chunk, itChunks), pngFilterHandler, pngInterlaceHandler);
 	}
 
 	/**
@@ -58,17 +112,51 @@ public abstract class PngProcessor {
 	 * @return A byte array containing the uncompressed data
 	 */
 	public PngByteArrayOutputStream inflate(PngByteArrayOutputStream bytes) throws IOException {
-		try (final PngByteArrayOutputStream inflatedOut = new PngByteArrayOutputStream();
-		     final InflaterInputStream inflater = new InflaterInputStream(new ByteArrayInputStream(bytes.get(), 0, bytes.len()))) {
+		return inflate(new ByteArrayInputStream(bytes.get(), 0, bytes.len()));
+	}
 
-			int readLength;
-			final byte[] block = new byte[8192];
+	/**
+	 * Inflate (decompress) the compressed image data as it is read from
+	 * the given stream, e.g. {@link PngChunkReader#imageData()}
+	 *
+	 * @param compressed A stream of the compressed image data
+	 * @return A byte array containing the uncompressed data
+	 */
+	public PngByteArrayOutputStream inflate(InputStream compressed) throws IOException {
+		return inflate(compressed, 0);
+	}
 
-			while ((readLength = inflater.read(block)) != -1) {
-				inflatedOut.write(block, 0, readLength);
-			}
+	/**
+	 * Inflate (decompress) the compressed image data as it is read from
+	 * the given stream, with a pooled inflater
+	 *
+	 * @param compressed A stream of the compressed image data
+	 * @param inflatedLength The expected length of the uncompressed data, e.g.
+	 *        {@link PngImage#getInflatedImageDataLength()}, to size the buffer with
+	 * @return A byte array containing the uncompressed data
+	 */
+	public PngByteArrayOutputStream inflate(InputStream compressed, long inflatedLength) throws IOException {
+		final Inflater inflater = PngCodecs.inflater();
+		try (final InflaterInputStream inflaterStream = new InflaterInputStream(compressed, inflater, 8192)) {
+			final PngByteArrayOutputStream inflatedOut = PngByteArrayOutputStream.withExpectedLength(inflatedLength);
+			inflatedOut.readFrom(inflaterStream);
 			return inflatedOut;
+		} finally {
+			PngCodecs.release(inflater);
+		}
+	}
+
+	/**
+	 * Defilters the (not interlaced) image data where it is, and returns it
+	 * as a raster sharing its array.
+	 */
+	protected PngRaster getRaster(PngByteArrayOutputStream inflatedImageData, int sampleBitCount, int rowLength, long height) {
+		if (inflatedImageData.len() < rowLength * height) {
+			throw new PngException(String.format("Expected %d bytes of image data but got %d", rowLength * height, inflatedImageData.len()));
 		}
+		final PngRaster raster = new PngRaster(inflatedImageData.get(), rowLength, (int) height);
+		pngFilterHandler.deFilter(raster, sampleBitCount);
+		return raster;
 	}
 
 	protected List<byte[]> getScanlines(PngByteArrayOutputStream inflatedImageData, int sampleBitCount, int rowLength, long height) {
@@ -82,7 +170,7 @@ public abstract class PngProcessor {
 			try {
 				pngFilterHandler.deFilter(row, previousRow, sampleBitCount);
 				rows.add(row);
-				previousRow = row.clone();
+				previousRow = row;
 			} catch (PngException e) {
 				System.err.println("Error: " + e.getMessage());
 				e.printStackTrace();
@@ -104,7 +192,7 @@ public abstract class PngProcessor {
 					continue;
 				}
 
-				PngChunk newChunk = new PngChunk(chunk.type(), chunk.data().clone());
+				PngChunk newChunk = new PngChunk(chunk.type(), chunk.toByteArray());
 				if (chunk.type() == PngChunk.IMAGE_HEADER) {
 					newChunk.writeInterlace((byte) 0);
 				}
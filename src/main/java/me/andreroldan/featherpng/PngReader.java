@@ -1,24 +1,21 @@
 package me.andreroldan.featherpng;
 
-import me.andreroldan.featherpng.processing.PngByteArrayOutputStream;
-import me.andreroldan.featherpng.processing.PngInterlaceHandler;
-import me.andreroldan.featherpng.processing.PngtasticInterlaceHandler;
+import me.andreroldan.featherpng.processing.PassDecoder;
+import me.andreroldan.featherpng.processing.ScanlineDecoder;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 
 /**
  * @author rayvanderborght
  */
 public class PngReader extends PngProcessor {
-	private final PngInterlaceHandler pngInterlaceHandler;
-
-	public PngReader() {
-		this.pngInterlaceHandler = new PngtasticInterlaceHandler(pngFilterHandler);
-	}
+	/* the pixels each pixel of an interlaced pass stands for until the following passes are decoded */
+	private static final int[] PASS_BLOCK_WIDTH = { 8, 4, 4, 2, 2, 1, 1 };
+	private static final int[] PASS_BLOCK_HEIGHT = { 8, 8, 4, 4, 2, 2, 1 };
 
 	public static byte[] readRGBA8(final byte[] image) {
 		try {
@@ -28,234 +25,297 @@ public class PngReader extends PngProcessor {
 		}
 	}
 
-	/** */
+	/**
+	 * Reads the image, 4 bytes of rgba per pixel. Rows of less than 8 bits
+	 * per pixel are read up to the end of their last byte, so they may have
+	 * a few more pixels than the image width.
+	 */
 	public byte[] readRGBA8(final PngImage image) throws IOException {
-		// FIXME: support low bit depth interlaced images
-		if (image.getInterlace() == 1 && image.getSampleBitCount() < 8) {
-			throw new PngException("not supported");
-		}
-
-		final Iterator<PngChunk> itChunks = image.chunks().iterator();
-		final PngChunk chunk = processHeadChunks(null, false, itChunks);
-
-		// collect image data chunks
-		final PngByteArrayOutputStream inflatedImageData = getInflatedImageData(chunk, itChunks);
+		return readRGBA8(image, getScanlineDecoder(image));
+	}
 
-		final long width = image.width();
-		final long height = image.height();
-		final int scanlineLength = (int) (Math.ceil(width * image.getSampleBitCount() / 8F)) + 1;
+	/**
+	 * Reads the image, 4 bytes of rgba per pixel, handing the image read so
+	 * far to the listener after every pass of an interlaced image. Until
+	 * its pixel is decoded, each pixel has the value of the pixel of an
+	 * earlier pass its block starts with, as in a progressive rendering.
+	 * Images that aren't interlaced are handed over once, when read.
+	 *
+	 * <p>Rows are exactly the image width, as for the region and destination
+	 * overloads. {@link #readRGBA8(PngImage)} differs for images of less than
+	 * 8 bits per pixel whose rows don't end on a whole byte (e.g. 9 pixels
+	 * of 2 bits): its rows are padded with the pixels of the unused bits of
+	 * the last byte, so they are longer.</p>
+	 */
+	public byte[] readRGBA8(final PngImage image, final PngPassListener listener) throws IOException {
+		final int width = (int) image.width();
+		final int height = (int) image.height();
+		if (image.getInterlace() != 1) {
+			final byte[] result = readRGBA8(image, 0, 0, width, height);
+			listener.passDecoded(PassDecoder.PASSES - 1, result);
+			return result;
+		}
 
-		final List<byte[]> originalScanlines = (image.getInterlace() == 1)
-				? pngInterlaceHandler.deInterlace((int) width, (int) height, image.getSampleBitCount(), inflatedImageData)
-				: getScanlines(inflatedImageData, image.getSampleBitCount(), scanlineLength, height);
+		final PngRgba8Converter converter = PngRgba8Converter.forImage(image);
+		final byte[] result = new byte[width * height * 4];
+		final byte[] rgba = new byte[width * 4];
+		try (final PassDecoder rows = getPassDecoder(image, PassDecoder.PASSES)) {
+			while (rows.hasNext()) {
+				final int pass = rows.pass();
+				final int y = rows.y();
+				final int pixels = rows.width();
+				converter.convert(rows.next(), 0, pixels, rgba, 0);
 
-		final byte[] rgba = getRGBA8(image, originalScanlines);
+				final int offset = y * width * 4;
+				for (int i = 0, x = PassDecoder.columnOffset(pass); i < pixels; i++, x += PassDecoder.columnIncrement(pass)) {
+					for (int to = x; to < Math.min(width, x + PASS_BLOCK_WIDTH[pass]); to++) {
+						System.arraycopy(rgba, i * 4, result, offset + to * 4, 4);
+					}
+				}
+				/* the rows below have nothing but earlier blocks yet */
+				for (int below = y + 1; below < Math.min(height, y + PASS_BLOCK_HEIGHT[pass]); below++) {
+					System.arraycopy(result, offset, result, below * width * 4, width * 4);
+				}
 
-		return rgba;
+				if (!rows.hasNext() || rows.pass() != pass) {
+					listener.passDecoded(pass, result);
+				}
+			}
+		}
+		return result;
 	}
 
-	private byte[] getRGBA8(final PngImage original, final List<byte[]> rows) throws IOException {
-		final PngImageType imageType = PngImageType.forColorType(original.getColorType());
-		final int sampleSize = original.getSampleBitCount();
+	/**
+	 * Reads a region of the image, 4 bytes of rgba per pixel. The rows above
+	 * the region are still inflated and defiltered, since every row depends
+	 * on the one before it, but the image data below it is never inflated
+	 * and only the columns of the region are converted. Interlaced images
+	 * are decoded as a whole first.
+	 *
+	 * @throws IllegalArgumentException If the region isn't within the image
+	 */
+	public byte[] readRGBA8(final PngImage image, final int x, final int y, final int width, final int height) throws IOException {
+		if (x < 0 || y < 0 || width < 1 || height < 1 || x + (long) width > image.width() || y + (long) height > image.height()) {
+			throw new IllegalArgumentException(String.format("Region %dx%d at %d,%d isn't within the %dx%d image",
+					width, height, x, y, image.width(), image.height()));
+		}
 
-		final int perRow = ((rows.get(0).length - 1) * 8) / sampleSize;
-		byte[] result = new byte[perRow * 4 * rows.size()];
-		int y = 0;
-		for (byte[] row : rows) {
-			final int sampleCount = ((row.length - 1) * 8) / sampleSize;
+		final PngRgba8Converter converter = PngRgba8Converter.forImage(image);
+		final byte[] result = new byte[width * height * 4];
+		try (final ScanlineDecoder rows = getScanlineDecoder(image)) {
+			while (rows.y() < y + height) {
+				final int row = rows.y();
+				final byte[] scanline = rows.next();
+				if (row >= y) {
+					converter.convert(scanline, x, width, result, (row - y) * width * 4);
+				}
+			}
+		}
+		return result;
+	}
 
-			final byte[] normalized = normalize(row, original.getBitDepth());
-			final ByteArrayInputStream ins = new ByteArrayInputStream(normalized);
-			final DataInputStream dis = new DataInputStream(ins);
+	/**
+	 * Reads the image scaled down by the given factor, 4 bytes of rgba per
+	 * pixel, the width and height being rounded up. Each pixel is the
+	 * average of the (up to) factor x factor pixels it stands for, summed
+	 * as the rows are decoded, so the image is never held at full size.
+	 * Interlaced images are sampled instead: only the passes that have a
+	 * pixel at every multiple of the factor are decoded (the first alone
+	 * for 8), the image data of the others is never inflated.
+	 *
+	 * @param factor 2, 4 or 8
+	 * @throws IllegalArgumentException If the factor isn't supported
+	 */
+	public byte[] readRGBA8Scaled(final PngImage image, final int factor) throws IOException {
+		if (factor != 2 && factor != 4 && factor != 8) {
+			throw new IllegalArgumentException("Unsupported scale factor " + factor);
+		}
+		final int shift = Integer.numberOfTrailingZeros(factor);
+		final int width = (int) image.width();
+		final int height = (int) image.height();
+		final int scaledWidth = (width + factor - 1) >> shift;
+		final int scaledHeight = (height + factor - 1) >> shift;
 
-			for (int x = 0; x < sampleCount; x++) {
-				switch (imageType) {
-					case INDEXED_COLOR: {
-						final int offset = dis.readUnsignedByte() * 3;
-						final int r = original.getPalette().getUnsignedByte(offset);
-						final int g = original.getPalette().getUnsignedByte(offset + 1);
-						final int b = original.getPalette().getUnsignedByte(offset + 2);
+		final PngRgba8Converter converter = PngRgba8Converter.forImage(image);
+		final byte[] result = new byte[scaledWidth * scaledHeight * 4];
+		final byte[] rgba = new byte[width * 4];
 
-						final int index = (y * perRow + x) * 4;
-						result[index] = (byte) r;
-						result[index + 1] = (byte) g;
-						result[index + 2] = (byte) b;
-						result[index + 3] = (byte) 255;
-						break;
+		if (image.getInterlace() == 1) {
+			/* passes 1 to 5 cover every other pixel, 1 to 3 every fourth and pass 1 every eighth */
+			try (final PassDecoder rows = getPassDecoder(image, 7 - 2 * shift)) {
+				while (rows.hasNext()) {
+					final int pass = rows.pass();
+					final int pixels = rows.width();
+					final int offset = (rows.y() >> shift) * scaledWidth;
+					converter.convert(rows.next(), 0, pixels, rgba, 0);
+					for (int i = 0, x = PassDecoder.columnOffset(pass); i < pixels; i++, x += PassDecoder.columnIncrement(pass)) {
+						System.arraycopy(rgba, i * 4, result, (offset + (x >> shift)) * 4, 4);
 					}
+				}
+			}
+			return result;
+		}
 
-					case GREYSCALE: {
-						if (original.getBitDepth() == 16) {
-							final int p = ((dis.readUnsignedByte() << 8) + dis.readUnsignedByte()) * 255;
-							final int v = Integer.divideUnsigned(p, 65535) + (Integer.remainderUnsigned(p, 65535) > 32767 ? 1 : 0);
-							final int index = (y * perRow + x) * 4;
-							result[index]     = (byte) v;
-							result[index + 1] = (byte) v;
-							result[index + 2] = (byte) v;
-							result[index + 3] = (byte) 255;
-						} else {
-							final int p = dis.readUnsignedByte() * 255;
-							final int max = (int) (Math.pow(2, original.getBitDepth()) - 1);
-							final int v = Integer.divideUnsigned(p, max) + (Integer.remainderUnsigned(p, max) > (max / 2) ? 1 : 0);
-							final int index = (y * perRow + x) * 4;
-							result[index] = (byte) v;
-							result[index + 1] = (byte) v;
-							result[index + 2] = (byte) v;
-							result[index + 3] = (byte) 255;
-						}
-						break;
-					}
+		final int[] sums = new int[scaledWidth * 4];
+		try (final ScanlineDecoder rows = getScanlineDecoder(image)) {
+			while (rows.hasNext()) {
+				final int y = rows.y();
+				converter.convert(rows.next(), 0, width, rgba, 0);
+				for (int x = 0; x < width; x++) {
+					final int sum = (x >> shift) * 4;
+					sums[sum] += rgba[x * 4] & 0xff;
+					sums[sum + 1] += rgba[x * 4 + 1] & 0xff;
+					sums[sum + 2] += rgba[x * 4 + 2] & 0xff;
+					sums[sum + 3] += rgba[x * 4 + 3] & 0xff;
+				}
 
-					case GREYSCALE_ALPHA: {
-						if (original.getBitDepth() == 8) {
-							final int p = dis.readUnsignedByte() * 255;
-							final int a = dis.readUnsignedByte() * 255;
-							final int max = (int) (Math.pow(2, original.getBitDepth()) - 1);
-							final int v = Integer.divideUnsigned(p, max) + (Integer.remainderUnsigned(p, max) > max / 2 ? 1 : 0);
-							final int index = (y * perRow + x) * 4;
-							result[index] = (byte) v;
-							result[index + 1] = (byte) v;
-							result[index + 2] = (byte) v;
-							result[index + 3] = (byte) (Integer.divideUnsigned(a, max) + (Integer.remainderUnsigned(a, max) > max / 2 ? 1 : 0));
-						} else if (original.getBitDepth() == 16) {
-							final int p = ((dis.readUnsignedByte() << 8) + dis.readUnsignedByte()) * 255;
-							final int a = ((dis.readUnsignedByte() << 8) + dis.readUnsignedByte()) * 255;
-							final int v = Integer.divideUnsigned(p, 65535) + (Integer.remainderUnsigned(p, 65535) > 32767 ? 1 : 0);
-							final int index = (y * perRow + x) * 4;
-							result[index]     = (byte) v;
-							result[index + 1] = (byte) v;
-							result[index + 2] = (byte) v;
-							result[index + 3] = (byte) (Integer.divideUnsigned(a, 65535) + (Integer.remainderUnsigned(a, 65535) > 32767 ? 1 : 0));
+				if ((y + 1) % factor == 0 || y + 1 == height) {
+					final int boxHeight = (y % factor) + 1;
+					final int offset = (y >> shift) * scaledWidth * 4;
+					for (int x = 0; x < scaledWidth; x++) {
+						final int count = boxHeight * Math.min(factor, width - (x << shift));
+						for (int c = x * 4; c < x * 4 + 4; c++) {
+							result[offset + c] = (byte) ((sums[c] + count / 2) / count);
 						}
-						break;
 					}
+					Arrays.fill(sums, 0);
+				}
+			}
+		}
+		return result;
+	}
 
-					case TRUECOLOR: {
-						if (original.getBitDepth() == 8) {
-							final int r = dis.readUnsignedByte();
-							final int g = dis.readUnsignedByte();
-							final int b = dis.readUnsignedByte();
-							final int index = (y * perRow + x) * 4;
-							result[index] = (byte) r;
-							result[index + 1] = (byte) g;
-							result[index + 2] = (byte) b;
-							result[index + 3] = (byte) 255;
-						} else if (original.getBitDepth() == 16) {
-							final int r = ((dis.readUnsignedByte() << 8) + dis.readUnsignedByte()) * 255;
-							final int g = ((dis.readUnsignedByte() << 8) + dis.readUnsignedByte()) * 255;
-							final int b = ((dis.readUnsignedByte() << 8) + dis.readUnsignedByte()) * 255;
-							final int index = (y * perRow + x) * 4;
-							result[index]     = (byte) (Integer.divideUnsigned(r, 65535) + (Integer.remainderUnsigned(r, 65535) > 32767 ? 1 : 0));
-							result[index + 1] = (byte) (Integer.divideUnsigned(g, 65535) + (Integer.remainderUnsigned(g, 65535) > 32767 ? 1 : 0));
-							result[index + 2] = (byte) (Integer.divideUnsigned(b, 65535) + (Integer.remainderUnsigned(b, 65535) > 32767 ? 1 : 0));
-							result[index + 3] = (byte) 255;
-						}
-						break;
-					}
+	/**
+	 * Reads the image into the given array instead of a new one, e.g. a
+	 * pooled buffer: 4 bytes of rgba per pixel, row y starting at
+	 * {@code offset + y * stride}. Bytes between rows are left untouched.
+	 *
+	 * @param stride The number of bytes from one row to the next, at least
+	 *        4 per pixel
+	 * @throws IllegalArgumentException If the image doesn't fit
+	 */
+	public void readRGBA8(final PngImage image, final byte[] result, final int offset, final int stride) throws IOException {
+		final int width = checkDestination(image, result.length, offset, stride, 4);
+		final PngRgba8Converter converter = PngRgba8Converter.forImage(image);
+		try (final ScanlineDecoder rows = getScanlineDecoder(image)) {
+			while (rows.hasNext()) {
+				final int y = rows.y();
+				converter.convert(rows.next(), 0, width, result, offset + y * stride);
+			}
+		}
+	}
 
-					case TRUECOLOR_ALPHA: {
-						if (original.getBitDepth() == 16) {
-							final int r = ((dis.readUnsignedByte() << 8) + dis.readUnsignedByte()) * 255;
-							final int g = ((dis.readUnsignedByte() << 8) + dis.readUnsignedByte()) * 255;
-							final int b = ((dis.readUnsignedByte() << 8) + dis.readUnsignedByte()) * 255;
-							final int a = ((dis.readUnsignedByte() << 8) + dis.readUnsignedByte()) * 255;
-							final int index = (y * perRow + x) * 4;
-							result[index]     = (byte) (Integer.divideUnsigned(r, 65535) + (Integer.remainderUnsigned(r, 65535) > 32767 ? 1 : 0));
-							result[index + 1] = (byte) (Integer.divideUnsigned(g, 65535) + (Integer.remainderUnsigned(g, 65535) > 32767 ? 1 : 0));
-							result[index + 2] = (byte) (Integer.divideUnsigned(b, 65535) + (Integer.remainderUnsigned(b, 65535) > 32767 ? 1 : 0));
-							result[index + 3] = (byte) (Integer.divideUnsigned(a, 65535) + (Integer.remainderUnsigned(a, 65535) > 32767 ? 1 : 0));
-						} else {
-							final int r = dis.readUnsignedByte();
-							final int g = dis.readUnsignedByte();
-							final int b = dis.readUnsignedByte();
-							final int a = dis.readUnsignedByte();
-							final int index = (y * perRow + x) * 4;
-							result[index] = (byte) r;
-							result[index + 1] = (byte) g;
-							result[index + 2] = (byte) b;
-							result[index + 3] = (byte) a;
-						}
-						break;
-					}
+	/**
+	 * Reads the image into the given buffer, e.g. a direct one: 4 bytes of
+	 * rgba per pixel, row y starting {@code y * stride} bytes after the
+	 * buffer's position. The position and limit of the buffer are left
+	 * unchanged, and so are the bytes between rows.
+	 *
+	 * @param stride The number of bytes from one row to the next, at least
+	 *        4 per pixel
+	 * @throws IllegalArgumentException If the image doesn't fit
+	 */
+	public void readRGBA8(final PngImage image, final ByteBuffer result, final int stride) throws IOException {
+		final int width = checkDestination(image, result.remaining(), 0, stride, 4);
+		final PngRgba8Converter converter = PngRgba8Converter.forImage(image);
+		final ByteBuffer out = result.duplicate();
+		final byte[] rgba = new byte[width * 4];
+		try (final ScanlineDecoder rows = getScanlineDecoder(image)) {
+			while (rows.hasNext()) {
+				final int y = rows.y();
+				converter.convert(rows.next(), 0, width, rgba, 0);
+				out.position(result.position() + y * stride);
+				out.put(rgba);
+			}
+		}
+	}
 
-					default:
-						throw new IllegalArgumentException();
+	/**
+	 * Reads the image into the given array of packed argb pixels, as used
+	 * by {@code BufferedImage.TYPE_INT_ARGB}, row y starting at
+	 * {@code offset + y * stride}. Pixels between rows are left untouched.
+	 *
+	 * @param stride The number of pixels from one row to the next, at least
+	 *        the image width
+	 * @throws IllegalArgumentException If the image doesn't fit
+	 */
+	public void readARGB(final PngImage image, final int[] result, final int offset, final int stride) throws IOException {
+		final int width = checkDestination(image, result.length, offset, stride, 1);
+		final PngRgba8Converter converter = PngRgba8Converter.forImage(image);
+		final byte[] rgba = new byte[width * 4];
+		try (final ScanlineDecoder rows = getScanlineDecoder(image)) {
+			while (rows.hasNext()) {
+				final int y = rows.y();
+				converter.convert(rows.next(), 0, width, rgba, 0);
+				for (int x = 0, i = offset + y * stride; x < width; x++, i++) {
+					result[i] = ((rgba[x * 4 + 3] & 0xff) << 24) | ((rgba[x * 4] & 0xff) << 16)
+							| ((rgba[x * 4 + 1] & 0xff) << 8) | (rgba[x * 4 + 2] & 0xff);
 				}
 			}
-			y++;
 		}
-
-		return result;
 	}
 
 	/**
-	 * normalize bit depths less than 8 to all fit into one byte per sample
+	 * Reads a png image straight from the given stream: the chunks preceding
+	 * the image data are read into memory, while the image data is inflated
+	 * as it is read, without ever holding the compressed image in memory.
+	 * The stream is left positioned after the image data.
 	 */
-	private byte[] normalize(final byte[] imageData, final int bitDepth) {
-		byte[] scaled;
+	public byte[] readRGBA8(final InputStream ins) throws IOException {
+		final PngChunkReader reader = new PngChunkReader(ins);
+		final PngImage image = new PngImage();
+		while (reader.next() && reader.type() != PngChunk.IMAGE_DATA) {
+			image.addChunk(reader.readChunk());
+		}
+		if (reader.type() != PngChunk.IMAGE_DATA) {
+			throw new PngException("Missing image data");
+		}
+
+		return readRGBA8(image, new ScanlineDecoder(image, reader.imageData(), pngFilterHandler, pngInterlaceHandler));
+	}
+
+	/* */
+	private ScanlineDecoder getScanlineDecoder(final PngImage image) throws IOException {
+		final Iterator<PngChunk> itChunks = image.chunks().iterator();
+		final PngChunk chunk = processHeadChunks(null, false, itChunks);
+		return getScanlineDecoder(image, chunk, itChunks);
+	}
 
-		int length = imageData.length - 1; // remove filter byte
-		switch (bitDepth) {
-			default:
-				throw new PngException("unrecognised depth");
-			case 16:
-			case 8:
-				scaled = new byte[length];
-				System.arraycopy(imageData, 1, scaled, 0, length);
-				return scaled;
-			case 4:
-				scaled = new byte[length * 2];
-				break;
-			case 2:
-				scaled = new byte[length * 4];
-				break;
-			case 1:
-				scaled = new byte[length * 8];
-				break;
+	/* */
+	private PassDecoder getPassDecoder(final PngImage image, final int passes) throws IOException {
+		final Iterator<PngChunk> itChunks = image.chunks().iterator();
+		final PngChunk chunk = processHeadChunks(null, false, itChunks);
+		return new PassDecoder(image, new PngImageDataInputStream(chunk, itChunks), pngFilterHandler, passes);
+	}
+
+	/*
+	 * Checks that every row of the image fits in a destination of the given
+	 * length, with the given number of elements per pixel, and returns the
+	 * image width.
+	 */
+	private static int checkDestination(final PngImage image, final int length, final int offset, final int stride,
+			final int elementsPerPixel) {
+		final long rowLength = image.width() * elementsPerPixel;
+		if (offset < 0 || stride < rowLength
+				|| offset + (image.height() - 1) * stride + rowLength > length) {
+			throw new IllegalArgumentException(String.format("A %dx%d image doesn't fit in %d elements from %d with a stride of %d",
+					image.width(), image.height(), length, offset, stride));
 		}
+		return (int) image.width();
+	}
+
+	/* */
+	private byte[] readRGBA8(final PngImage image, final ScanlineDecoder scanlines) throws IOException {
+		try (final ScanlineDecoder rows = scanlines) {
+			final PngRgba8Converter converter = PngRgba8Converter.forImage(image);
+			final int perRow = ((rows.rowLength() - 1) * 8) / image.getSampleBitCount();
+			final byte[] result = new byte[perRow * 4 * (int) image.height()];
 
-		int i = 0;
-		while (i < length) {
-			byte byte8, byte7, byte6, byte5, byte4, byte3, byte2, byte1;
-			byte b = imageData[i + 1];	// skip filter byte
-			switch (bitDepth) {
-				case 4:
-					byte2 = (byte) (b & 0x0f);
-					byte1 = (byte) (b >> 4);
-					scaled[i * 2] = byte1;
-					scaled[i * 2 + 1] = byte2;
-					break;
-				case 2:
-					byte4 = (byte) (b & 3);
-					byte3 = (byte) (b >> 2 & 3);
-					byte2 = (byte) (b >> 4 & 3);
-					byte1 = (byte) (b >> 6 & 3);
-					scaled[i * 4] = byte1;
-					scaled[i * 4 + 1] = byte2;
-					scaled[i * 4 + 2] = byte3;
-					scaled[i * 4 + 3] = byte4;
-					break;
-				case 1:
-					byte8 = (byte) (b & 1);
-					byte7 = (byte) (b >> 1 & 1);
-					byte6 = (byte) (b >> 2 & 1);
-					byte5 = (byte) (b >> 3 & 1);
-					byte4 = (byte) (b >> 4 & 1);
-					byte3 = (byte) (b >> 5 & 1);
-					byte2 = (byte) (b >> 6 & 1);
-					byte1 = (byte) (b >> 7 & 1);
-					scaled[i * 8] = byte1;
-					scaled[i * 8 + 1] = byte2;
-					scaled[i * 8 + 2] = byte3;
-					scaled[i * 8 + 3] = byte4;
-					scaled[i * 8 + 4] = byte5;
-					scaled[i * 8 + 5] = byte6;
-					scaled[i * 8 + 6] = byte7;
-					scaled[i * 8 + 7] = byte8;
-					break;
+			while (rows.hasNext()) {
+				final int y = rows.y();
+				converter.convert(rows.next(), 0, perRow, result, y * perRow * 4);
 			}
-			i += 1;
+			return result;
 		}
-		return scaled;
 	}
 }
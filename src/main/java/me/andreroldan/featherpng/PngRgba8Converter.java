@@ -0,0 +1,225 @@
+package me.andreroldan.featherpng;
+
+/**
+ * Converts defiltered rows of one image into 8 bit rgba. There's one
+ * converter per kind of row, picked once per image by {@link #forImage},
+ * so converting a row never looks at the color type or bit depth again:
+ * samples of up to 8 bits index a 256 color table (the palette, or the
+ * scaled greys), and 16 bit samples are rounded through a table.
+ */
+abstract class PngRgba8Converter {
+	/* the 16 bit sample rounded to 8 bits */
+	private static final byte[] ROUND16 = new byte[65536];
+
+	static {
+		for (int v = 0; v < ROUND16.length; v++) {
+			ROUND16[v] = (byte) scale(v, 65535);
+		}
+	}
+
+	/**
+	 * Converts the given number of pixels of a row, starting at column x,
+	 * into the result.
+	 *
+	 * @param row The defiltered row, starting with its filter type byte
+	 * @param resultOffset Where the rgba of the first pixel goes
+	 */
+	abstract void convert(byte[] row, int x, int pixels, byte[] result, int resultOffset);
+
+	/**
+	 * The converter for rows of the given image.
+	 *
+	 * @throws PngException If the image has no palette but needs one, or a
+	 *         bit depth its color type doesn't allow
+	 */
+	static PngRgba8Converter forImage(PngImage image) {
+		final int bitDepth = image.getBitDepth();
+		switch (PngImageType.forColorType(image.getColorType())) {
+			case GREYSCALE:
+				if (bitDepth == 16) {
+					return new Greyscale16();
+				}
+				return new Lookup(greys(bitDepth), 256, bitDepth);
+
+			case INDEXED_COLOR:
+				if (image.getPalette() == null) {
+					throw new PngException("Missing palette");
+				}
+				final byte[] palette = image.getPalette().data();
+				return new Lookup(colors(palette), palette.length / 3, checkLowBitDepth(bitDepth));
+
+			case GREYSCALE_ALPHA:
+				return (checkBitDepth(bitDepth) == 8) ? new Copy(2, 0, 0, 0, 1) : new Greyscale16Alpha();
+
+			case TRUECOLOR:
+				return (checkBitDepth(bitDepth) == 8) ? new Copy(3, 0, 1, 2, -1) : new Rounding(3);
+
+			case TRUECOLOR_ALPHA:
+				return (checkBitDepth(bitDepth) == 8) ? new Copy(4, 0, 1, 2, 3) : new Rounding(4);
+
+			default:
+				throw new PngException("Unsupported color type " + image.getColorType());
+		}
+	}
+
+	/* the sample scaled from 0..max to 0..255, rounding halves up */
+	private static int scale(int sample, int max) {
+		final int p = sample * 255;
+		return Integer.divideUnsigned(p, max) + (Integer.remainderUnsigned(p, max) > max / 2 ? 1 : 0);
+	}
+
+	private static int rgba(int r, int g, int b, int a) {
+		return (r << 24) | (g << 16) | (b << 8) | a;
+	}
+
+	/* opaque greys for every sample of the given bit depth */
+	private static int[] greys(int bitDepth) {
+		final int max = (1 << checkLowBitDepth(bitDepth)) - 1;
+		final int[] colors = new int[256];
+		for (int v = 0; v <= max; v++) {
+			final int grey = scale(v, max);
+			colors[v] = rgba(grey, grey, grey, 255);
+		}
+		return colors;
+	}
+
+	/* opaque colors for the entries of the palette, up to 256 */
+	private static int[] colors(byte[] palette) {
+		final int[] colors = new int[256];
+		for (int i = 0; i < colors.length && i * 3 + 2 < palette.length; i++) {
+			colors[i] = rgba(palette[i * 3] & 0xff, palette[i * 3 + 1] & 0xff, palette[i * 3 + 2] & 0xff, 255);
+		}
+		return colors;
+	}
+
+	private static int checkLowBitDepth(int bitDepth) {
+		if (bitDepth != 1 && bitDepth != 2 && bitDepth != 4 && bitDepth != 8) {
+			throw new PngException("Unsupported bit depth " + bitDepth);
+		}
+		return bitDepth;
+	}
+
+	private static int checkBitDepth(int bitDepth) {
+		if (bitDepth != 8 && bitDepth != 16) {
+			throw new PngException("Unsupported bit depth " + bitDepth);
+		}
+		return bitDepth;
+	}
+
+	/*
+	 * Single samples of up to 8 bits, packed most significant bits first,
+	 * used as an index into the color table.
+	 */
+	private static final class Lookup extends PngRgba8Converter {
+		private final int[] colors;
+		private final int colorCount;
+		private final int bitDepth;
+		private final int mask;
+
+		Lookup(int[] colors, int colorCount, int bitDepth) {
+			this.colors = colors;
+			this.colorCount = colorCount;
+			this.bitDepth = bitDepth;
+			this.mask = (1 << bitDepth) - 1;
+		}
+
+		@Override
+		void convert(byte[] row, int x, int pixels, byte[] result, int resultOffset) {
+			final int top = 8 - bitDepth;
+			for (int n = 0, bit = x * bitDepth, o = resultOffset; n < pixels; n++, bit += bitDepth, o += 4) {
+				final int index = (row[1 + (bit >>> 3)] >>> (top - (bit & 7))) & mask;
+				if (index >= colorCount) {
+					throw new PngException("Palette index " + index + " out of range");
+				}
+				final int color = colors[index];
+				result[o] = (byte) (color >>> 24);
+				result[o + 1] = (byte) (color >>> 16);
+				result[o + 2] = (byte) (color >>> 8);
+				result[o + 3] = (byte) color;
+			}
+		}
+	}
+
+	/*
+	 * 8 bit samples copied as is, each rgba channel from the given sample
+	 * of the pixel, opaque when there's no alpha sample (-1).
+	 */
+	private static final class Copy extends PngRgba8Converter {
+		private final int samples;
+		private final int r, g, b, a;
+		private final boolean hasAlpha;
+
+		Copy(int samples, int r, int g, int b, int a) {
+			this.samples = samples;
+			this.r = r;
+			this.g = g;
+			this.b = b;
+			this.a = a;
+			this.hasAlpha = a >= 0;
+		}
+
+		@Override
+		void convert(byte[] row, int x, int pixels, byte[] result, int resultOffset) {
+			if (samples == 4) {
+				System.arraycopy(row, 1 + x * 4, result, resultOffset, pixels * 4);
+				return;
+			}
+			for (int n = 0, i = 1 + x * samples, o = resultOffset; n < pixels; n++, i += samples, o += 4) {
+				result[o] = row[i + r];
+				result[o + 1] = row[i + g];
+				result[o + 2] = row[i + b];
+				result[o + 3] = hasAlpha ? row[i + a] : (byte) 255;
+			}
+		}
+	}
+
+	/* 16 bit greys */
+	private static final class Greyscale16 extends PngRgba8Converter {
+		@Override
+		void convert(byte[] row, int x, int pixels, byte[] result, int resultOffset) {
+			for (int n = 0, i = 1 + x * 2, o = resultOffset; n < pixels; n++, i += 2, o += 4) {
+				final byte v = ROUND16[((row[i] & 0xff) << 8) | (row[i + 1] & 0xff)];
+				result[o] = v;
+				result[o + 1] = v;
+				result[o + 2] = v;
+				result[o + 3] = (byte) 255;
+			}
+		}
+	}
+
+	/* 16 bit greys with alpha */
+	private static final class Greyscale16Alpha extends PngRgba8Converter {
+		@Override
+		void convert(byte[] row, int x, int pixels, byte[] result, int resultOffset) {
+			for (int n = 0, i = 1 + x * 4, o = resultOffset; n < pixels; n++, i += 4, o += 4) {
+				final byte v = ROUND16[((row[i] & 0xff) << 8) | (row[i + 1] & 0xff)];
+				result[o] = v;
+				result[o + 1] = v;
+				result[o + 2] = v;
+				result[o + 3] = ROUND16[((row[i + 2] & 0xff) << 8) | (row[i + 3] & 0xff)];
+			}
+		}
+	}
+
+	/* 16 bit truecolor, with or without alpha */
+	private static final class Rounding extends PngRgba8Converter {
+		private final int samples;
+		private final boolean hasAlpha;
+
+		Rounding(int samples) {
+			this.samples = samples;
+			this.hasAlpha = samples == 4;
+		}
+
+		@Override
+		void convert(byte[] row, int x, int pixels, byte[] result, int resultOffset) {
+			final int stride = samples * 2;
+			for (int n = 0, i = 1 + x * stride, o = resultOffset; n < pixels; n++, i += stride, o += 4) {
+				result[o] = ROUND16[((row[i] & 0xff) << 8) | (row[i + 1] & 0xff)];
+				result[o + 1] = ROUND16[((row[i + 2] & 0xff) << 8) | (row[i + 3] & 0xff)];
+				result[o + 2] = ROUND16[((row[i + 4] & 0xff) << 8) | (row[i + 5] & 0xff)];
+				result[o + 3] = hasAlpha ? ROUND16[((row[i + 6] & 0xff) << 8) | (row[i + 7] & 0xff)] : (byte) 255;
+			}
+		}
+	}
+}
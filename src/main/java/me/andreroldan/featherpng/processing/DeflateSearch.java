@@ -0,0 +1,60 @@
+package me.andreroldan.featherpng.processing;
+
+/**
+ * Configures the search {@link PngtasticCompressionHandler} runs instead of
+ * the brute force trial of every compression strategy and level, when no
+ * compression level is given.
+ *
+ * <p>Every (strategy, level) pair is first tried on a sample of the image
+ * data, made of slices spread evenly over it. Only the best ranked pairs
+ * are then used to compress the whole image, in rank order, stopping as
+ * soon as a pair saves less than the minimum gain over the best output so
+ * far, or the time budget is spent. This holds for
+ * {@link PngtasticCompressionHandler#deflateTrials} too, which then hands
+ * out the whole search as a single trial.</p>
+ */
+public final class DeflateSearch {
+	/** The number of bytes of image data sampled to rank the pairs */
+	public final int sampleBytes;
+
+	/** The number of slices the sample is made of */
+	public final int sampleSlices;
+
+	/** The maximum number of pairs used to compress the whole image */
+	public final int topK;
+
+	/**
+	 * The time after which no more pairs are tried on the whole image, at
+	 * least one always is. Zero or less for no limit.
+	 */
+	public final long timeBudgetMillis;
+
+	/**
+	 * The number of bytes a pair has to save over the best output so far
+	 * for the next ranked pair to be tried. 1 stops as soon as the output
+	 * stops shrinking.
+	 */
+	public final int minGainBytes;
+
+	/** Stops as soon as the output stops shrinking */
+	public DeflateSearch(int sampleBytes, int sampleSlices, int topK, long timeBudgetMillis) {
+		this(sampleBytes, sampleSlices, topK, timeBudgetMillis, 1);
+	}
+
+	/** */
+	public DeflateSearch(int sampleBytes, int sampleSlices, int topK, long timeBudgetMillis, int minGainBytes) {
+		if (sampleBytes < 1 || sampleSlices < 1 || topK < 1 || minGainBytes < 1) {
+			throw new IllegalArgumentException("sampleBytes, sampleSlices, topK and minGainBytes must be positive");
+		}
+		this.sampleBytes = sampleBytes;
+		this.sampleSlices = Math.min(sampleSlices, sampleBytes);
+		this.topK = topK;
+		this.timeBudgetMillis = timeBudgetMillis;
+		this.minGainBytes = minGainBytes;
+	}
+
+	/** Samples 64k in 16 slices and compresses with the best 3 pairs at most */
+	public DeflateSearch() {
+		this(64 * 1024, 16, 3, 0L);
+	}
+}
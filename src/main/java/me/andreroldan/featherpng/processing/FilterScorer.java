@@ -0,0 +1,20 @@
+package me.andreroldan.featherpng.processing;
+
+/**
+ * Scores a filtered scanline by how well it is expected to compress, so
+ * adaptive filtering can pick the filter type of every row.
+ *
+ * <p>Scorers are called for every row and filter type, they shouldn't
+ * allocate and must be safe to call from several threads at once.</p>
+ *
+ * @see FilterScorers
+ * @see PngFilterHandler#applyAdaptiveFiltering(java.util.List, java.util.Map, int, FilterScorer)
+ */
+public interface FilterScorer {
+
+	/**
+	 * The score of the given filtered scanline, the lower the better. The
+	 * filter type byte it starts with is not scored.
+	 */
+	public double score(byte[] scanline);
+}
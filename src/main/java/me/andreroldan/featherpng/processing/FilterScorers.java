@@ -0,0 +1,114 @@
+package me.andreroldan.featherpng.processing;
+
+/**
+ * The filter scorers adaptive filtering can use. Those counting bytes
+ * keep their counts in a table per thread, which is cleared again while
+ * scoring, so nothing is allocated per row.
+ */
+public final class FilterScorers {
+	private static final double LOG_2 = Math.log(2);
+
+	/**
+	 * The sum of the absolute values of the bytes taken as signed, the
+	 * heuristic suggested by the png spec.
+	 */
+	public static final FilterScorer MIN_SUM_ABS = new FilterScorer() {
+		@Override
+		public double score(byte[] scanline) {
+			long sum = 0;
+			for (int i = 1; i < scanline.length; i++) {
+				sum += Math.abs(scanline[i]);
+			}
+			return sum;
+		}
+	};
+
+	/**
+	 * The Shannon entropy of the bytes in bits, i.e. the size of the row
+	 * with an ideal order 0 (huffman like) code.
+	 */
+	public static final FilterScorer ENTROPY = new FilterScorer() {
+		private final ThreadLocal<int[]> counts = new ThreadLocal<int[]>() {
+			@Override
+			protected int[] initialValue() {
+				return new int[256];
+			}
+		};
+
+		@Override
+		public double score(byte[] scanline) {
+			final int[] counts = this.counts.get();
+			for (int i = 1; i < scanline.length; i++) {
+				counts[scanline[i] & 0xff]++;
+			}
+			return entropy(scanline, counts, 1, 0);
+		}
+	};
+
+	/**
+	 * The entropy of the pairs of adjacent bytes in bits, which also
+	 * rewards rows repeating short sequences, as deflate does.
+	 */
+	public static final FilterScorer BIGRAM_ENTROPY = new FilterScorer() {
+		private final ThreadLocal<int[]> counts = new ThreadLocal<int[]>() {
+			@Override
+			protected int[] initialValue() {
+				return new int[256 * 256];
+			}
+		};
+
+		@Override
+		public double score(byte[] scanline) {
+			final int[] counts = this.counts.get();
+			for (int i = 2; i < scanline.length; i++) {
+				counts[((scanline[i - 1] & 0xff) << 8) | (scanline[i] & 0xff)]++;
+			}
+			return entropy(scanline, counts, 2, 0xff);
+		}
+	};
+
+	/** The number of distinct byte values */
+	public static final FilterScorer DISTINCT_BYTES = new FilterScorer() {
+		@Override
+		public double score(byte[] scanline) {
+			// one bit per byte value
+			long seen0 = 0, seen1 = 0, seen2 = 0, seen3 = 0;
+			for (int i = 1; i < scanline.length; i++) {
+				final int value = scanline[i] & 0xff;
+				switch (value >>> 6) {
+					case 0: seen0 |= 1L << value; break;
+					case 1: seen1 |= 1L << value; break;
+					case 2: seen2 |= 1L << value; break;
+					default: seen3 |= 1L << value; break;
+				}
+			}
+			return Long.bitCount(seen0) + Long.bitCount(seen1) + Long.bitCount(seen2) + Long.bitCount(seen3);
+		}
+	};
+
+	/* */
+	private FilterScorers() { }
+
+	/*
+	 * The entropy in bits of the symbols counted from the given index on,
+	 * a symbol being the byte there, along with the one before it when the
+	 * mask is 0xff. Every count is cleared on the way.
+	 */
+	private static double entropy(byte[] scanline, int[] counts, int from, int mask) {
+		final int total = scanline.length - from;
+		if (total <= 0) {
+			return 0;
+		}
+
+		double sum = 0;
+		for (int i = from; i < scanline.length; i++) {
+			final int symbol = ((scanline[i - 1] & mask) << 8) | (scanline[i] & 0xff);
+			final int count = counts[symbol];
+			if (count != 0) {
+				sum += count * Math.log(count);
+				counts[symbol] = 0;
+			}
+		}
+		return (total * Math.log(total) - sum) / LOG_2;
+	}
+}
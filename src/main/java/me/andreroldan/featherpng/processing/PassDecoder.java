@@ -0,0 +1,215 @@
+package me.andreroldan.featherpng.processing;
+
+import me.andreroldan.featherpng.PngException;
+import me.andreroldan.featherpng.PngImage;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes the reduced images (passes) of an Adam7 interlaced png one row
+ * at a time, pass after pass, inflating and defiltering each row as it is
+ * asked for. Decoding can stop after any pass, the image data of the
+ * following passes is then never inflated.
+ *
+ * <p>The returned rows start with their filter type byte, are reused and
+ * may be longer than the row of the pass: a row is only valid until the
+ * next call to {@link #next()}, and holds {@link #width()} pixels.</p>
+ *
+ * @see ScanlineDecoder
+ */
+public class PassDecoder implements Iterator<byte[]>, Closeable {
+	/** The number of passes of an Adam7 interlaced image */
+	public static final int PASSES = 7;
+
+	private static final int[] ROW_OFFSET = { 0, 0, 4, 0, 2, 0, 1 };
+	private static final int[] COLUMN_OFFSET = { 0, 4, 0, 2, 0, 1, 0 };
+	private static final int[] ROW_INCREMENT = { 8, 8, 8, 4, 4, 2, 2 };
+	private static final int[] COLUMN_INCREMENT = { 8, 8, 4, 4, 2, 2, 1 };
+
+	private final PngFilterHandler pngFilterHandler;
+	private final int sampleBitCount;
+	private final long width;
+	private final long height;
+	private final int passes;
+
+	private final InputStream inflated;
+	private Inflater inflater;
+
+	private byte[] row;
+	private byte[] previousRow;
+
+	/* the pass of the next row, its index within the pass and the number of pixels and rows of the pass */
+	private int pass = -1;
+	private int passRow;
+	private int passWidth;
+	private int passHeight;
+
+	/**
+	 * @param image The image to decode, only its header is used
+	 * @param compressed The compressed (zlib) image data
+	 * @param pngFilterHandler The filter handler used to defilter rows
+	 * @param passes The number of passes to decode, from the first
+	 */
+	public PassDecoder(PngImage image, InputStream compressed, PngFilterHandler pngFilterHandler, int passes) {
+		if (passes < 1 || passes > PASSES) {
+			throw new IllegalArgumentException("Invalid number of passes " + passes);
+		}
+		this.pngFilterHandler = pngFilterHandler;
+		this.sampleBitCount = image.getSampleBitCount();
+		this.width = image.width();
+		this.height = image.height();
+		this.passes = passes;
+
+		this.inflater = PngCodecs.inflater();
+		this.inflated = new InflaterInputStream(compressed, inflater, 8192);
+
+		/* the last pass has the longest rows, as long as those of the image */
+		final int rowLength = (int) ((width * sampleBitCount + 7) / 8) + 1;
+		this.row = new byte[rowLength];
+		this.previousRow = new byte[rowLength];	// rows of zeros come before the first row of every pass
+		nextPass();
+	}
+
+	/** The number of pixels in the given pass of a row of the given width */
+	public static int columns(int pass, long width) {
+		return (int) Math.max(0, (width - COLUMN_OFFSET[pass] + COLUMN_INCREMENT[pass] - 1) / COLUMN_INCREMENT[pass]);
+	}
+
+	/** The number of rows in the given pass of an image of the given height */
+	public static int rows(int pass, long height) {
+		return (int) Math.max(0, (height - ROW_OFFSET[pass] + ROW_INCREMENT[pass] - 1) / ROW_INCREMENT[pass]);
+	}
+
+	/** The column of the first pixel of the given pass */
+	public static int columnOffset(int pass) {
+		return COLUMN_OFFSET[pass];
+	}
+
+	/** The number of columns from a pixel of the given pass to the next */
+	public static int columnIncrement(int pass) {
+		return COLUMN_INCREMENT[pass];
+	}
+
+	/** The row of the first row of the given pass */
+	public static int rowOffset(int pass) {
+		return ROW_OFFSET[pass];
+	}
+
+	/** The number of rows from a row of the given pass to the next */
+	public static int rowIncrement(int pass) {
+		return ROW_INCREMENT[pass];
+	}
+
+	/** The pass of the next row */
+	public int pass() {
+		return pass;
+	}
+
+	/** The row of the image the next row belongs to */
+	public int y() {
+		return ROW_OFFSET[pass] + passRow * ROW_INCREMENT[pass];
+	}
+
+	/** The number of pixels of the next row */
+	public int width() {
+		return passWidth;
+	}
+
+	/** The length of the next row, including the filter type byte */
+	public int rowLength() {
+		return (int) (((long) passWidth * sampleBitCount + 7) / 8) + 1;
+	}
+
+	/** */
+	@Override
+	public boolean hasNext() {
+		return pass < passes;
+	}
+
+	/**
+	 * Returns the next defiltered row, which is only valid until the next call.
+	 *
+	 * @throws PngException if the image data can't be read
+	 */
+	@Override
+	public byte[] next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		final byte[] current = previousRow;
+		previousRow = row;
+		row = current;
+		if (passRow == 0) {
+			Arrays.fill(previousRow, (byte) 0);
+		}
+
+		final int rowLength = rowLength();
+		try {
+			readFully(row, rowLength);
+		} catch (IOException e) {
+			close();
+			throw new PngException("Error reading image data", e);
+		}
+		pngFilterHandler.deFilter(row, 0, rowLength, previousRow, 0, sampleBitCount);
+
+		if (++passRow == passHeight) {
+			nextPass();
+		}
+		return row;
+	}
+
+	/**
+	 * Closes the compressed image data stream and gives the inflater back to
+	 * its pool, this is done automatically once the last row has been read.
+	 */
+	@Override
+	public void close() {
+		if (inflater == null) {
+			return;
+		}
+		try {
+			inflated.close();
+		} catch (IOException e) {
+			throw new PngException("Error closing image data", e);
+		} finally {
+			PngCodecs.release(inflater);
+			inflater = null;
+		}
+	}
+
+	/* moves on to the next pass that has pixels, closing the stream after the last one */
+	private void nextPass() {
+		do {
+			pass++;
+		} while (pass < passes && (columns(pass, width) == 0 || rows(pass, height) == 0));
+
+		if (pass < passes) {
+			passRow = 0;
+			passWidth = columns(pass, width);
+			passHeight = rows(pass, height);
+		} else {
+			close();
+		}
+	}
+
+	/* */
+	private void readFully(byte[] b, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			final int readLength = inflated.read(b, offset, length - offset);
+			if (readLength < 0) {
+				throw new EOFException("Expected " + (length - offset) + " more bytes of image data for row " + passRow + " of pass " + (pass + 1));
+			}
+			offset += readLength;
+		}
+	}
+}
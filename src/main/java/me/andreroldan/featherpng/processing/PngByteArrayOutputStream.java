@@ -1,6 +1,9 @@
 package me.andreroldan.featherpng.processing;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * Allows access to the underlying buf without doing deep copies on it
@@ -8,6 +11,8 @@ import java.io.ByteArrayOutputStream;
  * @author ray
  */
 public class PngByteArrayOutputStream extends ByteArrayOutputStream {
+	/* a corrupt header shouldn't get gigabytes allocated up front */
+	private static final int MAX_EXPECTED_LENGTH = 64 * 1024 * 1024;
 
 	private final int initialSize;
 
@@ -21,9 +26,23 @@ public class PngByteArrayOutputStream extends ByteArrayOutputStream {
 	}
 
 	public PngByteArrayOutputStream(byte[] initial) {
+		this(initial, initial.length);
+	}
+
+	/** Holds the first length bytes of the given array, without copying them */
+	public PngByteArrayOutputStream(byte[] initial, int length) {
 		buf = initial;
-		count = initial.length;
-		initialSize = count;
+		count = length;
+		initialSize = initial.length;
+	}
+
+	/**
+	 * Creates a stream sized for the given expected length, e.g. of the image
+	 * data according to the header, which is trusted up to 64 MiB. The stream
+	 * still grows past it if needed.
+	 */
+	public static PngByteArrayOutputStream withExpectedLength(long length) {
+		return new PngByteArrayOutputStream((int) Math.max(32, Math.min(length, MAX_EXPECTED_LENGTH)));
 	}
 
 	public byte[] get() {
@@ -40,4 +59,27 @@ public class PngByteArrayOutputStream extends ByteArrayOutputStream {
 	public int len() {
 		return count;
 	}
+
+	/**
+	 * Reads the given stream to its end straight into the buffer, which only
+	 * grows if the stream turns out to be longer than it.
+	 */
+	public void readFrom(InputStream in) throws IOException {
+		while (true) {
+			if (count == buf.length) {
+				// check for the end first, so an exactly sized buffer isn't grown for nothing
+				final int b = in.read();
+				if (b < 0) {
+					return;
+				}
+				buf = Arrays.copyOf(buf, (int) Math.min(Math.max(buf.length * 2L, 32), Integer.MAX_VALUE - 8));
+				buf[count++] = (byte) b;
+			}
+			final int readLength = in.read(buf, count, buf.length - count);
+			if (readLength < 0) {
+				return;
+			}
+			count += readLength;
+		}
+	}
 }
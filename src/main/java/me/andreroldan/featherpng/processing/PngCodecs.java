@@ -0,0 +1,174 @@
+package me.andreroldan.featherpng.processing;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pools the native zlib contexts behind {@link Deflater} and {@link Inflater},
+ * one pool per thread, so compressing and decompressing many small images
+ * doesn't allocate (and free) a native context every time. Pooled contexts
+ * are {@linkplain Deflater#reset() reset} instead of ended.
+ *
+ * <p>Deflaters are only reused for the same compression level and strategy:
+ * changing them on a reset deflater would have zlib flush a block (or write
+ * the stream header with the old level) on some versions, which changes the
+ * compressed output.</p>
+ */
+public final class PngCodecs {
+	/* enough to keep a deflater for every strategy and level of a brute force trial */
+	private static final int MAX_IDLE_DEFLATERS = 27;
+	static final int MAX_IDLE_INFLATERS = 4;
+
+	private static final int BLOCK_SIZE = 8192;
+
+	private static final ThreadLocal<Pool> POOL = new ThreadLocal<Pool>() {
+		@Override
+		protected Pool initialValue() {
+			return new Pool();
+		}
+	};
+
+	/* */
+	private PngCodecs() { }
+
+	/**
+	 * Deflates (compresses) the given data with a pooled deflater of the
+	 * given compression level and strategy.
+	 *
+	 * @param out The stream the zlib compressed data is written to
+	 */
+	public static void deflate(byte[] data, int offset, int length, int level, int strategy, ByteArrayOutputStream out) {
+		final Pool pool = POOL.get();
+		final PooledDeflater pooled = pool.deflater(level, strategy);
+		try {
+			final Deflater deflater = pooled.deflater;
+			deflater.setInput(data, offset, length);
+			deflater.finish();
+			while (!deflater.finished()) {
+				final int deflatedLength = deflater.deflate(pool.block);
+				out.write(pool.block, 0, deflatedLength);
+			}
+		} catch (RuntimeException e) {
+			pooled.deflater.end();
+			throw e;
+		}
+		pool.release(pooled);
+	}
+
+	/**
+	 * The number of bytes the given data adds to a deflate stream that has
+	 * already compressed the given dictionary, e.g. the data before it, up to
+	 * a sync flush. Only meant for comparing data, the count includes the
+	 * zlib header.
+	 */
+	static int deflatedLength(byte[] dictionary, int dictionaryLength, byte[] data, int offset, int length, int level) {
+		final Pool pool = POOL.get();
+		final PooledDeflater pooled = pool.deflater(level, Deflater.DEFAULT_STRATEGY);
+		int deflatedLength = 0;
+		try {
+			final Deflater deflater = pooled.deflater;
+			if (dictionaryLength > 0) {
+				deflater.setDictionary(dictionary, 0, dictionaryLength);
+			}
+			deflater.setInput(data, offset, length);
+			int blockLength;
+			do {
+				blockLength = deflater.deflate(pool.block, 0, pool.block.length, Deflater.SYNC_FLUSH);
+				deflatedLength += blockLength;
+			} while (blockLength == pool.block.length);
+		} catch (RuntimeException e) {
+			pooled.deflater.end();
+			throw e;
+		}
+		pool.release(pooled);
+		return deflatedLength;
+	}
+
+	/**
+	 * An inflater from the pool of the calling thread, which should be given
+	 * back with {@link #release(Inflater)} once done.
+	 */
+	public static Inflater inflater() {
+		final Inflater inflater = POOL.get().inflaters.poll();
+		return (inflater == null) ? new Inflater() : inflater;
+	}
+
+	/**
+	 * Gives the inflater back to the pool of the calling thread, or ends it if
+	 * the pool is full. The inflater must not be used afterwards.
+	 */
+	public static void release(Inflater inflater) {
+		final ArrayDeque<Inflater> inflaters = POOL.get().inflaters;
+		if (inflaters.size() < MAX_IDLE_INFLATERS) {
+			inflater.reset();
+			inflaters.push(inflater);
+		} else {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Ends every context pooled by the calling thread, e.g. before handing a
+	 * long-lived thread back to an application server. Threads that die have
+	 * theirs ended once garbage collected.
+	 */
+	public static void clear() {
+		final Pool pool = POOL.get();
+		for (PooledDeflater pooled : pool.deflaters) {
+			pooled.deflater.end();
+		}
+		for (Inflater inflater : pool.inflaters) {
+			inflater.end();
+		}
+		POOL.remove();
+	}
+
+	/* the pool of the calling thread, for tests */
+	static Pool pool() {
+		return POOL.get();
+	}
+
+	/* */
+	static final class PooledDeflater {
+		final Deflater deflater;
+		final int level;
+		final int strategy;
+
+		PooledDeflater(int level, int strategy) {
+			this.deflater = new Deflater(level);
+			this.deflater.setStrategy(strategy);
+			this.level = level;
+			this.strategy = strategy;
+		}
+	}
+
+	/* the most recently released contexts come first */
+	static final class Pool {
+		final ArrayDeque<PooledDeflater> deflaters = new ArrayDeque<>();
+		final ArrayDeque<Inflater> inflaters = new ArrayDeque<>();
+		final byte[] block = new byte[BLOCK_SIZE];
+
+		PooledDeflater deflater(int level, int strategy) {
+			for (Iterator<PooledDeflater> it = deflaters.iterator(); it.hasNext(); ) {
+				final PooledDeflater pooled = it.next();
+				if (pooled.level == level && pooled.strategy == strategy) {
+					it.remove();
+					return pooled;
+				}
+			}
+			return new PooledDeflater(level, strategy);
+		}
+
+		/* drops the least recently used deflater when full */
+		void release(PooledDeflater pooled) {
+			pooled.deflater.reset();
+			deflaters.push(pooled);
+			if (deflaters.size() > MAX_IDLE_DEFLATERS) {
+				deflaters.removeLast().deflater.end();
+			}
+		}
+	}
+}
@@ -1,6 +1,9 @@
 package me.andreroldan.featherpng.processing;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Apply PNG compression and decompression. Implies zlib format, aka LZ77.
@@ -23,5 +26,18 @@ public interface PngCompressionHandler {
 	 */
 	public byte[] deflate(PngByteArrayOutputStream inflatedImageData, Integer compressionLevel, boolean concurrent) throws IOException;
 
+	/**
+	 * The independent trials {@link #deflate} picks the smallest result of,
+	 * e.g. one per compression strategy and level, so callers can run them
+	 * on an executor of their own. Ties go to the earlier trial.
+	 *
+	 * @param inflatedImageData The uncompressed image data, which the trials only read
+	 * @param compressionLevel The compression level to use, or null to try them all
+	 * @return The trials, each returning compressed image data
+	 */
+	public default List<Callable<byte[]>> deflateTrials(final PngByteArrayOutputStream inflatedImageData, final Integer compressionLevel) {
+		return Collections.<Callable<byte[]>>singletonList(() -> deflate(inflatedImageData, compressionLevel, false));
+	}
+
 	public String encodeBytes(byte[] bytes);
 }
@@ -0,0 +1,98 @@
+package me.andreroldan.featherpng.processing;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for running compression work in the background.
+ *
+ * <p>The pools are bounded both in threads and in queued tasks. Once the
+ * queue is full, new tasks run on the thread submitting them, which slows
+ * submitters down instead of piling up work (back-pressure). Deflating is
+ * cpu bound, so more threads than cores (or virtual threads) wouldn't make
+ * it any faster. Once shut down, they reject new tasks with a
+ * {@link RejectedExecutionException} instead of dropping them.</p>
+ */
+public final class PngExecutors {
+	private static final int QUEUED_TASKS_PER_THREAD = 64;
+
+	/* */
+	private PngExecutors() { }
+
+	/**
+	 * The executor shared by every handler and optimizer not given one of
+	 * their own: a thread per available core, with daemon threads, so it
+	 * never has to be shut down. It is only handed out as an
+	 * {@link Executor}, so no caller can shut it down for the others.
+	 */
+	public static Executor shared() {
+		return Shared.EXECUTOR;
+	}
+
+	/**
+	 * Creates a bounded executor with daemon threads, which times out its
+	 * idle threads.
+	 *
+	 * @param threads The maximum number of threads
+	 * @param queueCapacity The maximum number of tasks waiting for a thread,
+	 *        further tasks run on the thread submitting them
+	 */
+	public static ExecutorService newBoundedExecutor(int threads, int queueCapacity) {
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new DaemonThreadFactory(), new CallerRunsUnlessShutdown());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/* created on first use, wrapped so it can't be cast back to an ExecutorService */
+	private static final class Shared {
+		private static final Executor EXECUTOR;
+		static {
+			final int threads = Runtime.getRuntime().availableProcessors();
+			final ExecutorService executor = newBoundedExecutor(threads, threads * QUEUED_TASKS_PER_THREAD);
+			EXECUTOR = new Executor() {
+				@Override
+				public void execute(Runnable command) {
+					executor.execute(command);
+				}
+			};
+		}
+	}
+
+	/*
+	 * Runs tasks the full queue has no room for on the submitting thread,
+	 * like CallerRunsPolicy, but rejects them once shut down, where
+	 * CallerRunsPolicy would silently drop them.
+	 */
+	private static final class CallerRunsUnlessShutdown implements RejectedExecutionHandler {
+		@Override
+		public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("Executor has been shut down");
+			}
+			runnable.run();
+		}
+	}
+
+	/* */
+	private static final class DaemonThreadFactory implements ThreadFactory {
+		private static final AtomicInteger POOLS = new AtomicInteger();
+
+		private final int pool = POOLS.incrementAndGet();
+		private final AtomicInteger threads = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			final Thread thread = new Thread(runnable, "featherpng-" + pool + "-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
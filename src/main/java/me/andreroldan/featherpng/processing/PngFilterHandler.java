@@ -4,6 +4,7 @@ import me.andreroldan.featherpng.PngException;
 import me.andreroldan.featherpng.PngFilterType;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -19,20 +20,95 @@ public interface PngFilterHandler {
 	 */
 	public void applyFiltering(PngFilterType filterType, List<byte[]> scanlines, int sampleBitCount);
 
+	/**
+	 * Apply the given filter type to the rows of the raster, in place.
+	 * By default the rows are copied out to scanlines and back.
+	 */
+	public default void applyFiltering(PngFilterType filterType, PngRaster raster, int sampleBitCount) {
+		final List<byte[]> scanlines = raster.toScanlines();
+		applyFiltering(filterType, scanlines, sampleBitCount);
+		for (int y = 0; y < scanlines.size(); y++) {
+			System.arraycopy(scanlines.get(y), 0, raster.data(), raster.offset(y), raster.rowLength());
+		}
+	}
+
 	/**
 	 * Apply adaptive filtering as described in the png spec.
 	 */
 	public void applyAdaptiveFiltering(PngByteArrayOutputStream inflatedImageData, List<byte[]> scanlines, Map<PngFilterType, List<byte[]>> filteredScanLines, int sampleSize) throws IOException;
 
+	/**
+	 * Apply adaptive filtering, giving every row the filter type whose
+	 * filtered row, out of the given ones, has the lowest score. Ties go to
+	 * the first filter type of the map.
+	 */
+	public default void applyAdaptiveFiltering(List<byte[]> scanlines, Map<PngFilterType, List<byte[]>> filteredScanLines, int sampleBitCount, FilterScorer scorer) {
+		for (int s = 0; s < scanlines.size(); s++) {
+			double bestScore = Double.POSITIVE_INFINITY;
+			PngFilterType bestFilterType = null;
+			for (Map.Entry<PngFilterType, List<byte[]>> entry : filteredScanLines.entrySet()) {
+				final double score = scorer.score(entry.getValue().get(s));
+				if (score < bestScore) {
+					bestFilterType = entry.getKey();
+					bestScore = score;
+				}
+			}
+			if (bestFilterType != null) {
+				scanlines.get(s)[0] = bestFilterType.getValue();
+			}
+		}
+
+		applyFiltering(null, scanlines, sampleBitCount);
+	}
+
 	/**
 	 * Do filtering as described in the png spec:
 	 * The scanline starts with a filter type byte, then continues with the image data.
 	 */
 	public void filter(byte[] line, byte[] previousLine, int sampleBitCount) throws PngException;
 
+	/**
+	 * Filters the line of the given length at the given offset, the previous
+	 * line being at its own offset of its array.
+	 * By default both lines are copied out and the line copied back.
+	 * @see #filter(byte[], byte[], int)
+	 */
+	public default void filter(byte[] line, int offset, int length, byte[] previousLine, int previousOffset, int sampleBitCount) throws PngException {
+		final byte[] copy = Arrays.copyOfRange(line, offset, offset + length);
+		filter(copy, Arrays.copyOfRange(previousLine, previousOffset, previousOffset + length), sampleBitCount);
+		System.arraycopy(copy, 0, line, offset, length);
+	}
+
 	/**
 	 * Do the opposite of PNG filtering:
 	 * @see #filter(byte[], byte[], int)
 	 */
 	public void deFilter(byte[] line, byte[] previousLine, int sampleBitCount) throws PngException;
+
+	/**
+	 * Defilters the line of the given length at the given offset, the
+	 * previous line being at its own offset of its array.
+	 * By default both lines are copied out and the line copied back.
+	 * @see #deFilter(byte[], byte[], int)
+	 */
+	public default void deFilter(byte[] line, int offset, int length, byte[] previousLine, int previousOffset, int sampleBitCount) throws PngException {
+		final byte[] copy = Arrays.copyOfRange(line, offset, offset + length);
+		deFilter(copy, Arrays.copyOfRange(previousLine, previousOffset, previousOffset + length), sampleBitCount);
+		System.arraycopy(copy, 0, line, offset, length);
+	}
+
+	/**
+	 * Defilters the rows of the raster in place, top down.
+	 */
+	public default void deFilter(PngRaster raster, int sampleBitCount) throws PngException {
+		final byte[] data = raster.data();
+		final int rowLength = raster.rowLength();
+		if (raster.height() > 0) {
+			deFilter(data, 0, rowLength, new byte[rowLength], 0, sampleBitCount);
+		}
+		for (int y = 1; y < raster.height(); y++) {
+			final int offset = raster.offset(y);
+			deFilter(data, offset, rowLength, data, offset - rowLength, sampleBitCount);
+		}
+	}
 }
@@ -0,0 +1,1048 @@
+package me.andreroldan.featherpng.processing;
+
+/**
+ * In place filtering and defiltering kernels for the standard png filter
+ * types. The first byte of every line is its filter type byte, which is
+ * left untouched, and bpp is the number of bytes per complete pixel,
+ * rounded up to one as described in the png spec.
+ *
+ * <p>A line is the given length of bytes of an array from the given
+ * offset on, and the previous line is read from its own offset, so rows
+ * of a {@link PngRaster} are filtered where they are. The up offset the
+ * kernels take is the distance from a byte to the one above it.</p>
+ *
+ * <p>Sub, average and paeth are dispatched per bpp, with hand unrolled
+ * kernels for 1, 2, 3, 4, 6 and 8 bytes per pixel (8 bit greyscale or
+ * indexed, greyscale with alpha or 16 bit greyscale, rgb, rgba and their
+ * 16 bit forms) that process a pixel per iteration and keep its left and
+ * upper left neighbours in locals. Defiltering needs them because of its
+ * serial dependency on the pixel just decoded; filtering keeps the
+ * unfiltered left pixel in locals, so it can run left to right without
+ * copying the line. Lines that don't end on a whole pixel go to the
+ * generic strided kernels, which filter right to left and handle the
+ * bytes of the first pixel, which have no left neighbour, in a separate
+ * loop.</p>
+ *
+ * @see PngtasticFilterHandler
+ */
+final class PngFilterKernels {
+
+	/* */
+	private PngFilterKernels() { }
+
+	/** The number of bytes per complete pixel, rounded up to one */
+	static int bytesPerPixel(int sampleBitCount) {
+		return Math.max(1, sampleBitCount / 8);
+	}
+
+	/** */
+	static void sub(byte[] line, int offset, int length, int bpp) {
+		if ((length - 1) % bpp != 0) {
+			subN(line, offset, length, bpp);
+			return;
+		}
+		switch (bpp) {
+			case 1: sub1(line, offset, length); break;
+			case 2: sub2(line, offset, length); break;
+			case 3: sub3(line, offset, length); break;
+			case 4: sub4(line, offset, length); break;
+			case 6: sub6(line, offset, length); break;
+			case 8: sub8(line, offset, length); break;
+			default: subN(line, offset, length, bpp); break;
+		}
+	}
+
+	/** */
+	static void up(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		for (int x = offset + 1; x < offset + length; x++) {
+			line[x] -= previousLine[x + up];
+		}
+	}
+
+	/** */
+	static void average(byte[] line, int offset, int length, byte[] previousLine, int up, int bpp) {
+		if ((length - 1) % bpp != 0) {
+			averageN(line, offset, length, previousLine, up, bpp);
+			return;
+		}
+		switch (bpp) {
+			case 1: average1(line, offset, length, previousLine, up); break;
+			case 2: average2(line, offset, length, previousLine, up); break;
+			case 3: average3(line, offset, length, previousLine, up); break;
+			case 4: average4(line, offset, length, previousLine, up); break;
+			case 6: average6(line, offset, length, previousLine, up); break;
+			case 8: average8(line, offset, length, previousLine, up); break;
+			default: averageN(line, offset, length, previousLine, up, bpp); break;
+		}
+	}
+
+	/** */
+	static void paeth(byte[] line, int offset, int length, byte[] previousLine, int up, int bpp) {
+		if ((length - 1) % bpp != 0) {
+			paethN(line, offset, length, previousLine, up, bpp);
+			return;
+		}
+		switch (bpp) {
+			case 1: paeth1(line, offset, length, previousLine, up); break;
+			case 2: paeth2(line, offset, length, previousLine, up); break;
+			case 3: paeth3(line, offset, length, previousLine, up); break;
+			case 4: paeth4(line, offset, length, previousLine, up); break;
+			case 6: paeth6(line, offset, length, previousLine, up); break;
+			case 8: paeth8(line, offset, length, previousLine, up); break;
+			default: paethN(line, offset, length, previousLine, up, bpp); break;
+		}
+	}
+
+	/** */
+	static void unSub(byte[] line, int offset, int length, int bpp) {
+		if ((length - 1) % bpp != 0) {
+			unSubN(line, offset, length, bpp);
+			return;
+		}
+		switch (bpp) {
+			case 1: unSub1(line, offset, length); break;
+			case 2: unSub2(line, offset, length); break;
+			case 3: unSub3(line, offset, length); break;
+			case 4: unSub4(line, offset, length); break;
+			case 6: unSub6(line, offset, length); break;
+			case 8: unSub8(line, offset, length); break;
+			default: unSubN(line, offset, length, bpp); break;
+		}
+	}
+
+	/** */
+	static void unUp(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		for (int x = offset + 1; x < offset + length; x++) {
+			line[x] += previousLine[x + up];
+		}
+	}
+
+	/** */
+	static void unAverage(byte[] line, int offset, int length, byte[] previousLine, int up, int bpp) {
+		if ((length - 1) % bpp != 0) {
+			unAverageN(line, offset, length, previousLine, up, bpp);
+			return;
+		}
+		switch (bpp) {
+			case 1: unAverage1(line, offset, length, previousLine, up); break;
+			case 2: unAverage2(line, offset, length, previousLine, up); break;
+			case 3: unAverage3(line, offset, length, previousLine, up); break;
+			case 4: unAverage4(line, offset, length, previousLine, up); break;
+			case 6: unAverage6(line, offset, length, previousLine, up); break;
+			case 8: unAverage8(line, offset, length, previousLine, up); break;
+			default: unAverageN(line, offset, length, previousLine, up, bpp); break;
+		}
+	}
+
+	/** */
+	static void unPaeth(byte[] line, int offset, int length, byte[] previousLine, int up, int bpp) {
+		if ((length - 1) % bpp != 0) {
+			unPaethN(line, offset, length, previousLine, up, bpp);
+			return;
+		}
+		switch (bpp) {
+			case 1: unPaeth1(line, offset, length, previousLine, up); break;
+			case 2: unPaeth2(line, offset, length, previousLine, up); break;
+			case 3: unPaeth3(line, offset, length, previousLine, up); break;
+			case 4: unPaeth4(line, offset, length, previousLine, up); break;
+			case 6: unPaeth6(line, offset, length, previousLine, up); break;
+			case 8: unPaeth8(line, offset, length, previousLine, up); break;
+			default: unPaethN(line, offset, length, previousLine, up, bpp); break;
+		}
+	}
+
+	/**
+	 * The paeth predictor, written in terms of the distances from a, b
+	 * and c to the initial estimate (a + b - c).
+	 */
+	static int paethPredictor(int a, int b, int c) {
+		final int pa = Math.abs(b - c);
+		final int pb = Math.abs(a - c);
+		final int pc = Math.abs(a + b - c - c);
+
+		if (pa <= pb && pa <= pc) {
+			return a;
+		}
+		return (pb <= pc) ? b : c;
+	}
+
+	/* */
+	private static void subN(byte[] line, int offset, int length, int bpp) {
+		for (int x = offset + length - 1; x > offset + bpp; x--) {
+			line[x] -= line[x - bpp];
+		}
+	}
+
+	/* */
+	private static void sub1(byte[] line, int offset, int length) {
+		int a = 0;
+		for (int x = offset + 1; x < offset + length; x++) {
+			final int v = line[x];
+			line[x] = (byte) (v - a);
+			a = v;
+		}
+	}
+
+	/* */
+	private static void sub2(byte[] line, int offset, int length) {
+		int a0 = 0, a1 = 0;
+		for (int x = offset + 1; x < offset + length; x += 2) {
+			final int v0 = line[x];
+			line[x] = (byte) (v0 - a0);
+			a0 = v0;
+
+			final int v1 = line[x + 1];
+			line[x + 1] = (byte) (v1 - a1);
+			a1 = v1;
+		}
+	}
+
+	/* */
+	private static void sub3(byte[] line, int offset, int length) {
+		int a0 = 0, a1 = 0, a2 = 0;
+		for (int x = offset + 1; x < offset + length; x += 3) {
+			final int v0 = line[x];
+			line[x] = (byte) (v0 - a0);
+			a0 = v0;
+
+			final int v1 = line[x + 1];
+			line[x + 1] = (byte) (v1 - a1);
+			a1 = v1;
+
+			final int v2 = line[x + 2];
+			line[x + 2] = (byte) (v2 - a2);
+			a2 = v2;
+		}
+	}
+
+	/* */
+	private static void sub4(byte[] line, int offset, int length) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0;
+		for (int x = offset + 1; x < offset + length; x += 4) {
+			final int v0 = line[x];
+			line[x] = (byte) (v0 - a0);
+			a0 = v0;
+
+			final int v1 = line[x + 1];
+			line[x + 1] = (byte) (v1 - a1);
+			a1 = v1;
+
+			final int v2 = line[x + 2];
+			line[x + 2] = (byte) (v2 - a2);
+			a2 = v2;
+
+			final int v3 = line[x + 3];
+			line[x + 3] = (byte) (v3 - a3);
+			a3 = v3;
+		}
+	}
+
+	/* */
+	private static void sub6(byte[] line, int offset, int length) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0;
+		for (int x = offset + 1; x < offset + length; x += 6) {
+			final int v0 = line[x];
+			line[x] = (byte) (v0 - a0);
+			a0 = v0;
+
+			final int v1 = line[x + 1];
+			line[x + 1] = (byte) (v1 - a1);
+			a1 = v1;
+
+			final int v2 = line[x + 2];
+			line[x + 2] = (byte) (v2 - a2);
+			a2 = v2;
+
+			final int v3 = line[x + 3];
+			line[x + 3] = (byte) (v3 - a3);
+			a3 = v3;
+
+			final int v4 = line[x + 4];
+			line[x + 4] = (byte) (v4 - a4);
+			a4 = v4;
+
+			final int v5 = line[x + 5];
+			line[x + 5] = (byte) (v5 - a5);
+			a5 = v5;
+		}
+	}
+
+	/* */
+	private static void sub8(byte[] line, int offset, int length) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0, a6 = 0, a7 = 0;
+		for (int x = offset + 1; x < offset + length; x += 8) {
+			final int v0 = line[x];
+			line[x] = (byte) (v0 - a0);
+			a0 = v0;
+
+			final int v1 = line[x + 1];
+			line[x + 1] = (byte) (v1 - a1);
+			a1 = v1;
+
+			final int v2 = line[x + 2];
+			line[x + 2] = (byte) (v2 - a2);
+			a2 = v2;
+
+			final int v3 = line[x + 3];
+			line[x + 3] = (byte) (v3 - a3);
+			a3 = v3;
+
+			final int v4 = line[x + 4];
+			line[x + 4] = (byte) (v4 - a4);
+			a4 = v4;
+
+			final int v5 = line[x + 5];
+			line[x + 5] = (byte) (v5 - a5);
+			a5 = v5;
+
+			final int v6 = line[x + 6];
+			line[x + 6] = (byte) (v6 - a6);
+			a6 = v6;
+
+			final int v7 = line[x + 7];
+			line[x + 7] = (byte) (v7 - a7);
+			a7 = v7;
+		}
+	}
+	/* */
+	private static void averageN(byte[] line, int offset, int length, byte[] previousLine, int up, int bpp) {
+		for (int x = offset + length - 1; x > offset + bpp; x--) {
+			line[x] -= ((line[x - bpp] & 0xff) + (previousLine[x + up] & 0xff)) >>> 1;
+		}
+		for (int x = offset + Math.min(bpp, length - 1); x > offset; x--) {
+			line[x] -= (previousLine[x + up] & 0xff) >>> 1;
+		}
+	}
+
+	/* */
+	private static void average1(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a = 0;
+		for (int x = offset + 1; x < offset + length; x++) {
+			final int v = line[x] & 0xff;
+			line[x] = (byte) (v - ((a + (previousLine[x + up] & 0xff)) >>> 1));
+			a = v;
+		}
+	}
+
+	/* */
+	private static void average2(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0;
+		for (int x = offset + 1; x < offset + length; x += 2) {
+			final int v0 = line[x] & 0xff;
+			line[x] = (byte) (v0 - ((a0 + (previousLine[x + up] & 0xff)) >>> 1));
+			a0 = v0;
+
+			final int v1 = line[x + 1] & 0xff;
+			line[x + 1] = (byte) (v1 - ((a1 + (previousLine[x + up + 1] & 0xff)) >>> 1));
+			a1 = v1;
+		}
+	}
+
+	/* */
+	private static void average3(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0;
+		for (int x = offset + 1; x < offset + length; x += 3) {
+			final int v0 = line[x] & 0xff;
+			line[x] = (byte) (v0 - ((a0 + (previousLine[x + up] & 0xff)) >>> 1));
+			a0 = v0;
+
+			final int v1 = line[x + 1] & 0xff;
+			line[x + 1] = (byte) (v1 - ((a1 + (previousLine[x + up + 1] & 0xff)) >>> 1));
+			a1 = v1;
+
+			final int v2 = line[x + 2] & 0xff;
+			line[x + 2] = (byte) (v2 - ((a2 + (previousLine[x + up + 2] & 0xff)) >>> 1));
+			a2 = v2;
+		}
+	}
+
+	/* */
+	private static void average4(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0;
+		for (int x = offset + 1; x < offset + length; x += 4) {
+			final int v0 = line[x] & 0xff;
+			line[x] = (byte) (v0 - ((a0 + (previousLine[x + up] & 0xff)) >>> 1));
+			a0 = v0;
+
+			final int v1 = line[x + 1] & 0xff;
+			line[x + 1] = (byte) (v1 - ((a1 + (previousLine[x + up + 1] & 0xff)) >>> 1));
+			a1 = v1;
+
+			final int v2 = line[x + 2] & 0xff;
+			line[x + 2] = (byte) (v2 - ((a2 + (previousLine[x + up + 2] & 0xff)) >>> 1));
+			a2 = v2;
+
+			final int v3 = line[x + 3] & 0xff;
+			line[x + 3] = (byte) (v3 - ((a3 + (previousLine[x + up + 3] & 0xff)) >>> 1));
+			a3 = v3;
+		}
+	}
+
+	/* */
+	private static void average6(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0;
+		for (int x = offset + 1; x < offset + length; x += 6) {
+			final int v0 = line[x] & 0xff;
+			line[x] = (byte) (v0 - ((a0 + (previousLine[x + up] & 0xff)) >>> 1));
+			a0 = v0;
+
+			final int v1 = line[x + 1] & 0xff;
+			line[x + 1] = (byte) (v1 - ((a1 + (previousLine[x + up + 1] & 0xff)) >>> 1));
+			a1 = v1;
+
+			final int v2 = line[x + 2] & 0xff;
+			line[x + 2] = (byte) (v2 - ((a2 + (previousLine[x + up + 2] & 0xff)) >>> 1));
+			a2 = v2;
+
+			final int v3 = line[x + 3] & 0xff;
+			line[x + 3] = (byte) (v3 - ((a3 + (previousLine[x + up + 3] & 0xff)) >>> 1));
+			a3 = v3;
+
+			final int v4 = line[x + 4] & 0xff;
+			line[x + 4] = (byte) (v4 - ((a4 + (previousLine[x + up + 4] & 0xff)) >>> 1));
+			a4 = v4;
+
+			final int v5 = line[x + 5] & 0xff;
+			line[x + 5] = (byte) (v5 - ((a5 + (previousLine[x + up + 5] & 0xff)) >>> 1));
+			a5 = v5;
+		}
+	}
+
+	/* */
+	private static void average8(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0, a6 = 0, a7 = 0;
+		for (int x = offset + 1; x < offset + length; x += 8) {
+			final int v0 = line[x] & 0xff;
+			line[x] = (byte) (v0 - ((a0 + (previousLine[x + up] & 0xff)) >>> 1));
+			a0 = v0;
+
+			final int v1 = line[x + 1] & 0xff;
+			line[x + 1] = (byte) (v1 - ((a1 + (previousLine[x + up + 1] & 0xff)) >>> 1));
+			a1 = v1;
+
+			final int v2 = line[x + 2] & 0xff;
+			line[x + 2] = (byte) (v2 - ((a2 + (previousLine[x + up + 2] & 0xff)) >>> 1));
+			a2 = v2;
+
+			final int v3 = line[x + 3] & 0xff;
+			line[x + 3] = (byte) (v3 - ((a3 + (previousLine[x + up + 3] & 0xff)) >>> 1));
+			a3 = v3;
+
+			final int v4 = line[x + 4] & 0xff;
+			line[x + 4] = (byte) (v4 - ((a4 + (previousLine[x + up + 4] & 0xff)) >>> 1));
+			a4 = v4;
+
+			final int v5 = line[x + 5] & 0xff;
+			line[x + 5] = (byte) (v5 - ((a5 + (previousLine[x + up + 5] & 0xff)) >>> 1));
+			a5 = v5;
+
+			final int v6 = line[x + 6] & 0xff;
+			line[x + 6] = (byte) (v6 - ((a6 + (previousLine[x + up + 6] & 0xff)) >>> 1));
+			a6 = v6;
+
+			final int v7 = line[x + 7] & 0xff;
+			line[x + 7] = (byte) (v7 - ((a7 + (previousLine[x + up + 7] & 0xff)) >>> 1));
+			a7 = v7;
+		}
+	}
+	/* */
+	private static void paethN(byte[] line, int offset, int length, byte[] previousLine, int up, int bpp) {
+		for (int x = offset + length - 1; x > offset + bpp; x--) {
+			line[x] -= paethPredictor(line[x - bpp] & 0xff, previousLine[x + up] & 0xff, previousLine[x + up - bpp] & 0xff);
+		}
+		// without a left neighbour the predictor is always the byte above
+		for (int x = offset + Math.min(bpp, length - 1); x > offset; x--) {
+			line[x] -= previousLine[x + up];
+		}
+	}
+
+	/* */
+	private static void paeth1(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a = 0;
+		int c = 0;
+		for (int x = offset + 1; x < offset + length; x++) {
+			final int b = previousLine[x + up] & 0xff;
+			final int v = line[x] & 0xff;
+			line[x] = (byte) (v - paethPredictor(a, b, c));
+			a = v;
+			c = b;
+		}
+	}
+
+	/* */
+	private static void paeth2(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0;
+		int c0 = 0, c1 = 0;
+		for (int x = offset + 1; x < offset + length; x += 2) {
+			final int b0 = previousLine[x + up] & 0xff;
+			final int v0 = line[x] & 0xff;
+			line[x] = (byte) (v0 - paethPredictor(a0, b0, c0));
+			a0 = v0;
+			c0 = b0;
+
+			final int b1 = previousLine[x + up + 1] & 0xff;
+			final int v1 = line[x + 1] & 0xff;
+			line[x + 1] = (byte) (v1 - paethPredictor(a1, b1, c1));
+			a1 = v1;
+			c1 = b1;
+		}
+	}
+
+	/* */
+	private static void paeth3(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0;
+		int c0 = 0, c1 = 0, c2 = 0;
+		for (int x = offset + 1; x < offset + length; x += 3) {
+			final int b0 = previousLine[x + up] & 0xff;
+			final int v0 = line[x] & 0xff;
+			line[x] = (byte) (v0 - paethPredictor(a0, b0, c0));
+			a0 = v0;
+			c0 = b0;
+
+			final int b1 = previousLine[x + up + 1] & 0xff;
+			final int v1 = line[x + 1] & 0xff;
+			line[x + 1] = (byte) (v1 - paethPredictor(a1, b1, c1));
+			a1 = v1;
+			c1 = b1;
+
+			final int b2 = previousLine[x + up + 2] & 0xff;
+			final int v2 = line[x + 2] & 0xff;
+			line[x + 2] = (byte) (v2 - paethPredictor(a2, b2, c2));
+			a2 = v2;
+			c2 = b2;
+		}
+	}
+
+	/* */
+	private static void paeth4(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0;
+		int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+		for (int x = offset + 1; x < offset + length; x += 4) {
+			final int b0 = previousLine[x + up] & 0xff;
+			final int v0 = line[x] & 0xff;
+			line[x] = (byte) (v0 - paethPredictor(a0, b0, c0));
+			a0 = v0;
+			c0 = b0;
+
+			final int b1 = previousLine[x + up + 1] & 0xff;
+			final int v1 = line[x + 1] & 0xff;
+			line[x + 1] = (byte) (v1 - paethPredictor(a1, b1, c1));
+			a1 = v1;
+			c1 = b1;
+
+			final int b2 = previousLine[x + up + 2] & 0xff;
+			final int v2 = line[x + 2] & 0xff;
+			line[x + 2] = (byte) (v2 - paethPredictor(a2, b2, c2));
+			a2 = v2;
+			c2 = b2;
+
+			final int b3 = previousLine[x + up + 3] & 0xff;
+			final int v3 = line[x + 3] & 0xff;
+			line[x + 3] = (byte) (v3 - paethPredictor(a3, b3, c3));
+			a3 = v3;
+			c3 = b3;
+		}
+	}
+
+	/* */
+	private static void paeth6(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0;
+		int c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, c5 = 0;
+		for (int x = offset + 1; x < offset + length; x += 6) {
+			final int b0 = previousLine[x + up] & 0xff;
+			final int v0 = line[x] & 0xff;
+			line[x] = (byte) (v0 - paethPredictor(a0, b0, c0));
+			a0 = v0;
+			c0 = b0;
+
+			final int b1 = previousLine[x + up + 1] & 0xff;
+			final int v1 = line[x + 1] & 0xff;
+			line[x + 1] = (byte) (v1 - paethPredictor(a1, b1, c1));
+			a1 = v1;
+			c1 = b1;
+
+			final int b2 = previousLine[x + up + 2] & 0xff;
+			final int v2 = line[x + 2] & 0xff;
+			line[x + 2] = (byte) (v2 - paethPredictor(a2, b2, c2));
+			a2 = v2;
+			c2 = b2;
+
+			final int b3 = previousLine[x + up + 3] & 0xff;
+			final int v3 = line[x + 3] & 0xff;
+			line[x + 3] = (byte) (v3 - paethPredictor(a3, b3, c3));
+			a3 = v3;
+			c3 = b3;
+
+			final int b4 = previousLine[x + up + 4] & 0xff;
+			final int v4 = line[x + 4] & 0xff;
+			line[x + 4] = (byte) (v4 - paethPredictor(a4, b4, c4));
+			a4 = v4;
+			c4 = b4;
+
+			final int b5 = previousLine[x + up + 5] & 0xff;
+			final int v5 = line[x + 5] & 0xff;
+			line[x + 5] = (byte) (v5 - paethPredictor(a5, b5, c5));
+			a5 = v5;
+			c5 = b5;
+		}
+	}
+
+	/* */
+	private static void paeth8(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0, a6 = 0, a7 = 0;
+		int c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, c5 = 0, c6 = 0, c7 = 0;
+		for (int x = offset + 1; x < offset + length; x += 8) {
+			final int b0 = previousLine[x + up] & 0xff;
+			final int v0 = line[x] & 0xff;
+			line[x] = (byte) (v0 - paethPredictor(a0, b0, c0));
+			a0 = v0;
+			c0 = b0;
+
+			final int b1 = previousLine[x + up + 1] & 0xff;
+			final int v1 = line[x + 1] & 0xff;
+			line[x + 1] = (byte) (v1 - paethPredictor(a1, b1, c1));
+			a1 = v1;
+			c1 = b1;
+
+			final int b2 = previousLine[x + up + 2] & 0xff;
+			final int v2 = line[x + 2] & 0xff;
+			line[x + 2] = (byte) (v2 - paethPredictor(a2, b2, c2));
+			a2 = v2;
+			c2 = b2;
+
+			final int b3 = previousLine[x + up + 3] & 0xff;
+			final int v3 = line[x + 3] & 0xff;
+			line[x + 3] = (byte) (v3 - paethPredictor(a3, b3, c3));
+			a3 = v3;
+			c3 = b3;
+
+			final int b4 = previousLine[x + up + 4] & 0xff;
+			final int v4 = line[x + 4] & 0xff;
+			line[x + 4] = (byte) (v4 - paethPredictor(a4, b4, c4));
+			a4 = v4;
+			c4 = b4;
+
+			final int b5 = previousLine[x + up + 5] & 0xff;
+			final int v5 = line[x + 5] & 0xff;
+			line[x + 5] = (byte) (v5 - paethPredictor(a5, b5, c5));
+			a5 = v5;
+			c5 = b5;
+
+			final int b6 = previousLine[x + up + 6] & 0xff;
+			final int v6 = line[x + 6] & 0xff;
+			line[x + 6] = (byte) (v6 - paethPredictor(a6, b6, c6));
+			a6 = v6;
+			c6 = b6;
+
+			final int b7 = previousLine[x + up + 7] & 0xff;
+			final int v7 = line[x + 7] & 0xff;
+			line[x + 7] = (byte) (v7 - paethPredictor(a7, b7, c7));
+			a7 = v7;
+			c7 = b7;
+		}
+	}
+	/* */
+	private static void unSubN(byte[] line, int offset, int length, int bpp) {
+		for (int x = offset + bpp + 1; x < offset + length; x++) {
+			line[x] += line[x - bpp];
+		}
+	}
+
+	/* */
+	private static void unSub1(byte[] line, int offset, int length) {
+		int a = 0;
+		for (int x = offset + 1; x < offset + length; x++) {
+			a = (line[x] + a) & 0xff;
+			line[x] = (byte) a;
+		}
+	}
+
+	/* */
+	private static void unSub2(byte[] line, int offset, int length) {
+		int a0 = 0, a1 = 0;
+		for (int x = offset + 1; x < offset + length; x += 2) {
+			a0 = (line[x] + a0) & 0xff;
+			line[x] = (byte) a0;
+
+			a1 = (line[x + 1] + a1) & 0xff;
+			line[x + 1] = (byte) a1;
+		}
+	}
+
+	/* */
+	private static void unSub3(byte[] line, int offset, int length) {
+		int a0 = 0, a1 = 0, a2 = 0;
+		for (int x = offset + 1; x < offset + length; x += 3) {
+			a0 = (line[x] + a0) & 0xff;
+			line[x] = (byte) a0;
+
+			a1 = (line[x + 1] + a1) & 0xff;
+			line[x + 1] = (byte) a1;
+
+			a2 = (line[x + 2] + a2) & 0xff;
+			line[x + 2] = (byte) a2;
+		}
+	}
+
+	/* */
+	private static void unSub4(byte[] line, int offset, int length) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0;
+		for (int x = offset + 1; x < offset + length; x += 4) {
+			a0 = (line[x] + a0) & 0xff;
+			line[x] = (byte) a0;
+
+			a1 = (line[x + 1] + a1) & 0xff;
+			line[x + 1] = (byte) a1;
+
+			a2 = (line[x + 2] + a2) & 0xff;
+			line[x + 2] = (byte) a2;
+
+			a3 = (line[x + 3] + a3) & 0xff;
+			line[x + 3] = (byte) a3;
+		}
+	}
+
+	/* */
+	private static void unSub6(byte[] line, int offset, int length) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0;
+		for (int x = offset + 1; x < offset + length; x += 6) {
+			a0 = (line[x] + a0) & 0xff;
+			line[x] = (byte) a0;
+
+			a1 = (line[x + 1] + a1) & 0xff;
+			line[x + 1] = (byte) a1;
+
+			a2 = (line[x + 2] + a2) & 0xff;
+			line[x + 2] = (byte) a2;
+
+			a3 = (line[x + 3] + a3) & 0xff;
+			line[x + 3] = (byte) a3;
+
+			a4 = (line[x + 4] + a4) & 0xff;
+			line[x + 4] = (byte) a4;
+
+			a5 = (line[x + 5] + a5) & 0xff;
+			line[x + 5] = (byte) a5;
+		}
+	}
+
+	/* */
+	private static void unSub8(byte[] line, int offset, int length) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0, a6 = 0, a7 = 0;
+		for (int x = offset + 1; x < offset + length; x += 8) {
+			a0 = (line[x] + a0) & 0xff;
+			line[x] = (byte) a0;
+
+			a1 = (line[x + 1] + a1) & 0xff;
+			line[x + 1] = (byte) a1;
+
+			a2 = (line[x + 2] + a2) & 0xff;
+			line[x + 2] = (byte) a2;
+
+			a3 = (line[x + 3] + a3) & 0xff;
+			line[x + 3] = (byte) a3;
+
+			a4 = (line[x + 4] + a4) & 0xff;
+			line[x + 4] = (byte) a4;
+
+			a5 = (line[x + 5] + a5) & 0xff;
+			line[x + 5] = (byte) a5;
+
+			a6 = (line[x + 6] + a6) & 0xff;
+			line[x + 6] = (byte) a6;
+
+			a7 = (line[x + 7] + a7) & 0xff;
+			line[x + 7] = (byte) a7;
+		}
+	}
+	/* */
+	private static void unAverageN(byte[] line, int offset, int length, byte[] previousLine, int up, int bpp) {
+		final int first = offset + Math.min(bpp + 1, length);
+		for (int x = offset + 1; x < first; x++) {
+			line[x] += (previousLine[x + up] & 0xff) >>> 1;
+		}
+		for (int x = offset + bpp + 1; x < offset + length; x++) {
+			line[x] += ((line[x - bpp] & 0xff) + (previousLine[x + up] & 0xff)) >>> 1;
+		}
+	}
+
+	/* */
+	private static void unAverage1(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a = 0;
+		for (int x = offset + 1; x < offset + length; x++) {
+			a = (line[x] + ((a + (previousLine[x + up] & 0xff)) >>> 1)) & 0xff;
+			line[x] = (byte) a;
+		}
+	}
+
+	/* */
+	private static void unAverage2(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0;
+		for (int x = offset + 1; x < offset + length; x += 2) {
+			a0 = (line[x] + ((a0 + (previousLine[x + up] & 0xff)) >>> 1)) & 0xff;
+			line[x] = (byte) a0;
+
+			a1 = (line[x + 1] + ((a1 + (previousLine[x + up + 1] & 0xff)) >>> 1)) & 0xff;
+			line[x + 1] = (byte) a1;
+		}
+	}
+
+	/* */
+	private static void unAverage3(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0;
+		for (int x = offset + 1; x < offset + length; x += 3) {
+			a0 = (line[x] + ((a0 + (previousLine[x + up] & 0xff)) >>> 1)) & 0xff;
+			line[x] = (byte) a0;
+
+			a1 = (line[x + 1] + ((a1 + (previousLine[x + up + 1] & 0xff)) >>> 1)) & 0xff;
+			line[x + 1] = (byte) a1;
+
+			a2 = (line[x + 2] + ((a2 + (previousLine[x + up + 2] & 0xff)) >>> 1)) & 0xff;
+			line[x + 2] = (byte) a2;
+		}
+	}
+
+	/* */
+	private static void unAverage4(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0;
+		for (int x = offset + 1; x < offset + length; x += 4) {
+			a0 = (line[x] + ((a0 + (previousLine[x + up] & 0xff)) >>> 1)) & 0xff;
+			line[x] = (byte) a0;
+
+			a1 = (line[x + 1] + ((a1 + (previousLine[x + up + 1] & 0xff)) >>> 1)) & 0xff;
+			line[x + 1] = (byte) a1;
+
+			a2 = (line[x + 2] + ((a2 + (previousLine[x + up + 2] & 0xff)) >>> 1)) & 0xff;
+			line[x + 2] = (byte) a2;
+
+			a3 = (line[x + 3] + ((a3 + (previousLine[x + up + 3] & 0xff)) >>> 1)) & 0xff;
+			line[x + 3] = (byte) a3;
+		}
+	}
+
+	/* */
+	private static void unAverage6(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0;
+		for (int x = offset + 1; x < offset + length; x += 6) {
+			a0 = (line[x] + ((a0 + (previousLine[x + up] & 0xff)) >>> 1)) & 0xff;
+			line[x] = (byte) a0;
+
+			a1 = (line[x + 1] + ((a1 + (previousLine[x + up + 1] & 0xff)) >>> 1)) & 0xff;
+			line[x + 1] = (byte) a1;
+
+			a2 = (line[x + 2] + ((a2 + (previousLine[x + up + 2] & 0xff)) >>> 1)) & 0xff;
+			line[x + 2] = (byte) a2;
+
+			a3 = (line[x + 3] + ((a3 + (previousLine[x + up + 3] & 0xff)) >>> 1)) & 0xff;
+			line[x + 3] = (byte) a3;
+
+			a4 = (line[x + 4] + ((a4 + (previousLine[x + up + 4] & 0xff)) >>> 1)) & 0xff;
+			line[x + 4] = (byte) a4;
+
+			a5 = (line[x + 5] + ((a5 + (previousLine[x + up + 5] & 0xff)) >>> 1)) & 0xff;
+			line[x + 5] = (byte) a5;
+		}
+	}
+
+	/* */
+	private static void unAverage8(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0, a6 = 0, a7 = 0;
+		for (int x = offset + 1; x < offset + length; x += 8) {
+			a0 = (line[x] + ((a0 + (previousLine[x + up] & 0xff)) >>> 1)) & 0xff;
+			line[x] = (byte) a0;
+
+			a1 = (line[x + 1] + ((a1 + (previousLine[x + up + 1] & 0xff)) >>> 1)) & 0xff;
+			line[x + 1] = (byte) a1;
+
+			a2 = (line[x + 2] + ((a2 + (previousLine[x + up + 2] & 0xff)) >>> 1)) & 0xff;
+			line[x + 2] = (byte) a2;
+
+			a3 = (line[x + 3] + ((a3 + (previousLine[x + up + 3] & 0xff)) >>> 1)) & 0xff;
+			line[x + 3] = (byte) a3;
+
+			a4 = (line[x + 4] + ((a4 + (previousLine[x + up + 4] & 0xff)) >>> 1)) & 0xff;
+			line[x + 4] = (byte) a4;
+
+			a5 = (line[x + 5] + ((a5 + (previousLine[x + up + 5] & 0xff)) >>> 1)) & 0xff;
+			line[x + 5] = (byte) a5;
+
+			a6 = (line[x + 6] + ((a6 + (previousLine[x + up + 6] & 0xff)) >>> 1)) & 0xff;
+			line[x + 6] = (byte) a6;
+
+			a7 = (line[x + 7] + ((a7 + (previousLine[x + up + 7] & 0xff)) >>> 1)) & 0xff;
+			line[x + 7] = (byte) a7;
+		}
+	}
+	/* */
+	private static void unPaethN(byte[] line, int offset, int length, byte[] previousLine, int up, int bpp) {
+		final int first = offset + Math.min(bpp + 1, length);
+		for (int x = offset + 1; x < first; x++) {
+			line[x] += previousLine[x + up];
+		}
+		for (int x = offset + bpp + 1; x < offset + length; x++) {
+			line[x] += paethPredictor(line[x - bpp] & 0xff, previousLine[x + up] & 0xff, previousLine[x + up - bpp] & 0xff);
+		}
+	}
+
+	/* */
+	private static void unPaeth1(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a = 0;
+		int c = 0;
+		for (int x = offset + 1; x < offset + length; x++) {
+			final int b = previousLine[x + up] & 0xff;
+			a = (line[x] + paethPredictor(a, b, c)) & 0xff;
+			line[x] = (byte) a;
+			c = b;
+		}
+	}
+
+	/* */
+	private static void unPaeth2(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0;
+		int c0 = 0, c1 = 0;
+		for (int x = offset + 1; x < offset + length; x += 2) {
+			final int b0 = previousLine[x + up] & 0xff;
+			a0 = (line[x] + paethPredictor(a0, b0, c0)) & 0xff;
+			line[x] = (byte) a0;
+			c0 = b0;
+
+			final int b1 = previousLine[x + up + 1] & 0xff;
+			a1 = (line[x + 1] + paethPredictor(a1, b1, c1)) & 0xff;
+			line[x + 1] = (byte) a1;
+			c1 = b1;
+		}
+	}
+
+	/* */
+	private static void unPaeth3(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0;
+		int c0 = 0, c1 = 0, c2 = 0;
+		for (int x = offset + 1; x < offset + length; x += 3) {
+			final int b0 = previousLine[x + up] & 0xff;
+			a0 = (line[x] + paethPredictor(a0, b0, c0)) & 0xff;
+			line[x] = (byte) a0;
+			c0 = b0;
+
+			final int b1 = previousLine[x + up + 1] & 0xff;
+			a1 = (line[x + 1] + paethPredictor(a1, b1, c1)) & 0xff;
+			line[x + 1] = (byte) a1;
+			c1 = b1;
+
+			final int b2 = previousLine[x + up + 2] & 0xff;
+			a2 = (line[x + 2] + paethPredictor(a2, b2, c2)) & 0xff;
+			line[x + 2] = (byte) a2;
+			c2 = b2;
+		}
+	}
+
+	/* */
+	private static void unPaeth4(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0;
+		int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+		for (int x = offset + 1; x < offset + length; x += 4) {
+			final int b0 = previousLine[x + up] & 0xff;
+			a0 = (line[x] + paethPredictor(a0, b0, c0)) & 0xff;
+			line[x] = (byte) a0;
+			c0 = b0;
+
+			final int b1 = previousLine[x + up + 1] & 0xff;
+			a1 = (line[x + 1] + paethPredictor(a1, b1, c1)) & 0xff;
+			line[x + 1] = (byte) a1;
+			c1 = b1;
+
+			final int b2 = previousLine[x + up + 2] & 0xff;
+			a2 = (line[x + 2] + paethPredictor(a2, b2, c2)) & 0xff;
+			line[x + 2] = (byte) a2;
+			c2 = b2;
+
+			final int b3 = previousLine[x + up + 3] & 0xff;
+			a3 = (line[x + 3] + paethPredictor(a3, b3, c3)) & 0xff;
+			line[x + 3] = (byte) a3;
+			c3 = b3;
+		}
+	}
+
+	/* */
+	private static void unPaeth6(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0;
+		int c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, c5 = 0;
+		for (int x = offset + 1; x < offset + length; x += 6) {
+			final int b0 = previousLine[x + up] & 0xff;
+			a0 = (line[x] + paethPredictor(a0, b0, c0)) & 0xff;
+			line[x] = (byte) a0;
+			c0 = b0;
+
+			final int b1 = previousLine[x + up + 1] & 0xff;
+			a1 = (line[x + 1] + paethPredictor(a1, b1, c1)) & 0xff;
+			line[x + 1] = (byte) a1;
+			c1 = b1;
+
+			final int b2 = previousLine[x + up + 2] & 0xff;
+			a2 = (line[x + 2] + paethPredictor(a2, b2, c2)) & 0xff;
+			line[x + 2] = (byte) a2;
+			c2 = b2;
+
+			final int b3 = previousLine[x + up + 3] & 0xff;
+			a3 = (line[x + 3] + paethPredictor(a3, b3, c3)) & 0xff;
+			line[x + 3] = (byte) a3;
+			c3 = b3;
+
+			final int b4 = previousLine[x + up + 4] & 0xff;
+			a4 = (line[x + 4] + paethPredictor(a4, b4, c4)) & 0xff;
+			line[x + 4] = (byte) a4;
+			c4 = b4;
+
+			final int b5 = previousLine[x + up + 5] & 0xff;
+			a5 = (line[x + 5] + paethPredictor(a5, b5, c5)) & 0xff;
+			line[x + 5] = (byte) a5;
+			c5 = b5;
+		}
+	}
+
+	/* */
+	private static void unPaeth8(byte[] line, int offset, int length, byte[] previousLine, int up) {
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0, a6 = 0, a7 = 0;
+		int c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, c5 = 0, c6 = 0, c7 = 0;
+		for (int x = offset + 1; x < offset + length; x += 8) {
+			final int b0 = previousLine[x + up] & 0xff;
+			a0 = (line[x] + paethPredictor(a0, b0, c0)) & 0xff;
+			line[x] = (byte) a0;
+			c0 = b0;
+
+			final int b1 = previousLine[x + up + 1] & 0xff;
+			a1 = (line[x + 1] + paethPredictor(a1, b1, c1)) & 0xff;
+			line[x + 1] = (byte) a1;
+			c1 = b1;
+
+			final int b2 = previousLine[x + up + 2] & 0xff;
+			a2 = (line[x + 2] + paethPredictor(a2, b2, c2)) & 0xff;
+			line[x + 2] = (byte) a2;
+			c2 = b2;
+
+			final int b3 = previousLine[x + up + 3] & 0xff;
+			a3 = (line[x + 3] + paethPredictor(a3, b3, c3)) & 0xff;
+			line[x + 3] = (byte) a3;
+			c3 = b3;
+
+			final int b4 = previousLine[x + up + 4] & 0xff;
+			a4 = (line[x + 4] + paethPredictor(a4, b4, c4)) & 0xff;
+			line[x + 4] = (byte) a4;
+			c4 = b4;
+
+			final int b5 = previousLine[x + up + 5] & 0xff;
+			a5 = (line[x + 5] + paethPredictor(a5, b5, c5)) & 0xff;
+			line[x + 5] = (byte) a5;
+			c5 = b5;
+
+			final int b6 = previousLine[x + up + 6] & 0xff;
+			a6 = (line[x + 6] + paethPredictor(a6, b6, c6)) & 0xff;
+			line[x + 6] = (byte) a6;
+			c6 = b6;
+
+			final int b7 = previousLine[x + up + 7] & 0xff;
+			a7 = (line[x + 7] + paethPredictor(a7, b7, c7)) & 0xff;
+			line[x + 7] = (byte) a7;
+			c7 = b7;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package me.andreroldan.featherpng.processing;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -16,10 +18,37 @@ public interface PngInterlaceHandler {
 	 * @param height The image height
 	 * @param sampleBitCount The number of bits per sample
 	 * @param inflatedImageData The uncompressed image data, not interlaced
-	 * @return A list of scanlines, each row represented as a byte array
+	 * @return A list of scanlines, each row represented as a byte array, the
+	 *         rows of every pass one after the other
 	 */
 	public List<byte[]> interlace(int width, int height, int sampleBitCount, byte[] inflatedImageData);
 
+	/**
+	 * Do png interlacing on the given raster
+	 *
+	 * @param width The image width
+	 * @param height The image height
+	 * @param sampleBitCount The number of bits per sample
+	 * @param raster The rows of the image, not interlaced
+	 * @return The passes that have pixels, in order, of filter type NONE
+	 */
+	public default List<PngRaster> interlaceRaster(int width, int height, int sampleBitCount, PngRaster raster) {
+		final List<byte[]> scanlines = interlace(width, height, sampleBitCount, Arrays.copyOf(raster.data(), raster.length()));
+
+		// the scanlines of the passes come one after the other
+		final List<PngRaster> passes = new ArrayList<>(PassDecoder.PASSES);
+		int start = 0;
+		for (int pass = 0; pass < PassDecoder.PASSES; pass++) {
+			final int rows = PassDecoder.rows(pass, height);
+			if (rows == 0 || PassDecoder.columns(pass, width) == 0) {
+				continue;
+			}
+			passes.add(PngRaster.of(scanlines.subList(start, start + rows)));
+			start += rows;
+		}
+		return passes;
+	}
+
 	/**
 	 * Do png deinterlacing on the given data
 	 *
@@ -31,4 +60,17 @@ public interface PngInterlaceHandler {
 	 */
 	public List<byte[]> deInterlace(int width, int height, int sampleBitCount, PngByteArrayOutputStream inflatedImageData);
 
+	/**
+	 * Do png deinterlacing on the given data, into one raster
+	 *
+	 * @param width The image width
+	 * @param height The image height
+	 * @param sampleBitCount The number of bits per sample
+	 * @param inflatedImageData The uncompressed image data, in interlaced form
+	 * @return The rows of the image, of filter type NONE
+	 */
+	public default PngRaster deInterlaceRaster(int width, int height, int sampleBitCount, PngByteArrayOutputStream inflatedImageData) {
+		return PngRaster.of(deInterlace(width, height, sampleBitCount, inflatedImageData));
+	}
+
 }
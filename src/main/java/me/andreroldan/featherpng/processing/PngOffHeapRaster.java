@@ -0,0 +1,129 @@
+package me.andreroldan.featherpng.processing;
+
+import me.andreroldan.featherpng.PngException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The scanlines of an image held outside of the java heap, in direct
+ * buffers or in a memory mapped temporary file, for images too large for
+ * a {@link PngRaster}. Rows are laid out the same way, each starting with
+ * its filter type byte, but are copied in and out one at a time.
+ *
+ * <p>A buffer can't hold more than 2 GiB, so the rows are spread over
+ * segments of whole rows. The temporary file is deleted as soon as it is
+ * mapped, the mapping keeps it alive until the raster is garbage
+ * collected; the page cache, not the heap, holds what is in use.</p>
+ *
+ * <p>Rows may be read from several threads at once, not written.</p>
+ */
+public final class PngOffHeapRaster implements Closeable {
+	private static final int SEGMENT_SIZE = 1 << 30;
+
+	private final int rowLength;
+	private final int height;
+	private final int rowsPerSegment;
+	private ByteBuffer[] segments;
+
+	/* */
+	private PngOffHeapRaster(int rowLength, int height, int segmentSize) {
+		if (rowLength < 1 || height < 0) {
+			throw new PngException(String.format("Can't hold %d rows of %d bytes", height, rowLength));
+		}
+		this.rowLength = rowLength;
+		this.height = height;
+		this.rowsPerSegment = Math.max(1, segmentSize / rowLength);
+		this.segments = new ByteBuffer[(int) ((height + (long) rowsPerSegment - 1) / rowsPerSegment)];
+	}
+
+	/** A raster of zeroes in direct buffers, which count against the maximum direct memory size */
+	public static PngOffHeapRaster allocateDirect(int rowLength, int height) {
+		return allocateDirect(rowLength, height, SEGMENT_SIZE);
+	}
+
+	/**
+	 * A raster of zeroes in a temporary file created in the given directory,
+	 * mapped into memory.
+	 */
+	public static PngOffHeapRaster map(int rowLength, int height, Path directory) throws IOException {
+		return map(rowLength, height, directory, SEGMENT_SIZE);
+	}
+
+	/* */
+	static PngOffHeapRaster allocateDirect(int rowLength, int height, int segmentSize) {
+		final PngOffHeapRaster raster = new PngOffHeapRaster(rowLength, height, segmentSize);
+		for (int i = 0; i < raster.segments.length; i++) {
+			raster.segments[i] = ByteBuffer.allocateDirect(raster.segmentLength(i));
+		}
+		return raster;
+	}
+
+	/* */
+	static PngOffHeapRaster map(int rowLength, int height, Path directory, int segmentSize) throws IOException {
+		final PngOffHeapRaster raster = new PngOffHeapRaster(rowLength, height, segmentSize);
+		final Path file = Files.createTempFile(directory, "featherpng", ".raster");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+			long position = 0;
+			for (int i = 0; i < raster.segments.length; i++) {
+				raster.segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, raster.segmentLength(i));
+				position += raster.segmentLength(i);
+			}
+		}
+		return raster;
+	}
+
+	/** The length of a row, filter type byte included */
+	public int rowLength() {
+		return rowLength;
+	}
+
+	/** */
+	public int height() {
+		return height;
+	}
+
+	/** The length of the raster, i.e. of its image data */
+	public long length() {
+		return (long) rowLength * height;
+	}
+
+	/** Copies the given row into the given array */
+	public void getRow(int y, byte[] row) {
+		segment(y).get(row, 0, rowLength);
+	}
+
+	/** Copies the given array into the given row */
+	public void putRow(int y, byte[] row) {
+		segment(y).put(row, 0, rowLength);
+	}
+
+	/** Drops the buffers, the memory is released once they are garbage collected */
+	@Override
+	public void close() {
+		segments = null;
+	}
+
+	/* a view of the segment holding the given row, positioned at it */
+	private ByteBuffer segment(int y) {
+		if (segments == null) {
+			throw new IllegalStateException("Raster closed");
+		}
+		if (y < 0 || y >= height) {
+			throw new IndexOutOfBoundsException("Row " + y + " of " + height);
+		}
+		final ByteBuffer segment = segments[y / rowsPerSegment].duplicate();
+		segment.position((y % rowsPerSegment) * rowLength);
+		return segment;
+	}
+
+	/* */
+	private int segmentLength(int i) {
+		return (int) Math.min(rowsPerSegment, height - (long) i * rowsPerSegment) * rowLength;
+	}
+}
@@ -0,0 +1,112 @@
+package me.andreroldan.featherpng.processing;
+
+import me.andreroldan.featherpng.PngException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The scanlines of an image held in one array, row after row, each
+ * starting with its filter type byte, the way they are in the (inflated)
+ * image data. Row {@code y} starts at {@link #offset(int)}, the stride
+ * being the row length.
+ *
+ * <p>Filtering, defiltering and deflating work on the array directly, so
+ * an image costs one allocation instead of one per row, and the array can
+ * be handed to the compression handler as is.</p>
+ *
+ * @see PngFilterHandler#applyFiltering(me.andreroldan.featherpng.PngFilterType, PngRaster, int)
+ */
+public final class PngRaster {
+	private final byte[] data;
+	private final int rowLength;
+	private final int height;
+
+	/** A raster of zeroes */
+	public PngRaster(int rowLength, int height) {
+		this(new byte[checkedLength(rowLength, height)], rowLength, height);
+	}
+
+	/**
+	 * Wraps the given array, which may be longer than the raster, without
+	 * copying it.
+	 */
+	public PngRaster(byte[] data, int rowLength, int height) {
+		if (data.length < checkedLength(rowLength, height)) {
+			throw new PngException(String.format("Expected %d bytes of image data but got %d", (long) rowLength * height, data.length));
+		}
+		this.data = data;
+		this.rowLength = rowLength;
+		this.height = height;
+	}
+
+	/** Copies the given scanlines, which must all be as long, into a raster */
+	public static PngRaster of(List<byte[]> scanlines) {
+		final PngRaster raster = new PngRaster(scanlines.isEmpty() ? 1 : scanlines.get(0).length, scanlines.size());
+		for (int y = 0; y < raster.height; y++) {
+			System.arraycopy(scanlines.get(y), 0, raster.data, raster.offset(y), raster.rowLength);
+		}
+		return raster;
+	}
+
+	/** The array the rows are in, which may be longer than the raster */
+	public byte[] data() {
+		return data;
+	}
+
+	/** The length of a row, filter type byte included */
+	public int rowLength() {
+		return rowLength;
+	}
+
+	/** */
+	public int height() {
+		return height;
+	}
+
+	/** The length of the raster, i.e. of its image data */
+	public int length() {
+		return rowLength * height;
+	}
+
+	/** Where the given row starts, at its filter type byte */
+	public int offset(int y) {
+		return y * rowLength;
+	}
+
+	/** A copy of the given row */
+	public byte[] row(int y) {
+		final byte[] row = new byte[rowLength];
+		System.arraycopy(data, offset(y), row, 0, rowLength);
+		return row;
+	}
+
+	/** A copy of the raster, as long as it */
+	public PngRaster copy() {
+		final PngRaster copy = new PngRaster(rowLength, height);
+		System.arraycopy(data, 0, copy.data, 0, length());
+		return copy;
+	}
+
+	/** Copies the rows out, one array per row */
+	public List<byte[]> toScanlines() {
+		final List<byte[]> scanlines = new ArrayList<>(height);
+		for (int y = 0; y < height; y++) {
+			scanlines.add(row(y));
+		}
+		return scanlines;
+	}
+
+	/** The raster as image data to deflate, sharing its array */
+	public PngByteArrayOutputStream asImageData() {
+		return new PngByteArrayOutputStream(data, length());
+	}
+
+	/* */
+	private static int checkedLength(int rowLength, int height) {
+		if (rowLength < 1 || height < 0 || (long) rowLength * height > Integer.MAX_VALUE - 8) {
+			throw new PngException(String.format("Can't hold %d rows of %d bytes", height, rowLength));
+		}
+		return rowLength * height;
+	}
+}
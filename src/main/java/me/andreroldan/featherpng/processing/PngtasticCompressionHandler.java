@@ -4,15 +4,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 
 /**
  * Implements PNG compression and decompression
@@ -22,11 +23,45 @@ import java.util.zip.DeflaterOutputStream;
 public class PngtasticCompressionHandler implements PngCompressionHandler {
 	private static final List<Integer> COMPRESSION_STRATEGIES = Arrays.asList(Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY);
 
+	private final Executor executor;
+	private final DeflateSearch search;
+
+	/** Runs concurrent compression on the {@linkplain PngExecutors#shared() shared executor} */
+	public PngtasticCompressionHandler() {
+		this(PngExecutors.shared());
+	}
+
+	/**
+	 * @param executor The executor running concurrent compression, which
+	 *        the handler never shuts down
+	 */
+	public PngtasticCompressionHandler(Executor executor) {
+		this(executor, null);
+	}
+
+	/**
+	 * @param executor The executor running concurrent compression, which
+	 *        the handler never shuts down
+	 * @param search How to search for the best compression strategy and level
+	 *        when no compression level is given, or null to try them all
+	 */
+	public PngtasticCompressionHandler(Executor executor, DeflateSearch search) {
+		this.executor = executor;
+		this.search = search;
+	}
+
 	/**
 	 * {@inheritDoc}
+	 *
+	 * When searching, the pairs are tried one after the other whether
+	 * concurrent or not.
 	 */
 	@Override
 	public byte[] deflate(PngByteArrayOutputStream inflatedImageData, Integer compressionLevel, boolean concurrent) throws IOException {
+		if (isSearching(inflatedImageData, compressionLevel)) {
+			return deflateSearching(inflatedImageData);
+		}
+
 		final List<byte[]> results = (concurrent)
 				? deflateImageDataConcurrently(inflatedImageData, compressionLevel)
 				: deflateImageDataSerially(inflatedImageData, compressionLevel, Deflater.DEFAULT_STRATEGY);
@@ -42,6 +77,37 @@ public class PngtasticCompressionHandler implements PngCompressionHandler {
 		return result;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * One trial per compression strategy and level, in the order {@link #deflate}
+	 * tries them. When searching, the whole search is a single trial, so it
+	 * can stop early as {@link #deflate} does.
+	 */
+	@Override
+	public List<Callable<byte[]>> deflateTrials(final PngByteArrayOutputStream inflatedImageData, Integer compressionLevel) {
+		if (isSearching(inflatedImageData, compressionLevel)) {
+			return Collections.<Callable<byte[]>>singletonList(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws IOException {
+					return deflateSearching(inflatedImageData);
+				}
+			});
+		}
+
+		final List<int[]> pairs = getStrategyLevelPairs(compressionLevel);
+		final List<Callable<byte[]>> trials = new ArrayList<>(pairs.size());
+		for (final int[] pair : pairs) {
+			trials.add(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws IOException {
+					return deflate(inflatedImageData, pair[0], pair[1]).toByteArray();
+				}
+			});
+		}
+		return trials;
+	}
+
 	@Override
 	public String encodeBytes(byte[] bytes) {
 		return Base64.encodeBytes(bytes);
@@ -50,35 +116,42 @@ public class PngtasticCompressionHandler implements PngCompressionHandler {
 	/*
 	 * Do the work of deflating (compressing) the image data with the
 	 * different compression strategies in separate threads to take
-	 * advantage of multiple core architectures.
+	 * advantage of multiple core architectures. The calling thread runs
+	 * whatever the executor hasn't started yet itself, so this never waits
+	 * on a busy (or saturated) executor, even when called from one of its
+	 * own threads.
 	 */
 	private List<byte[]> deflateImageDataConcurrently(final PngByteArrayOutputStream inflatedImageData, final Integer compressionLevel) {
-		final Collection<byte[]> results = new ConcurrentLinkedQueue<>();
-
-		final Collection<Callable<Object>> tasks = new ArrayList<>();
+		final List<FutureTask<byte[]>> tasks = new ArrayList<>(COMPRESSION_STRATEGIES.size());
 		for (final int strategy : COMPRESSION_STRATEGIES) {
-			tasks.add(Executors.callable(new Runnable() {
+			final FutureTask<byte[]> task = new FutureTask<>(new Callable<byte[]>() {
 				@Override
-				public void run() {
-					try {
-						results.add(PngtasticCompressionHandler.this.deflateImageData(inflatedImageData, strategy, compressionLevel));
-					} catch (Throwable e) {
-						System.err.println("Uncaught Exception: " + e.getMessage());
-						e.printStackTrace();
-					}
+				public byte[] call() throws IOException {
+					return PngtasticCompressionHandler.this.deflateImageData(inflatedImageData, strategy, compressionLevel);
 				}
-			}));
+			});
+			tasks.add(task);
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				// left to the calling thread below
+			}
 		}
 
-		final ExecutorService compressionThreadPool = Executors.newFixedThreadPool(COMPRESSION_STRATEGIES.size());
-		try {
-			compressionThreadPool.invokeAll(tasks);
-		} catch (InterruptedException ignored) {
-		} finally {
-			compressionThreadPool.shutdown();
+		final List<byte[]> results = new ArrayList<>(tasks.size());
+		for (FutureTask<byte[]> task : tasks) {
+			task.run();		// a no-op if the executor got to it first
+			try {
+				results.add(task.get());
+			} catch (ExecutionException e) {
+				System.err.println("Uncaught Exception: " + e.getCause().getMessage());
+				e.getCause().printStackTrace();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
 		}
-
-		return new ArrayList<>(results);
+		return results;
 	}
 
 	/* */
@@ -100,6 +173,92 @@ public class PngtasticCompressionHandler implements PngCompressionHandler {
 		return results;
 	}
 
+	/* there's nothing to gain from searching when the whole image fits in the sample */
+	private boolean isSearching(PngByteArrayOutputStream inflatedImageData, Integer compressionLevel) {
+		return search != null && inflatedImageData.len() > search.sampleBytes
+				&& (compressionLevel == null || compressionLevel > Deflater.BEST_COMPRESSION || compressionLevel < Deflater.NO_COMPRESSION);
+	}
+
+	/* every (strategy, level) pair to try, strategy by strategy from the best level down */
+	private List<int[]> getStrategyLevelPairs(Integer compressionLevel) {
+		final List<int[]> pairs = new ArrayList<>();
+		for (final int strategy : COMPRESSION_STRATEGIES) {
+			if (compressionLevel == null || compressionLevel > Deflater.BEST_COMPRESSION || compressionLevel < Deflater.NO_COMPRESSION) {
+				for (int compression = Deflater.BEST_COMPRESSION; compression > Deflater.NO_COMPRESSION; compression--) {
+					pairs.add(new int[] { strategy, compression });
+				}
+			} else {
+				pairs.add(new int[] { strategy, compressionLevel });
+			}
+		}
+		return pairs;
+	}
+
+	/*
+	 * Compresses the whole image with the best ranked pairs, one after the
+	 * other, until a pair saves less than the minimum gain or the time
+	 * budget is spent.
+	 */
+	private byte[] deflateSearching(PngByteArrayOutputStream inflatedImageData) throws IOException {
+		final long start = System.nanoTime();
+		final List<int[]> ranked = rank(inflatedImageData, getStrategyLevelPairs(null));
+
+		byte[] result = null;
+		for (int i = 0; i < ranked.size() && i < search.topK; i++) {
+			if (result != null && search.timeBudgetMillis > 0
+					&& TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= search.timeBudgetMillis) {
+				break;
+			}
+			final ByteArrayOutputStream deflatedOut = deflate(inflatedImageData, ranked.get(i)[0], ranked.get(i)[1]);
+			final int gain = (result == null) ? Integer.MAX_VALUE : result.length - deflatedOut.size();
+			if (gain > 0) {
+				result = deflatedOut.toByteArray();
+			}
+			if (gain < search.minGainBytes) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Sorts the given pairs by how well they compress a sample of the image
+	 * data, ties keep their order.
+	 */
+	private List<int[]> rank(PngByteArrayOutputStream inflatedImageData, List<int[]> pairs) throws IOException {
+		final PngByteArrayOutputStream sample = sample(inflatedImageData);
+		final int[] sizes = new int[pairs.size()];
+		final List<Integer> order = new ArrayList<>(pairs.size());
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = deflate(sample, pairs.get(i)[0], pairs.get(i)[1]).size();
+			order.add(i);
+		}
+
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(sizes[a], sizes[b]);
+			}
+		});
+		final List<int[]> ranked = new ArrayList<>(pairs.size());
+		for (int i : order) {
+			ranked.add(pairs.get(i));
+		}
+		return ranked;
+	}
+
+	/* slices spread evenly over the image data */
+	private PngByteArrayOutputStream sample(PngByteArrayOutputStream inflatedImageData) {
+		final int length = inflatedImageData.len();
+		final int sliceLength = search.sampleBytes / search.sampleSlices;
+		final PngByteArrayOutputStream sample = new PngByteArrayOutputStream(sliceLength * search.sampleSlices);
+		for (int i = 0; i < search.sampleSlices; i++) {
+			final long offset = (search.sampleSlices == 1) ? 0 : (long) i * (length - sliceLength) / (search.sampleSlices - 1);
+			sample.write(inflatedImageData.get(), (int) offset, sliceLength);
+		}
+		return sample;
+	}
+
 	/* */
 	private byte[] deflateImageData(PngByteArrayOutputStream inflatedImageData, int strategy, Integer compressionLevel) throws IOException {
 		byte[] result = null;
@@ -122,20 +281,10 @@ public class PngtasticCompressionHandler implements PngCompressionHandler {
 		return result;
 	}
 
-	/* */
-	private ByteArrayOutputStream deflate(PngByteArrayOutputStream inflatedImageData, int strategy, int compression) throws IOException {
+	/* a single compression, package-private so tests can watch which pairs are tried */
+	ByteArrayOutputStream deflate(PngByteArrayOutputStream inflatedImageData, int strategy, int compression) throws IOException {
 		final ByteArrayOutputStream deflatedOut = new ByteArrayOutputStream();
-		final Deflater deflater = new Deflater(compression);
-		deflater.setStrategy(strategy);
-
-		try {
-			final DeflaterOutputStream stream = new DeflaterOutputStream(deflatedOut, deflater);
-			stream.write(inflatedImageData.get(), 0, inflatedImageData.len());
-			stream.close();
-		} finally {
-			deflater.end();
-		}
-
+		PngCodecs.deflate(inflatedImageData.get(), 0, inflatedImageData.len(), compression, strategy, deflatedOut);
 		return deflatedOut;
 	}
 }
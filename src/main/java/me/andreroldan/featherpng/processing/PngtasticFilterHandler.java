@@ -6,6 +6,7 @@ import me.andreroldan.featherpng.PngFilterType;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 /**
  * Implement PNG filtering and defiltering
@@ -13,177 +14,239 @@ import java.util.Map;
  * @author rayvanderborght
  */
 public class PngtasticFilterHandler implements PngFilterHandler {
+	/* the deflate window, the most compressed data a row can refer back to */
+	private static final int BRUTE_FORCE_WINDOW = 32 * 1024;
+
 	/**
 	 * {@inheritDoc}
+	 *
+	 * {@link PngFilterType#BRUTE_FORCE} picks the filter type of every row
+	 * by trial compression.
 	 */
 	@Override
 	public void applyFiltering(PngFilterType filterType, List<byte[]> scanlines, int sampleBitCount) {
-		int scanlineLength = scanlines.get(0).length;
-		byte[] previousRow = new byte[scanlineLength];
-		for (byte[] scanline : scanlines) {
+		if (filterType == PngFilterType.BRUTE_FORCE) {
+			final PngRaster raster = PngRaster.of(scanlines);
+			applyBruteForceFiltering(raster, sampleBitCount);
+			for (int y = 0; y < scanlines.size(); y++) {
+				System.arraycopy(raster.data(), raster.offset(y), scanlines.get(y), 0, raster.rowLength());
+			}
+			return;
+		}
+
+		final byte[] firstPreviousRow = new byte[scanlines.get(0).length];
+
+		// rows are filtered bottom up, so the row above is still unfiltered when it is needed
+		for (int i = scanlines.size() - 1; i >= 0; i--) {
+			final byte[] scanline = scanlines.get(i);
 			if (filterType != null) {
 				scanline[0] = filterType.getValue();
 			}
 
-			byte[] previous = scanline.clone();
+			try {
+				this.filter(scanline, (i > 0) ? scanlines.get(i - 1) : firstPreviousRow, sampleBitCount);
+			} catch (PngException e) {
+				System.err.println("Error during filtering: " + e.getMessage());
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * {@link PngFilterType#BRUTE_FORCE} picks the filter type of every row
+	 * by trial compression.
+	 */
+	@Override
+	public void applyFiltering(PngFilterType filterType, PngRaster raster, int sampleBitCount) {
+		if (filterType == PngFilterType.BRUTE_FORCE) {
+			applyBruteForceFiltering(raster, sampleBitCount);
+			return;
+		}
+
+		final byte[] data = raster.data();
+		final int rowLength = raster.rowLength();
+		final byte[] firstPreviousRow = new byte[rowLength];
+
+		// rows are filtered bottom up, so the row above is still unfiltered when it is needed
+		for (int i = raster.height() - 1; i >= 0; i--) {
+			final int offset = raster.offset(i);
+			if (filterType != null) {
+				data[offset] = filterType.getValue();
+			}
 
 			try {
-				this.filter(scanline, previousRow, sampleBitCount);
+				if (i > 0) {
+					this.filter(data, offset, rowLength, data, offset - rowLength, sampleBitCount);
+				} else {
+					this.filter(data, offset, rowLength, firstPreviousRow, 0, sampleBitCount);
+				}
 			} catch (PngException e) {
 				System.err.println("Error during filtering: " + e.getMessage());
 				e.printStackTrace();
 			}
-			previousRow = previous;
 		}
 	}
 
 	/**
 	 * {@inheritDoc}
+	 *
+	 * Rows are scored by their {@linkplain FilterScorers#MIN_SUM_ABS sum of absolute values}.
 	 */
 	@Override
 	public void applyAdaptiveFiltering(PngByteArrayOutputStream inflatedImageData, List<byte[]> scanlines, Map<PngFilterType, List<byte[]>> filteredScanLines, int sampleSize) throws IOException {
-		for (int s = 0; s < scanlines.size(); s++) {
-			long bestSum = Long.MAX_VALUE;
-			PngFilterType bestFilterType = null;
-			for (Map.Entry<PngFilterType, List<byte[]>> entry : filteredScanLines.entrySet()) {
-				long sum = 0;
-				byte[] scanline = entry.getValue().get(s);
-				for (int i = 1; i < scanline.length; i++) {
-					sum += Math.abs(scanline[i]);
+		applyAdaptiveFiltering(scanlines, filteredScanLines, sampleSize, FilterScorers.MIN_SUM_ABS);
+	}
+
+	/*
+	 * Filters the rows top down, each with every standard filter type, and
+	 * keeps the one that adds the fewest bytes when deflated right after the
+	 * rows already chosen, up to the deflate window of them. Ties go to the
+	 * lower filter type.
+	 */
+	private void applyBruteForceFiltering(PngRaster raster, int sampleBitCount) {
+		final byte[] data = raster.data();
+		final int rowLength = raster.rowLength();
+		final PngFilterType[] filterTypes = PngFilterType.standardValues();
+		final byte[] window = new byte[Math.max(BRUTE_FORCE_WINDOW, rowLength)];
+		int windowLength = 0;
+
+		byte[] previousRow = new byte[rowLength];
+		byte[] row = new byte[rowLength];
+		byte[] candidate = new byte[rowLength];
+		byte[] best = new byte[rowLength];
+		for (int y = 0; y < raster.height(); y++) {
+			System.arraycopy(data, raster.offset(y), row, 0, rowLength);
+
+			int bestLength = Integer.MAX_VALUE;
+			for (PngFilterType filterType : filterTypes) {
+				System.arraycopy(row, 0, candidate, 0, rowLength);
+				candidate[0] = filterType.getValue();
+				try {
+					this.filter(candidate, previousRow, sampleBitCount);
+				} catch (PngException e) {
+					System.err.println("Error during filtering: " + e.getMessage());
+					e.printStackTrace();
 				}
 
-				if (sum < bestSum) {
-					bestFilterType = entry.getKey();
-					bestSum = sum;
+				final int length = PngCodecs.deflatedLength(window, windowLength, candidate, 0, rowLength, Deflater.BEST_COMPRESSION);
+				if (length < bestLength) {
+					bestLength = length;
+					final byte[] swap = best;
+					best = candidate;
+					candidate = swap;
 				}
 			}
-			if (bestFilterType != null) {
-				scanlines.get(s)[0] = bestFilterType.getValue();
+			System.arraycopy(best, 0, data, raster.offset(y), rowLength);
+
+			// slide the window over the chosen row
+			if (windowLength + rowLength > window.length) {
+				final int keep = window.length - rowLength;
+				System.arraycopy(window, windowLength - keep, window, 0, keep);
+				windowLength = keep;
 			}
-		}
+			System.arraycopy(best, 0, window, windowLength, rowLength);
+			windowLength += rowLength;
 
-		applyFiltering(null, scanlines, sampleSize);
+			final byte[] swap = previousRow;
+			previousRow = row;
+			row = swap;
+		}
 	}
 
 	/**
 	 * {@inheritDoc}
 	 *
-	 * The bytes are named as follows (x = current, a = previous, b = above, c = previous and above)
-	 * <pre>
-	 * c b
-	 * a x
-	 * </pre>
+	 * The line is filtered in place, without copying it, and the previous
+	 * line is left untouched.
 	 */
 	@Override
 	public void filter(byte[] line, byte[] previousLine, int sampleBitCount) throws PngException {
-		PngFilterType filterType = PngFilterType.forValue(line[0]);
-		line[0] = 0;
+		this.filter(line, 0, line.length, previousLine, 0, sampleBitCount);
+	}
 
-		PngFilterType previousFilterType = PngFilterType.forValue(previousLine[0]);
-		previousLine[0] = 0;
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see PngFilterKernels
+	 */
+	@Override
+	public void filter(byte[] line, int offset, int length, byte[] previousLine, int previousOffset, int sampleBitCount) throws PngException {
+		final PngFilterType filterType = PngFilterType.forValue(line[offset]);
+		final int bpp = PngFilterKernels.bytesPerPixel(sampleBitCount);
+		final int up = previousOffset - offset;
 
 		switch (filterType) {
 			case NONE:
 				break;
-
-			case SUB: {
-				byte[] original = line.clone();
-				int previous = -(Math.max(1, sampleBitCount / 8) - 1);
-				for (int x = 1, a = previous; x < line.length; x++, a++) {
-					line[x] = (byte) (original[x] - ((a < 0) ? 0 : original[a]));
-				}
+			case SUB:
+				PngFilterKernels.sub(line, offset, length, bpp);
 				break;
-			}
-			case UP: {
-				for (int x = 1; x < line.length; x++) {
-					line[x] = (byte) (line[x] - previousLine[x]);
-				}
+			case UP:
+				PngFilterKernels.up(line, offset, length, previousLine, up);
 				break;
-			}
-			case AVERAGE: {
-				byte[] original = line.clone();
-				int previous = -(Math.max(1, sampleBitCount / 8) - 1);
-				for (int x = 1, a = previous; x < line.length; x++, a++) {
-					line[x] = (byte) (original[x] - ((0xFF & original[(a < 0) ? 0 : a]) + (0xFF & previousLine[x])) / 2);
-				}
+			case AVERAGE:
+				PngFilterKernels.average(line, offset, length, previousLine, up, bpp);
 				break;
-			}
-			case PAETH: {
-				byte[] original = line.clone();
-				int previous = -(Math.max(1, sampleBitCount / 8) - 1);
-				for (int x = 1, a = previous; x < line.length; x++, a++) {
-					int result = this.paethPredictor(original, previousLine, x, a);
-					line[x] = (byte) (original[x] - result);
-				}
+			case PAETH:
+				PngFilterKernels.paeth(line, offset, length, previousLine, up, bpp);
 				break;
-			}
 			default:
 				throw new PngException("Unrecognized filter type " + filterType);
 		}
-		line[0] = filterType.getValue();
-		previousLine[0] = previousFilterType.getValue();
 	}
 
 	/**
 	 * {@inheritDoc}
+	 *
+	 * The line is defiltered in place and the previous line is left untouched.
 	 */
 	@Override
 	public void deFilter(byte[] line, byte[] previousLine, int sampleBitCount) throws PngException {
-		PngFilterType filterType = PngFilterType.forValue(line[0]);
-		line[0] = 0;
+		this.deFilter(line, 0, line.length, previousLine, 0, sampleBitCount);
+	}
 
-		PngFilterType previousFilterType = PngFilterType.forValue(previousLine[0]);
-		previousLine[0] = 0;
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see PngFilterKernels
+	 */
+	@Override
+	public void deFilter(byte[] line, int offset, int length, byte[] previousLine, int previousOffset, int sampleBitCount) throws PngException {
+		final PngFilterType filterType = PngFilterType.forValue(line[offset]);
+		final int bpp = PngFilterKernels.bytesPerPixel(sampleBitCount);
+		final int up = previousOffset - offset;
 
 		switch (filterType) {
-			case SUB: {
-				int previous = -(Math.max(1, sampleBitCount / 8) - 1);
-				for (int x = 1, a = previous; x < line.length; x++, a++) {
-					line[x] = (byte) (line[x] + ((a < 0) ? 0 : line[a]));
-				}
+			case SUB:
+				PngFilterKernels.unSub(line, offset, length, bpp);
 				break;
-			}
-			case UP: {
-				for (int x = 1; x < line.length; x++) {
-					line[x] = (byte) (line[x] + previousLine[x]);
-				}
+			case UP:
+				PngFilterKernels.unUp(line, offset, length, previousLine, up);
 				break;
-			}
-			case AVERAGE: {
-				int previous = -(Math.max(1, sampleBitCount / 8) - 1);
-				for (int x = 1, a = previous; x < line.length; x++, a++) {
-					line[x] = (byte) (line[x] + ((0xFF & ((a < 0) ? 0 : line[a])) + (0xFF & previousLine[x])) / 2);
-				}
+			case AVERAGE:
+				PngFilterKernels.unAverage(line, offset, length, previousLine, up, bpp);
 				break;
-			}
-			case PAETH: {
-				int previous = -(Math.max(1, sampleBitCount / 8) - 1);
-				for (int x = 1, xp = previous; x < line.length; x++, xp++) {
-					int result = this.paethPredictor(line, previousLine, x, xp);
-					line[x] = (byte) (line[x] + result);
-				}
+			case PAETH:
+				PngFilterKernels.unPaeth(line, offset, length, previousLine, up, bpp);
 				break;
-			}
 		}
-		line[0] = filterType.getValue();
-		previousLine[0] = previousFilterType.getValue();
 	}
 
-	/* */
-	private int paethPredictor(byte[] line, byte[] previousLine, int x, int xp) {
-		int a = 0xFF & ((xp < 0) ? 0 : line[xp]);
-		int b = 0xFF & previousLine[x];
-		int c = 0xFF & ((xp < 0) ? 0 : previousLine[xp]);
-		int p = a + b - c;
-
-		int pa = (p >= a) ? (p - a) : -(p - a);
-		int pb = (p >= b) ? (p - b) : -(p - b);
-		int pc = (p >= c) ? (p - c) : -(p - c);
-
-		if (pa <= pb && pa <= pc) {
-			return a;
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deFilter(PngRaster raster, int sampleBitCount) throws PngException {
+		final byte[] data = raster.data();
+		final int rowLength = raster.rowLength();
+		if (raster.height() > 0) {
+			this.deFilter(data, 0, rowLength, new byte[rowLength], 0, sampleBitCount);
+		}
+		for (int y = 1; y < raster.height(); y++) {
+			final int offset = raster.offset(y);
+			this.deFilter(data, offset, rowLength, data, offset - rowLength, sampleBitCount);
 		}
-
-		return (pb <= pc) ? b : c;
 	}
 }
@@ -16,12 +16,6 @@ public class PngtasticInterlaceHandler implements PngInterlaceHandler {
 	/** */
 	private final PngFilterHandler pngFilterHandler;
 
-	/** */
-	private static final int[] interlaceRowOffset		= new int[] { 0, 0, 4, 0, 2, 0, 1 };
-	private static final int[] interlaceColOffset 		= new int[] { 0, 4, 0, 2, 0, 1, 0 };
-	private static final int[] interlaceRowIncrement 	= new int[] { 8, 8, 8, 4, 4, 2, 2 };
-	private static final int[] interlaceColIncrement 	= new int[] { 8, 8, 4, 4, 2, 2, 1 };
-
 	/** */
 	public PngtasticInterlaceHandler(PngFilterHandler pngFilterHandler) {
 		this.pngFilterHandler = pngFilterHandler;
@@ -30,64 +24,145 @@ public class PngtasticInterlaceHandler implements PngInterlaceHandler {
 	/**
 	 * {@inheritDoc}
 	 *
-	 * Throws a runtime exception.
-	 * <p>
-	 * NOTE: This is left unimplemented currently.  Interlacing should make
-	 * most images larger in filesize, so pngtastic currently deinterlaces
-	 * all images passed through it.  There may be rare exceptions that
-	 * actually benefit from interlacing, so there may come a time to revisit
-	 * this.
+	 * The image data is made of rows starting with their filter type byte,
+	 * which are taken as already defiltered.
 	 */
 	@Override
 	public List<byte[]> interlace(int width, int height, int sampleBitCount, byte[] inflatedImageData) {
-		throw new RuntimeException("Not implemented");
+		final int rowLength = (int) (((long) width * sampleBitCount + 7) / 8) + 1;
+		final List<byte[]> scanlines = new ArrayList<>();
+		for (PngRaster pass : interlaceRaster(width, height, sampleBitCount, new PngRaster(inflatedImageData, rowLength, height))) {
+			scanlines.addAll(pass.toScanlines());
+		}
+		return scanlines;
 	}
 
 	/**
 	 * {@inheritDoc}
+	 *
+	 * Samples of less than 8 bits are moved bit by bit.
 	 */
 	@Override
-	public List<byte[]> deInterlace(int width, int height, int sampleBitCount, PngByteArrayOutputStream inflatedImageData) {
-		final int sampleSize = Math.max(1, sampleBitCount / 8);
-		// final int sampleSize = sampleBitCount;//Math.max(1, sampleBitCount / 8);
-		final byte[][] rows = new byte[height][Double.valueOf(Math.ceil(width * sampleBitCount / 8D)).intValue() + 1];
-
-		int subImageOffset = 0;
-		for (int pass = 0; pass < 7; pass++) {
-			final int subImageRows = (((height - interlaceRowOffset[pass]) + (interlaceRowIncrement[pass] - 1)) / interlaceRowIncrement[pass]);
-			final int subImageCols = (((width - interlaceColOffset[pass]) + (interlaceColIncrement[pass] - 1)) / interlaceColIncrement[pass]);
-			final int rowLength = Double.valueOf(Math.ceil(subImageCols * sampleBitCount / 8D)).intValue() + 1;
-			final int ci = interlaceColIncrement[pass] * sampleSize;
-			final int co = interlaceColOffset[pass] * sampleSize;
-			final int ri = interlaceRowIncrement[pass];
-			final int ro = interlaceRowOffset[pass];
-
-			byte[] previousRow = new byte[rowLength];
-			int offset = 0;
+	public List<PngRaster> interlaceRaster(int width, int height, int sampleBitCount, PngRaster raster) {
+		final byte[] data = raster.data();
+		final List<PngRaster> passes = new ArrayList<>(PassDecoder.PASSES);
+		for (int pass = 0; pass < PassDecoder.PASSES; pass++) {
+			final int subImageRows = PassDecoder.rows(pass, height);
+			final int subImageCols = PassDecoder.columns(pass, width);
+			if (subImageRows == 0 || subImageCols == 0) {
+				continue;
+			}
+
+			final PngRaster subImage = new PngRaster((int) (((long) subImageCols * sampleBitCount + 7) / 8) + 1, subImageRows);
 			for (int i = 0; i < subImageRows; i++) {
-				offset = subImageOffset + i * rowLength;
-				final byte[] row = new byte[rowLength];
-				System.arraycopy(inflatedImageData.get(), offset, row, 0, rowLength);
-				try {
-					pngFilterHandler.deFilter(row, previousRow, sampleBitCount);
-				} catch (PngException e) {
-					System.err.println("Error: " + e.getMessage());
-					e.printStackTrace();
-				}
-
-//				final int samples = (row.length * sampleSize - sampleSize) / sampleSize;
-//				for (int sample = 0; sample < samples; sample += sampleSize) {
-				final int samples = (row.length - 1) / sampleSize;
-				for (int sample = 0; sample < samples; sample++) {
-					for (int b = 0; b < sampleSize; b++) {
-						rows[i * ri + ro][sample * ci + co + b + 1] = row[(sample * sampleSize) + b + 1];
-					}
-				}
-				previousRow = row.clone();
+				final int y = PassDecoder.rowOffset(pass) + i * PassDecoder.rowIncrement(pass);
+				take(data, raster.offset(y), subImageCols, sampleBitCount, PassDecoder.columnOffset(pass), PassDecoder.columnIncrement(pass),
+						subImage.data(), subImage.offset(i));
 			}
-			subImageOffset = offset + rowLength;
+			passes.add(subImage);
 		}
+		return passes;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<byte[]> deInterlace(int width, int height, int sampleBitCount, PngByteArrayOutputStream inflatedImageData) {
+		return deInterlaceRaster(width, height, sampleBitCount, inflatedImageData).toScanlines();
+	}
 
-		return new ArrayList<>(Arrays.asList(rows));
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Passes without pixels have no rows in the image data, and samples of
+	 * less than 8 bits are moved bit by bit. Every pass is defiltered with
+	 * the same two row buffers.
+	 */
+	@Override
+	public PngRaster deInterlaceRaster(int width, int height, int sampleBitCount, PngByteArrayOutputStream inflatedImageData) {
+		final PngRaster raster = new PngRaster((int) (((long) width * sampleBitCount + 7) / 8) + 1, height);
+		final byte[] data = raster.data();
+		final byte[] inflated = inflatedImageData.get();
+
+		byte[] previousRow = new byte[raster.rowLength()];
+		byte[] row = new byte[raster.rowLength()];
+		int offset = 0;
+		for (int pass = 0; pass < PassDecoder.PASSES; pass++) {
+			final int subImageRows = PassDecoder.rows(pass, height);
+			final int subImageCols = PassDecoder.columns(pass, width);
+			if (subImageRows == 0 || subImageCols == 0) {
+				continue;
+			}
+			final int rowLength = (int) (((long) subImageCols * sampleBitCount + 7) / 8) + 1;
+			if (offset + (long) subImageRows * rowLength > inflatedImageData.len()) {
+				throw new PngException("Missing image data for pass " + (pass + 1));
+			}
+
+			Arrays.fill(previousRow, (byte) 0);
+			for (int i = 0; i < subImageRows; i++, offset += rowLength) {
+				System.arraycopy(inflated, offset, row, 0, rowLength);
+				pngFilterHandler.deFilter(row, 0, rowLength, previousRow, 0, sampleBitCount);
+
+				final int y = PassDecoder.rowOffset(pass) + i * PassDecoder.rowIncrement(pass);
+				place(row, subImageCols, sampleBitCount, PassDecoder.columnOffset(pass), PassDecoder.columnIncrement(pass),
+						data, raster.offset(y));
+
+				final byte[] current = previousRow;
+				previousRow = row;
+				row = current;
+			}
+		}
+
+		return raster;
+	}
+
+	/*
+	 * Copies the pixels of the given columns of the image row at the given
+	 * offset to a (zeroed) pass row, past its filter type byte.
+	 */
+	private static void take(byte[] data, int offset, int pixels, int sampleBitCount, int columnOffset, int columnIncrement,
+			byte[] row, int rowOffset) {
+		if (sampleBitCount >= 8) {
+			final int sampleSize = sampleBitCount / 8;
+			for (int i = 0, from = offset + 1 + columnOffset * sampleSize, to = rowOffset + 1; i < pixels;
+					i++, from += columnIncrement * sampleSize, to += sampleSize) {
+				System.arraycopy(data, from, row, to, sampleSize);
+			}
+			return;
+		}
+
+		final int mask = (1 << sampleBitCount) - 1;
+		final int top = 8 - sampleBitCount;
+		for (int i = 0, from = columnOffset * sampleBitCount, to = 0; i < pixels;
+				i++, from += columnIncrement * sampleBitCount, to += sampleBitCount) {
+			final int sample = (data[offset + 1 + (from >>> 3)] >>> (top - (from & 7))) & mask;
+			row[rowOffset + 1 + (to >>> 3)] |= sample << (top - (to & 7));
+		}
+	}
+
+	/*
+	 * Copies the pixels of a defiltered pass row (starting with its filter
+	 * type byte) to their columns of the image row at the given offset,
+	 * which must be zeroed when samples are less than 8 bits.
+	 */
+	private static void place(byte[] row, int pixels, int sampleBitCount, int columnOffset, int columnIncrement,
+			byte[] data, int offset) {
+		if (sampleBitCount >= 8) {
+			final int sampleSize = sampleBitCount / 8;
+			for (int i = 0, from = 1, to = offset + 1 + columnOffset * sampleSize; i < pixels;
+					i++, from += sampleSize, to += columnIncrement * sampleSize) {
+				System.arraycopy(row, from, data, to, sampleSize);
+			}
+			return;
+		}
+
+		final int mask = (1 << sampleBitCount) - 1;
+		final int top = 8 - sampleBitCount;
+		for (int i = 0, from = 0, to = columnOffset * sampleBitCount; i < pixels;
+				i++, from += sampleBitCount, to += columnIncrement * sampleBitCount) {
+			final int sample = (row[1 + (from >>> 3)] >>> (top - (from & 7))) & mask;
+			data[offset + 1 + (to >>> 3)] |= sample << (top - (to & 7));
+		}
 	}
 }
@@ -0,0 +1,158 @@
+package me.andreroldan.featherpng.processing;
+
+import me.andreroldan.featherpng.PngException;
+import me.andreroldan.featherpng.PngImage;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes the scanlines of a png image one at a time, inflating and
+ * defiltering each row as it is asked for. Only the current and the
+ * previous row are held in memory, so memory use is O(width) instead
+ * of O(width x height).
+ *
+ * <p>The returned rows start with their filter type byte and are
+ * reused: a row is only valid until the next call to {@link #next()}.</p>
+ *
+ * <p>Interlaced images can't be streamed this way, since any row needs
+ * all seven passes, so they are deinterlaced as a whole first.</p>
+ *
+ * @see PngFilterHandler#deFilter(byte[], byte[], int)
+ */
+public class ScanlineDecoder implements Iterator<byte[]>, Closeable {
+
+	private final PngFilterHandler pngFilterHandler;
+	private final int sampleBitCount;
+	private final int rowLength;
+	private final int height;
+
+	private final InputStream inflated;
+	private Inflater inflater;
+
+	/* the rows of interlaced images, decoded all at once */
+	private Iterator<byte[]> deInterlaced;
+
+	private byte[] row;
+	private byte[] previousRow;
+	private int y;
+
+	/**
+	 * @param image The image to decode, only its header is used
+	 * @param compressed The compressed (zlib) image data
+	 * @param pngFilterHandler The filter handler used to defilter rows
+	 * @param pngInterlaceHandler The interlace handler used for interlaced images
+	 */
+	public ScanlineDecoder(PngImage image, InputStream compressed, PngFilterHandler pngFilterHandler,
+			PngInterlaceHandler pngInterlaceHandler) throws IOException {
+		this.pngFilterHandler = pngFilterHandler;
+		this.sampleBitCount = image.getSampleBitCount();
+		this.height = (int) image.height();
+
+		this.inflater = PngCodecs.inflater();
+		this.inflated = new InflaterInputStream(compressed, inflater, 8192);
+
+		this.rowLength = (int) ((image.width() * sampleBitCount + 7) / 8) + 1;
+		if (image.getInterlace() == 1) {
+			try {
+				final PngByteArrayOutputStream inflatedImageData = PngByteArrayOutputStream.withExpectedLength(image.getInflatedImageDataLength());
+				inflatedImageData.readFrom(inflated);
+				final List<byte[]> rows = pngInterlaceHandler.deInterlace((int) image.width(), height, sampleBitCount, inflatedImageData);
+				this.deInterlaced = rows.iterator();
+			} finally {
+				close();
+			}
+		} else {
+			this.row = new byte[rowLength];
+			this.previousRow = new byte[rowLength];
+		}
+	}
+
+	/** The length of the rows returned, including the filter type byte */
+	public int rowLength() {
+		return rowLength;
+	}
+
+	/** The index of the next row to be returned */
+	public int y() {
+		return y;
+	}
+
+	/** */
+	@Override
+	public boolean hasNext() {
+		return y < height;
+	}
+
+	/**
+	 * Returns the next defiltered row, which is only valid until the next call.
+	 *
+	 * @throws PngException if the image data can't be read
+	 */
+	@Override
+	public byte[] next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		y++;
+
+		if (deInterlaced != null) {
+			return deInterlaced.next();
+		}
+
+		final byte[] current = previousRow;
+		previousRow = row;
+		row = current;
+
+		try {
+			readFully(row);
+		} catch (IOException e) {
+			close();
+			throw new PngException("Error reading image data", e);
+		}
+		pngFilterHandler.deFilter(row, previousRow, sampleBitCount);
+
+		if (y == height) {
+			close();
+		}
+		return row;
+	}
+
+	/**
+	 * Closes the compressed image data stream and gives the inflater back to
+	 * its pool, this is done automatically once the last row has been read.
+	 */
+	@Override
+	public void close() {
+		if (inflater == null) {
+			return;
+		}
+		try {
+			inflated.close();
+		} catch (IOException e) {
+			throw new PngException("Error closing image data", e);
+		} finally {
+			PngCodecs.release(inflater);
+			inflater = null;
+		}
+	}
+
+	/* */
+	private void readFully(byte[] b) throws IOException {
+		int offset = 0;
+		while (offset < b.length) {
+			final int readLength = inflated.read(b, offset, b.length - offset);
+			if (readLength < 0) {
+				throw new EOFException("Expected " + (b.length - offset) + " more bytes of image data for row " + (y - 1));
+			}
+			offset += readLength;
+		}
+	}
+}
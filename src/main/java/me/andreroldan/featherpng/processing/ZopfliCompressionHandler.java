@@ -1,10 +1,17 @@
 package me.andreroldan.featherpng.processing;
 
+import me.andreroldan.featherpng.processing.zopfli.CookiePool;
 import me.andreroldan.featherpng.processing.zopfli.Options;
 import me.andreroldan.featherpng.processing.zopfli.Zopfli;
+import me.andreroldan.featherpng.processing.zopfli.ZopfliStats;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implements PNG compression and decompression
@@ -15,7 +22,13 @@ import java.io.IOException;
 public class ZopfliCompressionHandler implements PngCompressionHandler {
 
     private static final int DEFAULT_ITERATIONS = 15;
+    private static final int MASTER_BLOCK_SIZE = 8 * 1024 * 1024;
+    /* about 12 MB of working memory kept between images */
+    private static final int DEFAULT_RETAINED_BLOCK_SIZE = 256 * 1024;
+    private static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 60;
+
     private final Options options;
+    private final Executor executor;
 
     private final Zopfli zopfli;
 
@@ -24,20 +37,85 @@ public class ZopfliCompressionHandler implements PngCompressionHandler {
     }
 
     public ZopfliCompressionHandler(int iterations) {
-        zopfli = new Zopfli(8 * 1024 * 1024);
-        options = new Options(Options.OutputFormat.ZLIB, Options.BlockSplitting.FIRST, iterations);
+        this(iterations, DEFAULT_RETAINED_BLOCK_SIZE);
+    }
+
+    /**
+     * @param iterations The number of zopfli iterations per block
+     * @param retainedBlockSize The image data size, in bytes, to keep zopfli's
+     *        working memory (about 48 bytes per byte) for between images, it
+     *        is released after compressing anything larger
+     */
+    public ZopfliCompressionHandler(int iterations, int retainedBlockSize) {
+        this(iterations, new CookiePool(MASTER_BLOCK_SIZE, Runtime.getRuntime().availableProcessors(),
+                retainedBlockSize, DEFAULT_IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS), PngExecutors.shared());
+    }
+
+    /**
+     * @param iterations The number of zopfli iterations per block
+     * @param cookies The pool of zopfli's working memory, which bounds the
+     *        number of images (and blocks of an image) compressed at once and
+     *        may be shared with other handlers
+     * @param executor The executor running concurrent compression, which
+     *        the handler never shuts down
+     */
+    public ZopfliCompressionHandler(int iterations, CookiePool cookies, Executor executor) {
+        this(new Options(Options.OutputFormat.ZLIB, Options.BlockSplitting.FIRST, iterations), cookies, executor);
+    }
+
+    /**
+     * @param options The zopfli options, e.g. with a time budget per image,
+     *        which must have the {@link Options.OutputFormat#ZLIB zlib} output format
+     * @param cookies The pool of zopfli's working memory, which bounds the
+     *        number of images (and blocks of an image) compressed at once and
+     *        may be shared with other handlers
+     * @param executor The executor running concurrent compression, which
+     *        the handler never shuts down
+     */
+    public ZopfliCompressionHandler(Options options, CookiePool cookies, Executor executor) {
+        if (options.outputType != Options.OutputFormat.ZLIB) {
+            throw new IllegalArgumentException("Png image data must be zlib compressed, not " + options.outputType);
+        }
+        this.zopfli = new Zopfli(cookies);
+        this.options = options;
+        this.executor = executor;
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Any number of threads may deflate at once, as many as the pool has
+     * cookies for run in parallel. When concurrent, the blocks the image data
+     * is split into are compressed in parallel too, to the same output.
      */
     @Override
     public byte[] deflate(PngByteArrayOutputStream inflatedImageData, Integer compressionLevel, boolean concurrent) throws IOException {
+        return deflate(inflatedImageData, concurrent, null);
+    }
+
+    /**
+     * Deflate (compress) the inflated data like {@link #deflate(PngByteArrayOutputStream, Integer, boolean)},
+     * and report how zopfli's iterations went, e.g. how soon they converged.
+     *
+     * @param stats Filled in with the iterations run and the cost after each of them
+     */
+    public byte[] deflate(PngByteArrayOutputStream inflatedImageData, boolean concurrent, ZopfliStats stats) throws IOException {
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        zopfli.compress(options, inflatedImageData.toByteArray(), byteArrayOutputStream);
+        zopfli.compress(options, inflatedImageData.toByteArray(), byteArrayOutputStream, concurrent ? executor : null, stats);
         return byteArrayOutputStream.toByteArray();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * A single trial, which compresses concurrently, so a single image can
+     * use more than one core.
+     */
+    @Override
+    public List<Callable<byte[]>> deflateTrials(final PngByteArrayOutputStream inflatedImageData, final Integer compressionLevel) {
+        return Collections.<Callable<byte[]>>singletonList(() -> deflate(inflatedImageData, compressionLevel, true));
+    }
+
     @Override
     public String encodeBytes(byte[] bytes) {
         return Base64.encodeBytes(bytes);
@@ -81,6 +81,20 @@ final class BitWriter {
     }
   }
 
+  /**
+   * Appends the bits of a range deflated on its own: the bytes its writer has flushed, followed
+   * by the up to 7 bits still in that writer's accumulator.
+   */
+  void append(Zopfli.Range range) {
+    for (byte b : range.bytes) {
+      addBits(b & 0xFF, 8);
+    }
+    BitWriter source = range.bitWriter;
+    if (source.bitOffset != 0) {
+      addBits(source.accumulator, source.bitOffset);
+    }
+  }
+
   /**
    * Writes whole number of accumulated bytes to output.
    *
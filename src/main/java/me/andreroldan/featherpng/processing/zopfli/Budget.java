@@ -0,0 +1,41 @@
+package me.andreroldan.featherpng.processing.zopfli;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iteration limits of one compression, and where its blocks record their costs.
+ */
+final class Budget {
+  private final long deadline;
+  private final boolean hasDeadline;
+  final double minImprovement;
+
+  /* Best cost after each iteration, one array per block in output order; null to not record. */
+  final List<int[]> blockCosts;
+  boolean timeSpent;
+
+  /* Starts the clock on the time budget of the options. */
+  Budget(Options options, List<int[]> blockCosts) {
+    this(options.timeBudgetMillis > 0, System.nanoTime()
+        + TimeUnit.MILLISECONDS.toNanos(options.timeBudgetMillis), options.minImprovement,
+        blockCosts);
+  }
+
+  private Budget(boolean hasDeadline, long deadline, double minImprovement,
+      List<int[]> blockCosts) {
+    this.hasDeadline = hasDeadline;
+    this.deadline = deadline;
+    this.minImprovement = minImprovement;
+    this.blockCosts = blockCosts;
+  }
+
+  /* The same limits, recording costs to the given list, e.g. for a range deflated on its own. */
+  Budget withBlockCosts(List<int[]> blockCosts) {
+    return new Budget(hasDeadline, deadline, minImprovement, blockCosts);
+  }
+
+  boolean isTimeSpent() {
+    return hasDeadline && System.nanoTime() - deadline >= 0;
+  }
+}
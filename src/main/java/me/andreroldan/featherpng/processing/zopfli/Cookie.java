@@ -80,9 +80,10 @@ final class Cookie {
   final int[] p = new int[SPLIT_PARTITIONS];
   final int[] vp = new int[SPLIT_PARTITIONS];
 
-  final char[] lengthArray; // unsigned short, but really values are 0..258 == MAX_MATCH
-  final long[] costs;
-  final char[] path;
+  /* Sized for the largest block seen so far, see ensureCapacity(). */
+  char[] lengthArray; // unsigned short, but really values are 0..258 == MAX_MATCH
+  long[] costs;
+  char[] path;
   final int[] splitPoints;
   final int[] splitSize;
 
@@ -95,15 +96,18 @@ final class Cookie {
 
   int lenVal;
   int distVal;
-  int rnd = 42;
 
 
-  final LzStore store1;
-  final LzStore store2;
-  final LongestMatchCache lmc;
+  LzStore store1;
+  LzStore store2;
+  LongestMatchCache lmc;
 
 
   final int masterBlockSize;
+  private int capacity;
+
+  /* When last released to its pool, by System.nanoTime(). */
+  long releasedAt;
 
   final Node node(int weight, int count, Node tail) {
     Node result = nodes[nextNode++];
@@ -148,6 +152,10 @@ final class Cookie {
    */
   final int blockSplittingMax = 15;
 
+  /**
+   * The per-byte buffers are only allocated by {@link #ensureCapacity(int)}, so a cookie with a
+   * large master block costs little until it is given large input.
+   */
   Cookie(int masterBlockSize) { // TODO: + maxBlockSize?
     this.masterBlockSize = masterBlockSize;
 
@@ -156,13 +164,55 @@ final class Cookie {
     }
     splitPoints = new int[blockSplittingMax + 1];
     splitSize = new int[blockSplittingMax + 1];
+  }
+
+  /**
+   * Grows the per-byte buffers to hold blocks of the given size, by half again at least so
+   * slowly growing input doesn't reallocate every time, but never past the master block size.
+   */
+  final void ensureCapacity(int blockSize) {
+    if (blockSize <= capacity) {
+      return;
+    }
+    int newCapacity = Math.min(Math.max(blockSize, capacity + (capacity >> 1)), masterBlockSize);
+    allocate(Math.max(newCapacity, blockSize));
+  }
+
+  /**
+   * Releases the per-byte buffers, if larger than the given size, to have them reallocated for
+   * the next large input.
+   */
+  final void trim(int blockSize) {
+    if (capacity > blockSize) {
+      allocate(blockSize);
+    }
+  }
+
+  /** The number of bytes of a block the per-byte buffers currently hold. */
+  final int capacity() {
+    return capacity;
+  }
+
+  private void allocate(int capacity) {
+    // Free the old buffers first, so they are never both on the heap at once.
+    lengthArray = null;
+    costs = null;
+    path = null;
+    lmc = null;
+    store1 = null;
+    store2 = null;
+    this.capacity = 0;
+    if (capacity == 0) {
+      return;
+    }
 
-    lengthArray = new char[masterBlockSize + 1];  //  2
-    costs = new long[masterBlockSize + 1];      //  8
-    path = new char[masterBlockSize + 1];         //  2
-    lmc = new LongestMatchCache(masterBlockSize); // 28
-    store1 = new LzStore(masterBlockSize);        //  4
-    store2 = new LzStore(masterBlockSize);        //  4
+    lengthArray = new char[capacity + 1];  //  2
+    costs = new long[capacity + 1];        //  8
+    path = new char[capacity + 1];         //  2
+    lmc = new LongestMatchCache(capacity); // 28
+    store1 = new LzStore(capacity);        //  4
+    store2 = new LzStore(capacity);        //  4
     // 2 + 8 + 2 + 28 + 4 + 4 = 48
+    this.capacity = capacity;
   }
 }
@@ -0,0 +1,125 @@
+package me.andreroldan.featherpng.processing.zopfli;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of the working memory ({@code Cookie}s) zopfli compresses with, so concurrent
+ * compressions each get their own without every thread holding one forever.
+ *
+ * <p>At most {@code maxCookies} exist at once; compressions beyond that wait for one to be
+ * released. Released cookies keep working memory for blocks of up to {@code retainedBlockSize}
+ * bytes, and are dropped once idle for longer than the idle timeout. Idle cookies are only
+ * evicted when the pool is used, there is no background thread.</p>
+ */
+public final class CookiePool {
+
+  private final int masterBlockSize;
+  private final int maxCookies;
+  private final int retainedBlockSize;
+  private final long idleNanos;
+
+  /* Most recently released first, so the least recently used are evicted first. */
+  private final ArrayDeque<Cookie> idle = new ArrayDeque<Cookie>();
+  private int size;
+
+  /**
+   * @param masterBlockSize maximum number of bytes compressed as one block
+   * @param maxCookies maximum number of cookies, i.e. of compressions (or concurrently deflated
+   *     ranges) running at once
+   * @param retainedBlockSize block size in bytes released cookies keep working memory (about 48
+   *     bytes per byte) for
+   * @param idleTimeout time after which an idle cookie is dropped, {@code 0} to never drop them
+   */
+  public CookiePool(int masterBlockSize, int maxCookies, int retainedBlockSize, long idleTimeout,
+      TimeUnit unit) {
+    if (masterBlockSize < 1 || maxCookies < 1 || retainedBlockSize < 0 || idleTimeout < 0) {
+      throw new IllegalArgumentException("Invalid cookie pool configuration");
+    }
+    this.masterBlockSize = masterBlockSize;
+    this.maxCookies = maxCookies;
+    this.retainedBlockSize = retainedBlockSize;
+    this.idleNanos = unit.toNanos(idleTimeout);
+  }
+
+  /**
+   * Creates a pool of a cookie per available processor, which keep working memory for 256k
+   * blocks (about 12 MB each) and are dropped after a minute idle.
+   *
+   * @param masterBlockSize maximum number of bytes compressed as one block
+   */
+  public CookiePool(int masterBlockSize) {
+    this(masterBlockSize, Runtime.getRuntime().availableProcessors(), 256 * 1024, 1,
+        TimeUnit.MINUTES);
+  }
+
+  /** The number of cookies, idle or in use. */
+  public synchronized int size() {
+    return size;
+  }
+
+  /** The number of idle cookies. */
+  public synchronized int idleSize() {
+    return idle.size();
+  }
+
+  /** Drops the cookies idle for longer than the idle timeout. */
+  public synchronized void evictIdle() {
+    evictIdle(System.nanoTime());
+  }
+
+  /**
+   * Releases the working memory idle cookies hold for blocks larger than the given size.
+   *
+   * @param blockSize block size in bytes to keep working memory for, {@code 0} to drop every
+   *     idle cookie
+   */
+  public synchronized void trim(int blockSize) {
+    if (blockSize == 0) {
+      size -= idle.size();
+      idle.clear();
+    }
+    for (Cookie cookie : idle) {
+      cookie.trim(blockSize);
+    }
+  }
+
+  /* Waits for a cookie if the pool is exhausted. */
+  synchronized Cookie acquire() throws InterruptedException {
+    while (true) {
+      Cookie cookie = tryAcquire();
+      if (cookie != null) {
+        return cookie;
+      }
+      wait();
+    }
+  }
+
+  /* Returns null if the pool is exhausted. */
+  synchronized Cookie tryAcquire() {
+    evictIdle(System.nanoTime());
+    Cookie cookie = idle.poll();
+    if (cookie == null && size < maxCookies) {
+      cookie = new Cookie(masterBlockSize);
+      size++;
+    }
+    return cookie;
+  }
+
+  synchronized void release(Cookie cookie) {
+    cookie.trim(retainedBlockSize);
+    cookie.releasedAt = System.nanoTime();
+    idle.push(cookie);
+    notify();
+  }
+
+  private void evictIdle(long now) {
+    if (idleNanos == 0) {
+      return;
+    }
+    while (!idle.isEmpty() && now - idle.peekLast().releasedAt > idleNanos) {
+      idle.removeLast();
+      size--;
+    }
+  }
+}
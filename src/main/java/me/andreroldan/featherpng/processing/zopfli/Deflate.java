@@ -237,32 +237,60 @@ final class Deflate {
     cookie.lenVal = bestLength;
   }
 
-  static void deflatePart(Cookie cookie, Options options, byte[] input, int from, int to,
-      boolean flush, BitWriter output) {
+  static void deflatePart(Cookie cookie, Options options, Budget budget, byte[] input, int from,
+      int to, boolean flush, BitWriter output) {
     // assert from != to
+    cookie.ensureCapacity(to - from);
     switch (options.blockSplitting) {
       case FIRST:
-        deflateSplittingFirst(cookie, options, flush, input, from, to, output);
+        deflateSplittingFirst(cookie, options, budget, flush, input, from, to, output);
         break;
 
       case LAST:
-        deflateSplittingLast(cookie, options, flush, input, from, to, output);
+        deflateSplittingLast(cookie, options, budget, flush, input, from, to, output);
         break;
 
       case NONE:
-        deflateDynamicBlock(cookie, options, flush, input, from, to, output);
+        deflateDynamicBlock(cookie, iterations(options, to - from, to - from), budget, flush,
+            input, from, to, output);
         break;
     }
   }
 
-  private static void deflateDynamicBlock(Cookie cookie, Options options, boolean flush,
+  /**
+   * Deflates the given range as blocks of its own, e.g. one of the ranges found by
+   * {@link BlockSplitter#split}, which only depend on the input (and the window before them), so
+   * ranges can be deflated on separate cookies.
+   *
+   * @param iterations the number of iterations the range may run, see {@link #iterations}
+   */
+  static void deflateRange(Cookie cookie, int iterations, Budget budget, boolean flush,
       byte[] input, int from, int to, BitWriter output) {
     // assert from != to
+    cookie.ensureCapacity(to - from);
+    deflateDynamicBlock(cookie, iterations, budget, flush, input, from, to, output);
+  }
+
+  /**
+   * The number of iterations a block may run: {@link Options#numIterations}, or its share of
+   * {@link Options#maxIterationsPerMasterBlock} by size if less, but always at least one.
+   */
+  static int iterations(Options options, int blockSize, int masterBlockSize) {
+    if (options.maxIterationsPerMasterBlock == 0) {
+      return options.numIterations;
+    }
+    long share = (long) options.maxIterationsPerMasterBlock * blockSize / masterBlockSize;
+    return (int) Math.min(options.numIterations, Math.max(1, share));
+  }
+
+  private static void deflateDynamicBlock(Cookie cookie, int iterations, Budget budget,
+      boolean flush, byte[] input, int from, int to, BitWriter output) {
+    // assert from != to
     LongestMatchCache lmc = cookie.lmc;
     lmc.init(to - from);
 
     BlockType type = BlockType.DYNAMIC;
-    LzStore store = Squeeze.optimal(cookie, options.numIterations, lmc, input, from, to);
+    LzStore store = Squeeze.optimal(cookie, iterations, budget, lmc, input, from, to);
 
     if (store.size < 1000) {
       LzStore fixedStore = cookie.store1;
@@ -281,13 +309,14 @@ final class Deflate {
     addLzBlock(cookie, type, flush, store.litLens, store.dists, 0, store.size, output);
   }
 
-  private static void deflateSplittingLast(Cookie cookie, Options options, boolean flush,
-      byte[] input, int from, int to, BitWriter output) {
+  private static void deflateSplittingLast(Cookie cookie, Options options, Budget budget,
+      boolean flush, byte[] input, int from, int to, BitWriter output) {
     // assert from != to
     LongestMatchCache lmc = cookie.lmc;
     lmc.init(to - from);
 
-    LzStore store = Squeeze.optimal(cookie, options.numIterations, lmc, input, from, to);
+    LzStore store = Squeeze.optimal(cookie, iterations(options, to - from, to - from), budget,
+        lmc, input, from, to);
 
     int nPoints = BlockSplitter.splitLz(cookie, store.litLens, store.dists, store.size);
 
@@ -300,14 +329,16 @@ final class Deflate {
     }
   }
 
-  private static void deflateSplittingFirst(Cookie cookie, Options options, boolean flush,
-      byte[] input, int from, int to, BitWriter output) {
+  private static void deflateSplittingFirst(Cookie cookie, Options options, Budget budget,
+      boolean flush, byte[] input, int from, int to, BitWriter output) {
     // assert from != to
     int nPoints = BlockSplitter.split(cookie, input, from, to);
     int[] splitPoints = cookie.splitPoints;
     for (int i = 1; i <= nPoints; ++i) {
-      deflateDynamicBlock(cookie, options, i == nPoints && flush, input,
-          splitPoints[i - 1], splitPoints[i], output);
+      int start = splitPoints[i - 1];
+      int end = splitPoints[i];
+      deflateDynamicBlock(cookie, iterations(options, end - start, to - from), budget,
+          i == nPoints && flush, input, start, end, output);
     }
   }
 
@@ -44,11 +44,45 @@ public final class Options {
   public final BlockSplitting blockSplitting;
   public final OutputFormat outputType;
 
+  /**
+   * Wall-clock time one compression may spend iterating, {@code 0} for no limit. Every block runs
+   * at least one iteration, so the budget can be overrun by one iteration per block.
+   */
+  public final long timeBudgetMillis;
+
+  /**
+   * Iterating on a block stops once an iteration improves its best cost by less than this
+   * fraction of it, e.g. {@code 0.001}; {@code 0} to always run {@link #numIterations}.
+   */
+  public final double minImprovement;
+
+  /**
+   * Maximum number of iterations all blocks of a master block run together, shared out in
+   * proportion to their sizes, {@code 0} for no limit.
+   */
+  public final int maxIterationsPerMasterBlock;
+
   public Options(OutputFormat outputType, BlockSplitting blockSplitting,
       int numIterations) {
+    this(outputType, blockSplitting, numIterations, 0, 0, 0);
+  }
+
+  /**
+   * Adaptive iteration control: stops iterating when out of time, when the cost converges, or
+   * when the master block has had its share of iterations, whichever comes first. Results vary
+   * with timing when a time budget is given.
+   */
+  public Options(OutputFormat outputType, BlockSplitting blockSplitting, int numIterations,
+      long timeBudgetMillis, double minImprovement, int maxIterationsPerMasterBlock) {
+    if (timeBudgetMillis < 0 || minImprovement < 0 || maxIterationsPerMasterBlock < 0) {
+      throw new IllegalArgumentException("Negative iteration limit");
+    }
     this.outputType = outputType;
     this.blockSplitting = blockSplitting;
     this.numIterations = numIterations;
+    this.timeBudgetMillis = timeBudgetMillis;
+    this.minImprovement = minImprovement;
+    this.maxIterationsPerMasterBlock = maxIterationsPerMasterBlock;
   }
 
   public Options() {
@@ -17,6 +17,8 @@ Author: eustas.ru@gmail.com (Eugene Klyuchnikov)
 
 package me.andreroldan.featherpng.processing.zopfli;
 
+import java.util.Arrays;
+
 final class Squeeze {
 
   private static final int WINDOW_SIZE = Deflate.WINDOW_SIZE;
@@ -25,8 +27,8 @@ final class Squeeze {
   /* Collection of utilities / should not be instantiated. */
   Squeeze() {}
 
-  static LzStore optimal(Cookie cookie, int numIterations, LongestMatchCache lmc, byte[] input,
-      int from, int to) {
+  static LzStore optimal(Cookie cookie, int numIterations, Budget budget, LongestMatchCache lmc,
+      byte[] input, int from, int to) {
     LzStore currentStore = cookie.store1;
     currentStore.reset();
     LzStore store = cookie.store2;
@@ -43,6 +45,11 @@ final class Squeeze {
     int bestCost = Integer.MAX_VALUE;
     int lastCost = 0;
     int lastRandomStep = -1;
+    /* Seeded per block, like the reference implementation, so a block compresses the same
+       whichever cookie (and thread) it is given to. */
+    int ranState = 42;
+    int[] bestCosts = new int[numIterations];
+    int iterations = 0;
 
     for (int i = 0; i < numIterations; i++) {
       currentStore.reset();
@@ -50,6 +57,7 @@ final class Squeeze {
       optimalRun(cookie, lmc, input, from, to, lengthArray, currentStore);
       cost = Deflate.calculateBlockSize(cookie, currentStore.litLens,
           currentStore.dists, 0, currentStore.size);
+      int previousBestCost = bestCost;
       if (cost < bestCost) {
         store.copy(currentStore);
         bestStats.copy(stats);
@@ -63,11 +71,23 @@ final class Squeeze {
       }
       if (i > 5 && cost == lastCost) {
         stats.copy(bestStats);
-        cookie.rnd = stats.randomizeFreqs(cookie.rnd);
+        ranState = stats.randomizeFreqs(ranState);
         stats.calculate();
         lastRandomStep = i;
       }
       lastCost = cost;
+      bestCosts[iterations++] = bestCost;
+
+      if (budget.isTimeSpent()) {
+        budget.timeSpent = true;
+        break;
+      }
+      if (i > 0 && previousBestCost - bestCost < budget.minImprovement * previousBestCost) {
+        break;
+      }
+    }
+    if (budget.blockCosts != null) {
+      budget.blockCosts.add(Arrays.copyOf(bestCosts, iterations));
     }
     return store;
   }
@@ -17,8 +17,18 @@ Author: eustas.ru@gmail.com (Eugene Klyuchnikov)
 
 package me.andreroldan.featherpng.processing.zopfli;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Zopfli compression and output framing facade.
@@ -120,10 +130,45 @@ public final class Zopfli {
     }
   }
 
-  private final Cookie cookie;
+  private final CookiePool cookies;
 
-  public synchronized void compress(Options options, byte[] input, OutputStream output)
+  public void compress(Options options, byte[] input, OutputStream output) throws IOException {
+    compress(options, input, output, null);
+  }
+
+  /**
+   * Compresses the input, deflating the ranges each master block is split into concurrently on
+   * the given executor, each on a cookie of its own. Every range is seeded the same whichever
+   * thread deflates it, so the output is the same as compressing serially.
+   *
+   * <p>Only {@link Options.BlockSplitting#FIRST} splits before deflating; the other modes are
+   * always compressed serially. The calling thread deflates whatever ranges the executor hasn't
+   * started yet (or found no free cookie for) itself, so this never waits on a busy executor or
+   * an exhausted pool, once it has a cookie of its own.</p>
+   *
+   * @param executor executor deflating the ranges, or {@code null} to compress serially
+   */
+  public void compress(Options options, byte[] input, OutputStream output, Executor executor)
       throws IOException {
+    compress(options, input, output, executor, null);
+  }
+
+  /**
+   * Compresses the input like {@link #compress(Options, byte[], OutputStream, Executor)}, and
+   * reports how the iterations went.
+   *
+   * @param stats filled in with the iterations of every block, or {@code null}
+   */
+  public void compress(Options options, byte[] input, OutputStream output, Executor executor,
+      ZopfliStats stats) throws IOException {
+    Budget budget = new Budget(options, stats == null ? null : new ArrayList<int[]>());
+    Cookie cookie;
+    try {
+      cookie = cookies.acquire();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a cookie");
+    }
     try {
       BitWriter bitWriter = new BitWriter(output);
       Options.OutputFormat format = options.outputType;
@@ -138,7 +183,12 @@ public final class Zopfli {
         while (i < input.length) {
           int j = Math.min(i + cookie.masterBlockSize, input.length);
           boolean isFinal = (j == input.length);
-          Deflate.deflatePart(cookie, options, input, i, j, isFinal, bitWriter);
+          if (executor != null && options.blockSplitting == Options.BlockSplitting.FIRST) {
+            deflatePartConcurrently(cookie, options, budget, input, i, j, isFinal, bitWriter,
+                executor);
+          } else {
+            Deflate.deflatePart(cookie, options, budget, input, i, j, isFinal, bitWriter);
+          }
           i = j;
         }
       }
@@ -147,6 +197,119 @@ public final class Zopfli {
       writeEpilogue(format, bitWriter, digest);
     } catch (ZopfliRuntimeException ex) {
       throw new IOException(ex);
+    } finally {
+      cookies.release(cookie);
+    }
+    if (stats != null) {
+      stats.add(budget.blockCosts, budget.timeSpent);
+    }
+  }
+
+  /* Splits the block, deflates the ranges concurrently and stitches their bits in order. */
+  private void deflatePartConcurrently(Cookie cookie, Options options, final Budget budget,
+      final byte[] input, int from, int to, boolean flush, BitWriter output, Executor executor)
+      throws IOException {
+    cookie.ensureCapacity(to - from);
+    int nPoints = BlockSplitter.split(cookie, input, from, to);
+    int[] splitPoints = Arrays.copyOf(cookie.splitPoints, nPoints + 1);
+
+    List<FutureTask<Range>> tasks = new ArrayList<FutureTask<Range>>(nPoints);
+    for (int i = 1; i < nPoints; ++i) {
+      final int start = splitPoints[i];
+      final int end = splitPoints[i + 1];
+      final boolean last = i + 1 == nPoints && flush;
+      final int iterations = Deflate.iterations(options, end - start, to - from);
+      FutureTask<Range> task = new FutureTask<Range>(new Callable<Range>() {
+        @Override
+        public Range call() {
+          Cookie rangeCookie = cookies.tryAcquire();
+          if (rangeCookie == null) {
+            return null;  // left to the calling thread
+          }
+          try {
+            return deflateRange(rangeCookie, iterations, budget, input, start, end, last);
+          } finally {
+            cookies.release(rangeCookie);
+          }
+        }
+      });
+      tasks.add(task);
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException ex) {
+        // left to the calling thread, like a task that found no free cookie
+      }
+    }
+
+    // The split is done with, so the first range and any range left over go on our own cookie.
+    append(budget, output, deflateRange(cookie,
+        Deflate.iterations(options, splitPoints[1] - splitPoints[0], to - from), budget, input,
+        splitPoints[0], splitPoints[1], nPoints == 1 && flush));
+    for (int i = 1; i < nPoints; ++i) {
+      FutureTask<Range> task = tasks.get(i - 1);
+      Range range = null;
+      if (!task.cancel(false)) {
+        try {
+          range = task.get();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while deflating");
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new IOException(cause);
+        }
+      }
+      if (range == null) {
+        range = deflateRange(cookie,
+            Deflate.iterations(options, splitPoints[i + 1] - splitPoints[i], to - from), budget,
+            input, splitPoints[i], splitPoints[i + 1], i + 1 == nPoints && flush);
+      }
+      append(budget, output, range);
+    }
+  }
+
+  /* Deflates the range on a budget of its own, so its costs can be added in output order. */
+  private static Range deflateRange(Cookie cookie, int iterations, Budget budget, byte[] input,
+      int from, int to, boolean flush) {
+    Budget rangeBudget =
+        budget.withBlockCosts(budget.blockCosts == null ? null : new ArrayList<int[]>());
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BitWriter bitWriter = new BitWriter(bytes);
+    Deflate.deflateRange(cookie, iterations, rangeBudget, flush, input, from, to, bitWriter);
+    try {
+      bitWriter.flush();
+    } catch (IOException ex) {
+      throw new ZopfliRuntimeException("Failed to push output", ex);  // COV_NF_LINE
+    }
+    return new Range(bytes.toByteArray(), bitWriter, rangeBudget);
+  }
+
+  private static void append(Budget budget, BitWriter output, Range range) {
+    output.append(range);
+    if (budget.blockCosts != null) {
+      budget.blockCosts.addAll(range.budget.blockCosts);
+    }
+    budget.timeSpent |= range.budget.timeSpent;
+  }
+
+  /**
+   * The bits a range was deflated to.
+   */
+  static final class Range {
+    final byte[] bytes;
+    final BitWriter bitWriter;
+    final Budget budget;
+
+    Range(byte[] bytes, BitWriter bitWriter, Budget budget) {
+      this.bytes = bytes;
+      this.bitWriter = bitWriter;
+      this.budget = budget;
     }
   }
 
@@ -236,7 +399,30 @@ public final class Zopfli {
     }
   }
 
+  /**
+   * Releases the working memory idle cookies hold for blocks larger than the given size; it is
+   * allocated again as needed by the next larger input.
+   *
+   * @param blockSize block size in bytes to keep working memory for, {@code 0} to release it all
+   */
+  public void trim(int blockSize) {
+    cookies.trim(blockSize);
+  }
+
+  /**
+   * Working memory (about 48 bytes per input byte) is allocated for the largest input compressed
+   * so far, up to the master block size, not up front.
+   *
+   * @param masterBlockSize maximum number of bytes compressed as one block
+   */
   public Zopfli(int masterBlockSize) {
-    cookie = new Cookie(masterBlockSize);
+    this(new CookiePool(masterBlockSize));
+  }
+
+  /**
+   * @param cookies pool of the working memory compression uses, which may be shared
+   */
+  public Zopfli(CookiePool cookies) {
+    this.cookies = cookies;
   }
 }
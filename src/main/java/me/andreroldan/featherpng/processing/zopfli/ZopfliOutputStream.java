@@ -36,6 +36,7 @@ public class ZopfliOutputStream extends OutputStream {
   private final BitWriter bitWriter;
   private final byte[] buffer;
   private final Zopfli.Checksum digest;
+  private final Budget budget;
 
   /* Invariant: between calls offset - legacy < masterBlockSize, i.e. there is at least one byte
      left in buffer. */
@@ -55,6 +56,7 @@ public class ZopfliOutputStream extends OutputStream {
     this.bitWriter = new BitWriter(destination);
     this.buffer = new byte[WINDOW_SIZE + cookie.masterBlockSize];
     this.digest = Zopfli.createDigest(options.outputType);
+    this.budget = new Budget(options, null);
 
     Zopfli.writePrologue(options.outputType, this.bitWriter);
   }
@@ -138,7 +140,7 @@ public class ZopfliOutputStream extends OutputStream {
 
   private void compressBlock(boolean isLast) throws IOException {
     try {
-      Deflate.deflatePart(cookie, options, buffer, legacy, offset, isLast, bitWriter);
+      Deflate.deflatePart(cookie, options, budget, buffer, legacy, offset, isLast, bitWriter);
       digest.update(buffer, legacy, offset - legacy);
     } catch (ZopfliRuntimeException ex) {
       throw new IOException(ex);
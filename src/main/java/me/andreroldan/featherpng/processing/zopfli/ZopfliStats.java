@@ -0,0 +1,43 @@
+package me.andreroldan.featherpng.processing.zopfli;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What the iterations of a compression achieved, filled in by
+ * {@link Zopfli#compress(Options, byte[], java.io.OutputStream, java.util.concurrent.Executor, ZopfliStats)}.
+ */
+public final class ZopfliStats {
+  private final List<int[]> blockCosts = new ArrayList<int[]>();
+  private boolean timeBudgetSpent;
+
+  /** The number of iterations run, over all blocks. */
+  public synchronized int iterations() {
+    int iterations = 0;
+    for (int[] costs : blockCosts) {
+      iterations += costs.length;
+    }
+    return iterations;
+  }
+
+  /**
+   * The best cost, in bits, of each block after each of its iterations, blocks in output order.
+   */
+  public synchronized List<int[]> bestCosts() {
+    List<int[]> result = new ArrayList<int[]>(blockCosts.size());
+    for (int[] costs : blockCosts) {
+      result.add(costs.clone());
+    }
+    return result;
+  }
+
+  /** Whether a block stopped iterating because the time budget was spent. */
+  public synchronized boolean isTimeBudgetSpent() {
+    return timeBudgetSpent;
+  }
+
+  synchronized void add(List<int[]> blockCosts, boolean timeBudgetSpent) {
+    this.blockCosts.addAll(blockCosts);
+    this.timeBudgetSpent |= timeBudgetSpent;
+  }
+}
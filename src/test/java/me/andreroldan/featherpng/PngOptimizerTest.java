@@ -0,0 +1,140 @@
+package me.andreroldan.featherpng;
+
+import me.andreroldan.featherpng.processing.PngExecutors;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ *
+ */
+class PngOptimizerTest {
+	@Test
+	void optimizeOffHeap() throws Exception {
+		final List<String> files = Arrays.asList("basn0g01.png", "basn2c16.png", "basn3p08.png", "basn6a08.png", "oi9n0g16.png", "z09n2c08.png");
+		final Path directory = Files.createTempDirectory("featherpng");
+		try {
+			for (final String file : files) {
+				final PngImage image = PngImage.read(Paths.get("images/optimizer/pngsuite/" + file));
+				final byte[] expected = new PngReader().readRGBA8(image);
+
+				final PngOptimizer mapped = new PngOptimizer();
+				mapped.setOffHeapThreshold(0);
+				mapped.setOffHeapDirectory(directory);
+				assertArrayEquals(expected, new PngReader().readRGBA8(roundTrip(mapped.optimize(image))), file);
+
+				final PngOptimizer direct = new PngOptimizer();
+				direct.setOffHeapThreshold(0);
+				direct.setOffHeapDirectory(null);
+				direct.setAdaptiveFilteringOnly(true);
+				assertArrayEquals(expected, new PngReader().readRGBA8(roundTrip(direct.optimize(image))), file);
+
+				// the compressor doesn't apply off heap
+				final PngOptimizer zopfli = new PngOptimizer();
+				zopfli.setOffHeapThreshold(0);
+				zopfli.setCompressor("zopfli", 1);
+				assertArrayEquals(mapped.optimize(image).getImageData(), zopfli.optimize(image).getImageData(), file);
+			}
+
+			// the temporary files are deleted right away
+			try (Stream<Path> left = Files.list(directory)) {
+				assertEquals(0, left.count());
+			}
+		} finally {
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	void optimizeLowBitDepthInterlaced() throws Exception {
+		final List<String> files = Arrays.asList("basi0g01.png", "basi0g02.png", "basi3p04.png", "s09i3p02.png");
+		for (final String file : files) {
+			final PngImage image = PngImage.read(Paths.get("images/optimizer/pngsuite/" + file));
+			final PngImage optimized = roundTrip(new PngOptimizer().optimize(image));
+			assertEquals(0, optimized.getInterlace(), file);
+			assertArrayEquals(new PngReader().readRGBA8(image), new PngReader().readRGBA8(optimized), file);
+		}
+	}
+
+	@Test
+	void optimizeInterlaced() throws Exception {
+		final List<String> files = Arrays.asList("basn0g01.png", "basn3p04.png", "basn2c16.png", "basn6a08.png", "basi4a08.png",
+				"s01n3p01.png", "s09n3p02.png");
+		for (final String file : files) {
+			final PngImage image = PngImage.read(Paths.get("images/optimizer/pngsuite/" + file));
+			final int width = (int) image.width();
+			final int height = (int) image.height();
+			final byte[] expected = new PngReader().readRGBA8(image, 0, 0, width, height);
+
+			final PngOptimizer always = new PngOptimizer();
+			always.setInterlacing(PngOptimizer.Interlacing.ALWAYS);
+			final PngImage interlaced = roundTrip(always.optimize(image));
+			assertEquals(1, interlaced.getInterlace(), file);
+			assertArrayEquals(expected, new PngReader().readRGBA8(interlaced, 0, 0, width, height), file);
+
+			final PngOptimizer smallest = new PngOptimizer();
+			smallest.setInterlacing(PngOptimizer.Interlacing.SMALLEST);
+			final PngImage optimized = roundTrip(smallest.optimize(image));
+			assertArrayEquals(expected, new PngReader().readRGBA8(optimized, 0, 0, width, height), file);
+			final int size = optimized.getImageData().length;
+			assertEquals(Math.min(interlaced.getImageData().length, roundTrip(new PngOptimizer().optimize(image)).getImageData().length), size, file);
+		}
+	}
+
+	@Test
+	void concurrentCandidates() throws Exception {
+		final List<String> files = Arrays.asList("basn0g01.png", "basn2c16.png", "basn3p08.png", "basn6a08.png", "z09n2c08.png");
+		for (final String file : files) {
+			final PngImage image = PngImage.read(Paths.get("images/optimizer/pngsuite/" + file));
+			final byte[] expected = new PngReader().readRGBA8(image);
+
+			// candidates run concurrently or not, the smallest one wins the same
+			final PngOptimizer serial = new PngOptimizer();
+			final PngOptimizer concurrent = new PngOptimizer();
+			concurrent.setConcurrentCandidates(3);
+			final PngImage optimized = roundTrip(serial.optimize(image));
+			assertArrayEquals(optimized.getImageData(), roundTrip(concurrent.optimize(image)).getImageData(), file);
+			assertArrayEquals(expected, new PngReader().readRGBA8(optimized), file);
+
+			final PngOptimizer adaptive = new PngOptimizer();
+			adaptive.setConcurrentCandidates(3);
+			adaptive.setAdaptiveFilteringOnly(true);
+			assertArrayEquals(expected, new PngReader().readRGBA8(roundTrip(adaptive.optimize(image))), file);
+		}
+	}
+
+	@Test
+	void rejectedTasksFail() throws Exception {
+		assertFalse(PngExecutors.shared() instanceof ExecutorService);
+
+		final PngImage image = PngImage.read(Paths.get("images/optimizer/pngsuite/basn6a08.png"));
+		final ExecutorService executor = PngExecutors.newBoundedExecutor(2, 4);
+		executor.shutdown();
+		final PngOptimizer optimizer = new PngOptimizer();
+		optimizer.setExecutor(executor);
+		assertTimeoutPreemptively(Duration.ofSeconds(30),
+				() -> assertThrows(RejectedExecutionException.class, () -> optimizer.optimize(image)));
+	}
+
+	/* */
+	private static PngImage roundTrip(PngImage image) throws Exception {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		image.writeDataOutputStream(bytes);
+		return PngImage.read(bytes.toByteArray());
+	}
+}
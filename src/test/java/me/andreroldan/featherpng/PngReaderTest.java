@@ -1,5 +1,6 @@
 package me.andreroldan.featherpng;
 
+import me.andreroldan.featherpng.processing.PassDecoder;
 import org.junit.jupiter.api.Test;
 
 import java.io.BufferedInputStream;
@@ -8,11 +9,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -22,38 +28,38 @@ class PngReaderTest {
 	@Test
 	void getRGBA8() throws Exception {
 		final List<String> files = Arrays.asList(
-//				"basi0g01.png", "basi0g02.png", "basi0g04.png",
+				"basi0g01.png", "basi0g02.png", "basi0g04.png",
 				"basi0g08.png", "basi0g16.png", "basi2c08.png", "basi2c16.png",
-//				"basi3p01.png", "basi3p02.png", "basi3p04.png",
+				"basi3p01.png", "basi3p02.png", "basi3p04.png",
 				"basi3p08.png", "basi4a08.png", "basi4a16.png", "basi6a08.png", "basi6a16.png",
 				"basn0g01.png", "basn0g02.png",
-//				"basn0g04.png",
+				"basn0g04.png",
 				"basn0g08.png", "basn0g16.png",
 				"basn2c08.png", "basn2c16.png", "basn3p01.png", "basn3p02.png",
-//				"basn3p04.png",
+				"basn3p04.png",
 				"basn3p08.png", "basn4a08.png", "basn4a16.png", "basn6a08.png", "basn6a16.png",
 				"bgai4a08.png", "bgai4a16.png", "bgan6a08.png", "bgan6a16.png", "bgbn4a08.png", "bggn4a16.png",
 				"bgwn6a08.png", "bgyn6a16.png", "ccwn2c08.png", "ccwn3p08.png", "cdfn2c08.png", "cdhn2c08.png",
 				"cdsn2c08.png", "cdun2c08.png",
-//				"ch1n3p04.png",
+				"ch1n3p04.png",
 				"ch2n3p08.png",
-//				"cm0n0g04.png", "cm7n0g04.png", "cm9n0g04.png",
+				"cm0n0g04.png", "cm7n0g04.png", "cm9n0g04.png",
 				"cs3n2c16.png", "cs3n3p08.png", "cs5n2c08.png", "cs5n3p08.png", "cs8n2c08.png", "cs8n3p08.png",
-//				"ct0n0g04.png", "ct1n0g04.png", "ctzn0g04.png",
+				"ct0n0g04.png", "ct1n0g04.png", "ctzn0g04.png",
 				"f00n0g08.png", "f00n2c08.png", "f01n0g08.png", "f01n2c08.png", "f02n0g08.png", "f02n2c08.png",
 				"f03n0g08.png", "f03n2c08.png", "f04n0g08.png", "f04n2c08.png",
 				"g03n0g16.png", "g03n2c08.png",
-//				"g03n3p04.png",
+				"g03n3p04.png",
 				"g04n0g16.png", "g04n2c08.png",
-//				"g04n3p04.png",
+				"g04n3p04.png",
 				"g05n0g16.png", "g05n2c08.png",
-//				"g05n3p04.png",
+				"g05n3p04.png",
 				"g07n0g16.png","g07n2c08.png",
-//				"g07n3p04.png",
+				"g07n3p04.png",
 				"g10n0g16.png","g10n2c08.png",
-//				"g10n3p04.png",
+				"g10n3p04.png",
 				"g25n0g16.png","g25n2c08.png",
-//				"g25n3p04.png",
+				"g25n3p04.png",
 				"oi1n0g16.png", "oi1n2c16.png", "oi2n0g16.png", "oi2n2c16.png", "oi4n0g16.png", "oi4n2c16.png",
 				"oi9n0g16.png", "oi9n2c16.png",
 				"pp0n2c16.png", "pp0n6a08.png", "ps1n0g08.png", "ps1n2c16.png", "ps2n0g08.png", "ps2n2c16.png",
@@ -67,6 +73,7 @@ class PngReaderTest {
 //				"s35i3p04.png", "s35n3p04.png", "s36i3p04.png", "s36n3p04.png", "s37i3p04.png", "s37n3p04.png",
 //				"s38i3p04.png", "s38n3p04.png", "s39i3p04.png", "s39n3p04.png",
 //				"s40i3p04.png", "s40n3p04.png",
+				"s32i3p04.png", "s32n3p04.png", "s40i3p04.png", "s40n3p04.png",
 //				"tbbn1g04.png", "tbbn2c16.png", "tbbn3p08.png", "tbgn2c16.png", "tbgn3p08.png",
 //				"tbrn2c08.png", "tbwn1g16.png", "tbwn3p08.png", "tbyn3p08.png",
 				"tp0n1g08.png", "tp0n2c08.png", "tp0n3p08.png",
@@ -96,6 +103,173 @@ class PngReaderTest {
 		}
 	}
 
+	@Test
+	void readRGBA8FromStream() throws Exception {
+		final List<String> files = Arrays.asList(
+				"basn0g01.png", "basn2c16.png", "basn3p08.png", "basn6a08.png", "basi4a16.png",
+				"oi4n2c16.png", "oi9n0g16.png", "z09n2c08.png"
+		);
+
+		for (final String file : files) {
+			final byte[] expected = new PngReader().readRGBA8(PngImage.read(Paths.get("images/optimizer/pngsuite/" + file)));
+			try (InputStream ins = new BufferedInputStream(new FileInputStream("images/optimizer/pngsuite/" + file))) {
+				assertArrayEquals(expected, new PngReader().readRGBA8(ins), file);
+			}
+		}
+	}
+
+	@Test
+	void readRGBA8Mapped() throws Exception {
+		final List<String> files = Arrays.asList(
+				"basn0g01.png", "basn2c16.png", "basn3p08.png", "basn6a08.png", "basi4a16.png",
+				"oi4n2c16.png", "oi9n0g16.png", "z09n2c08.png"
+		);
+
+		for (final String file : files) {
+			final PngImage image = PngImage.read(Paths.get("images/optimizer/pngsuite/" + file));
+			final PngImage mapped = PngImage.map(Paths.get("images/optimizer/pngsuite/" + file));
+			assertEquals(image.chunks().size(), mapped.chunks().size(), file);
+			assertArrayEquals(new PngReader().readRGBA8(image), new PngReader().readRGBA8(mapped), file);
+		}
+	}
+
+	@Test
+	void readIntoDestinations() throws Exception {
+		final List<String> files = Arrays.asList(
+				"basn0g01.png", "basn0g04.png", "basn2c16.png", "basn3p08.png", "basn6a08.png", "basi4a16.png",
+				"oi9n0g16.png"
+		);
+
+		for (final String file : files) {
+			final PngImage image = PngImage.read(Paths.get("images/optimizer/pngsuite/" + file));
+			final byte[] expected = new PngReader().readRGBA8(image);
+			final int width = (int) image.width();
+			final int height = (int) image.height();
+
+			final byte[] bytes = new byte[3 + height * (width * 4 + 5)];
+			new PngReader().readRGBA8(image, bytes, 3, width * 4 + 5);
+
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(2 + height * width * 4);
+			buffer.position(2);
+			new PngReader().readRGBA8(image, buffer, width * 4);
+			assertEquals(2, buffer.position(), file);
+
+			final int[] argb = new int[height * width];
+			new PngReader().readARGB(image, argb, 0, width);
+
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width * 4; x++) {
+					assertEquals(expected[y * width * 4 + x], bytes[3 + y * (width * 4 + 5) + x], file);
+					assertEquals(expected[y * width * 4 + x], buffer.get(2 + y * width * 4 + x), file);
+				}
+				for (int x = 0; x < width; x++) {
+					final int i = (y * width + x) * 4;
+					final int pixel = ((expected[i + 3] & 0xff) << 24) | ((expected[i] & 0xff) << 16)
+							| ((expected[i + 1] & 0xff) << 8) | (expected[i + 2] & 0xff);
+					assertEquals(pixel, argb[y * width + x], file);
+				}
+			}
+			assertThrows(IllegalArgumentException.class, () -> new PngReader().readARGB(image, argb, 1, width));
+		}
+	}
+
+	@Test
+	void readRegion() throws Exception {
+		final List<String> files = Arrays.asList("basn0g01.png", "basn3p04.png", "basn2c16.png", "basn6a08.png", "basi4a16.png");
+		final int[][] regions = { { 0, 0, 32, 32 }, { 3, 5, 7, 9 }, { 31, 31, 1, 1 }, { 0, 17, 32, 2 } };
+
+		for (final String file : files) {
+			final PngImage image = PngImage.read(Paths.get("images/optimizer/pngsuite/" + file));
+			final byte[] full = new PngReader().readRGBA8(image);
+			for (final int[] region : regions) {
+				final byte[] expected = new byte[region[2] * region[3] * 4];
+				for (int y = 0; y < region[3]; y++) {
+					System.arraycopy(full, ((region[1] + y) * 32 + region[0]) * 4, expected, y * region[2] * 4, region[2] * 4);
+				}
+				assertArrayEquals(expected, new PngReader().readRGBA8(image, region[0], region[1], region[2], region[3]), file);
+			}
+			assertThrows(IllegalArgumentException.class, () -> new PngReader().readRGBA8(image, 30, 0, 3, 1));
+		}
+	}
+
+	@Test
+	void readScaled() throws Exception {
+		final List<String> files = Arrays.asList("basn0g01.png", "basn3p04.png", "basn2c16.png", "basn6a08.png", "s09n3p02.png", "s35n3p04.png");
+		for (final String file : files) {
+			final PngImage image = PngImage.read(Paths.get("images/optimizer/pngsuite/" + file));
+			final int width = (int) image.width();
+			final int height = (int) image.height();
+			final byte[] full = new PngReader().readRGBA8(image, 0, 0, width, height);
+			final PngImage interlaced = PngImage.read(Paths.get("images/optimizer/pngsuite/" + file.replaceFirst("n", "i")));
+
+			for (int factor = 2; factor <= 8; factor *= 2) {
+				final int scaledWidth = (width + factor - 1) / factor;
+				final int scaledHeight = (height + factor - 1) / factor;
+				final byte[] boxed = new byte[scaledWidth * scaledHeight * 4];
+				final byte[] sampled = new byte[scaledWidth * scaledHeight * 4];
+				for (int y = 0; y < scaledHeight; y++) {
+					for (int x = 0; x < scaledWidth; x++) {
+						for (int c = 0; c < 4; c++) {
+							int sum = 0;
+							int count = 0;
+							for (int j = y * factor; j < Math.min(height, (y + 1) * factor); j++) {
+								for (int i = x * factor; i < Math.min(width, (x + 1) * factor); i++) {
+									sum += full[(j * width + i) * 4 + c] & 0xff;
+									count++;
+								}
+							}
+							boxed[(y * scaledWidth + x) * 4 + c] = (byte) ((sum + count / 2) / count);
+							sampled[(y * scaledWidth + x) * 4 + c] = full[(y * factor * width + x * factor) * 4 + c];
+						}
+					}
+				}
+				assertArrayEquals(boxed, new PngReader().readRGBA8Scaled(image, factor), file);
+				assertArrayEquals(sampled, new PngReader().readRGBA8Scaled(interlaced, factor), file);
+			}
+		}
+	}
+
+	@Test
+	void readPasses() throws Exception {
+		final List<String> files = Arrays.asList("basi0g01.png", "basi3p04.png", "basi2c16.png", "s09i3p02.png", "s03i3p01.png");
+		for (final String file : files) {
+			final PngImage image = PngImage.read(Paths.get("images/optimizer/pngsuite/" + file));
+			final int width = (int) image.width();
+			final int height = (int) image.height();
+			final byte[] expected = new PngReader().readRGBA8(image, 0, 0, width, height);
+
+			final List<Integer> passes = new ArrayList<>();
+			final List<byte[]> previews = new ArrayList<>();
+			final byte[] result = new PngReader().readRGBA8(image, (pass, rgba) -> {
+				passes.add(pass);
+				previews.add(rgba.clone());
+			});
+			assertArrayEquals(expected, result, file);
+			assertArrayEquals(expected, previews.get(previews.size() - 1), file);
+			assertEquals(PassDecoder.PASSES - 1, (int) passes.get(passes.size() - 1), file);
+			assertEquals(0, (int) passes.get(0), file);
+
+			// the first pass has every eighth pixel, standing for the 8x8 block it starts
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					for (int c = 0; c < 4; c++) {
+						assertEquals(expected[((y & ~7) * width + (x & ~7)) * 4 + c], previews.get(0)[(y * width + x) * 4 + c], file);
+					}
+				}
+			}
+		}
+
+		// rows of 9 pixels of 2 bits are read as 12 pixels by readRGBA8(PngImage) alone
+		final PngImage padded = PngImage.read(Paths.get("images/optimizer/pngsuite/s09i3p02.png"));
+		assertEquals(9 * 9 * 4, new PngReader().readRGBA8(padded, (pass, rgba) -> { }).length);
+		assertEquals(12 * 9 * 4, new PngReader().readRGBA8(padded).length);
+
+		final PngImage image = PngImage.read(Paths.get("images/optimizer/pngsuite/basn3p02.png"));
+		final List<Integer> passes = new ArrayList<>();
+		new PngReader().readRGBA8(image, (pass, rgba) -> passes.add(pass));
+		assertEquals(Arrays.asList(PassDecoder.PASSES - 1), passes);
+	}
+
 	private void print(PngImage image, byte[] data) {
 		for (int i = 0; i < data.length; i += 4) {
 			if (i % (image.width() * 4) == 0) {
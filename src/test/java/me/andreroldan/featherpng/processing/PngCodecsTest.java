@@ -0,0 +1,168 @@
+package me.andreroldan.featherpng.processing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ *
+ */
+class PngCodecsTest {
+	private final byte[] data = data();
+
+	@BeforeEach
+	@AfterEach
+	void clear() {
+		PngCodecs.clear();
+	}
+
+	@Test
+	void reusedDeflatersMatchFreshOnes() throws Exception {
+		final int[][] pairs = {
+				{ 9, Deflater.DEFAULT_STRATEGY }, { 1, Deflater.DEFAULT_STRATEGY }, { 9, Deflater.FILTERED },
+				{ 6, Deflater.HUFFMAN_ONLY }, { 9, Deflater.DEFAULT_STRATEGY }, { 4, Deflater.FILTERED },
+		};
+
+		// every pair twice in a row, the second time with the deflater the first one released
+		for (int round = 0; round < 2; round++) {
+			for (int[] pair : pairs) {
+				final ByteArrayOutputStream pooled = new ByteArrayOutputStream();
+				PngCodecs.deflate(data, 0, data.length, pair[0], pair[1], pooled);
+				assertArrayEquals(deflate(data, pair[0], pair[1]), pooled.toByteArray(), "level " + pair[0] + " strategy " + pair[1]);
+			}
+		}
+	}
+
+	@Test
+	void releasedInflatersAreReset() throws Exception {
+		final byte[] deflated = deflate(data, 9, Deflater.DEFAULT_STRATEGY);
+		final Inflater inflater = PngCodecs.inflater();
+		inflater.setInput(deflated);
+		inflater.inflate(new byte[data.length]);
+		assertTrue(inflater.finished());
+		PngCodecs.release(inflater);
+
+		final Inflater reused = PngCodecs.inflater();
+		assertSame(inflater, reused);
+		assertFalse(reused.finished());
+		assertEquals(0, reused.getBytesRead());
+		reused.setInput(deflated);
+		final byte[] inflated = new byte[data.length];
+		reused.inflate(inflated);
+		assertArrayEquals(data, inflated);
+		PngCodecs.release(reused);
+	}
+
+	@Test
+	void inflatersBeyondThePoolAreEnded() {
+		final List<Inflater> inflaters = new ArrayList<>();
+		for (int i = 0; i <= PngCodecs.MAX_IDLE_INFLATERS; i++) {
+			inflaters.add(PngCodecs.inflater());
+		}
+		for (Inflater inflater : inflaters) {
+			PngCodecs.release(inflater);
+		}
+		assertEquals(PngCodecs.MAX_IDLE_INFLATERS, PngCodecs.pool().inflaters.size());
+
+		final Inflater ended = inflaters.get(PngCodecs.MAX_IDLE_INFLATERS);
+		assertThrows(NullPointerException.class, ended::reset);
+		for (int i = 0; i < PngCodecs.MAX_IDLE_INFLATERS; i++) {
+			assertNotSame(ended, PngCodecs.inflater());
+		}
+	}
+
+	@Test
+	void clearEndsPooledContexts() {
+		PngCodecs.deflate(data, 0, data.length, 9, Deflater.DEFAULT_STRATEGY, new ByteArrayOutputStream());
+		PngCodecs.release(PngCodecs.inflater());
+		final Deflater deflater = PngCodecs.pool().deflaters.peek().deflater;
+		final Inflater inflater = PngCodecs.pool().inflaters.peek();
+
+		PngCodecs.clear();
+		assertThrows(NullPointerException.class, deflater::reset);
+		assertThrows(NullPointerException.class, inflater::reset);
+		assertTrue(PngCodecs.pool().deflaters.isEmpty());
+		assertTrue(PngCodecs.pool().inflaters.isEmpty());
+	}
+
+	@Test
+	void deflatedLength() {
+		final int length = PngCodecs.deflatedLength(null, 0, data, 0, data.length, 9);
+		assertEquals(syncFlushLength(null, data, 9), length);
+
+		// data that repeats the dictionary costs next to nothing
+		final int repeated = PngCodecs.deflatedLength(data, data.length, data, 0, data.length, 9);
+		assertEquals(syncFlushLength(data, data, 9), repeated);
+		assertTrue(repeated < length / 4, repeated + " vs " + length);
+
+		// the reused deflater has forgotten the dictionary
+		assertEquals(length, PngCodecs.deflatedLength(null, 0, data, 0, data.length, 9));
+	}
+
+	/* random runs, so there's something to compress */
+	private static byte[] data() {
+		final byte[] data = new byte[20000];
+		final Random random = new Random(0);
+		for (int i = 0; i < data.length; ) {
+			final byte value = (byte) random.nextInt(16);
+			for (int run = random.nextInt(8); run >= 0 && i < data.length; run--) {
+				data[i++] = value;
+			}
+		}
+		return data;
+	}
+
+	/* */
+	private static byte[] deflate(byte[] data, int level, int strategy) {
+		final Deflater deflater = new Deflater(level);
+		try {
+			deflater.setStrategy(strategy);
+			deflater.setInput(data);
+			deflater.finish();
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] block = new byte[8192];
+			while (!deflater.finished()) {
+				out.write(block, 0, deflater.deflate(block));
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/* */
+	private static int syncFlushLength(byte[] dictionary, byte[] data, int level) {
+		final Deflater deflater = new Deflater(level);
+		try {
+			if (dictionary != null) {
+				deflater.setDictionary(dictionary);
+			}
+			deflater.setInput(data);
+			final byte[] block = new byte[8192];
+			int length = 0;
+			int blockLength;
+			do {
+				blockLength = deflater.deflate(block, 0, block.length, Deflater.SYNC_FLUSH);
+				length += blockLength;
+			} while (blockLength == block.length);
+			return length;
+		} finally {
+			deflater.end();
+		}
+	}
+}
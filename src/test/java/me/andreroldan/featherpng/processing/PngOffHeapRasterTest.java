@@ -0,0 +1,44 @@
+package me.andreroldan.featherpng.processing;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ *
+ */
+class PngOffHeapRasterTest {
+	@Test
+	void rowsSpanSegments() throws Exception {
+		final Path directory = Files.createTempDirectory("featherpng");
+		try {
+			// segments of 3 rows, the last one holding a single row
+			rowsSpanSegments(PngOffHeapRaster.allocateDirect(13, 7, 40));
+			rowsSpanSegments(PngOffHeapRaster.map(13, 7, directory, 40));
+		} finally {
+			Files.delete(directory);
+		}
+	}
+
+	/* */
+	private void rowsSpanSegments(PngOffHeapRaster raster) {
+		try (PngOffHeapRaster rows = raster) {
+			final byte[][] expected = new byte[rows.height()][rows.rowLength()];
+			final Random random = new Random(0);
+			for (int y = 0; y < rows.height(); y++) {
+				random.nextBytes(expected[y]);
+				rows.putRow(y, expected[y]);
+			}
+
+			final byte[] row = new byte[rows.rowLength()];
+			for (int y = rows.height() - 1; y >= 0; y--) {
+				rows.getRow(y, row);
+				assertArrayEquals(expected[y], row, "row " + y);
+			}
+		}
+	}
+}
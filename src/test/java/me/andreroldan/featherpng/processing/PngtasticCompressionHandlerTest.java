@@ -0,0 +1,156 @@
+package me.andreroldan.featherpng.processing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ *
+ */
+class PngtasticCompressionHandlerTest {
+	@Test
+	void searchRoundTrip() throws Exception {
+		final byte[] data = imageData(256 * 1024);
+		final Watching handler = new Watching(new DeflateSearch(4096, 4, 2, 0L), data.length, 0, 0);
+
+		assertArrayEquals(data, inflate(handler.deflate(new PngByteArrayOutputStream(data, data.length), null, true), data.length));
+		assertTrue(handler.full.size() >= 1 && handler.full.size() <= 2, "full compressions " + handler.full.size());
+
+		// the optimizer's path runs the same search as a single trial
+		handler.full.clear();
+		final List<Callable<byte[]>> trials = handler.deflateTrials(new PngByteArrayOutputStream(data, data.length), null);
+		assertEquals(1, trials.size());
+		assertArrayEquals(data, inflate(trials.get(0).call(), data.length));
+		assertTrue(handler.full.size() >= 1 && handler.full.size() <= 2, "full compressions " + handler.full.size());
+	}
+
+	@Test
+	void searchStopsEarly() throws Exception {
+		final byte[] data = imageData(64 * 1024);
+		final PngByteArrayOutputStream imageData = new PngByteArrayOutputStream(data, data.length);
+
+		// every pair saves a byte: all of the top k run, but no more
+		Watching handler = new Watching(new DeflateSearch(4096, 4, 3, 0L), data.length, 1, 0);
+		handler.deflateTrials(imageData, null).get(0).call();
+		assertEquals(3, handler.full.size());
+
+		// a byte is less than the minimum gain
+		handler = new Watching(new DeflateSearch(4096, 4, 3, 0L, 2), data.length, 1, 0);
+		handler.deflateTrials(imageData, null).get(0).call();
+		assertEquals(2, handler.full.size());
+
+		// the first pair spends the time budget
+		handler = new Watching(new DeflateSearch(4096, 4, 3, 1L), data.length, 1, 20);
+		handler.deflateTrials(imageData, null).get(0).call();
+		assertEquals(1, handler.full.size());
+	}
+
+	@Test
+	void smallImageDataIsSwept() throws Exception {
+		final byte[] data = imageData(4096);
+		final PngByteArrayOutputStream imageData = new PngByteArrayOutputStream(data, data.length);
+		final Watching handler = new Watching(new DeflateSearch(4096, 4, 3, 0L), data.length, 0, 0);
+
+		assertEquals(27, handler.deflateTrials(imageData, null).size());
+		assertArrayEquals(data, inflate(handler.deflate(imageData, null, false), data.length));
+		assertEquals(9, handler.full.size());
+		handler.full.clear();
+		handler.deflate(imageData, null, true);
+		assertEquals(27, handler.full.size());
+	}
+
+	@Test
+	void rankKeepsTies() throws Exception {
+		final byte[] data = imageData(64 * 1024);
+
+		// the sample compresses to the same size with every pair, so the pairs keep the sweep order
+		final Watching handler = new Watching(new DeflateSearch(4096, 4, 3, 0L), data.length, 1, 0);
+		handler.deflate(new PngByteArrayOutputStream(data, data.length), null, false);
+		assertEquals(3, handler.full.size());
+		assertArrayEquals(new int[] { Deflater.DEFAULT_STRATEGY, 9 }, handler.full.get(0));
+		assertArrayEquals(new int[] { Deflater.DEFAULT_STRATEGY, 8 }, handler.full.get(1));
+		assertArrayEquals(new int[] { Deflater.DEFAULT_STRATEGY, 7 }, handler.full.get(2));
+	}
+
+	/* rows of a noisy gradient, which compress differently with every pair */
+	private static byte[] imageData(int length) {
+		final byte[] data = new byte[length];
+		final Random random = new Random(0);
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) ((i % 997) / 4 + random.nextInt(3));
+		}
+		return data;
+	}
+
+	/* */
+	private static byte[] inflate(byte[] deflated, int length) throws Exception {
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(deflated);
+			final byte[] result = new byte[length];
+			int offset = 0;
+			while (offset < length && !inflater.finished()) {
+				offset += inflater.inflate(result, offset, length - offset);
+			}
+			assertTrue(inflater.finished());
+			return Arrays.copyOf(result, offset);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/*
+	 * Records the pairs that compress the whole image data. With a gain per
+	 * pair, every compression is faked instead: the sample compresses to one
+	 * byte with every pair, and every pair on the whole image data saves that
+	 * many bytes over the one before, taking the given time.
+	 */
+	private static final class Watching extends PngtasticCompressionHandler {
+		private final List<int[]> full = new ArrayList<>();
+		private final int length;
+		private final int gainPerPair;
+		private final long millisPerPair;
+
+		Watching(DeflateSearch search, int length, int gainPerPair, long millisPerPair) {
+			super(Runnable::run, search);
+			this.length = length;
+			this.gainPerPair = gainPerPair;
+			this.millisPerPair = millisPerPair;
+		}
+
+		@Override
+		ByteArrayOutputStream deflate(PngByteArrayOutputStream inflatedImageData, int strategy, int compression) throws IOException {
+			final boolean whole = inflatedImageData.len() == length;
+			if (whole) {
+				full.add(new int[] { strategy, compression });
+			}
+			if (gainPerPair == 0) {
+				return super.deflate(inflatedImageData, strategy, compression);
+			}
+
+			if (whole && millisPerPair > 0) {
+				try {
+					Thread.sleep(millisPerPair);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			final byte[] deflated = new byte[whole ? 1000 - full.size() * gainPerPair : 1];
+			final ByteArrayOutputStream fake = new ByteArrayOutputStream();
+			fake.write(deflated, 0, deflated.length);
+			return fake;
+		}
+	}
+}
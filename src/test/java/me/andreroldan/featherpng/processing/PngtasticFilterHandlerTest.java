@@ -0,0 +1,275 @@
+package me.andreroldan.featherpng.processing;
+
+import me.andreroldan.featherpng.PngFilterType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ *
+ */
+class PngtasticFilterHandlerTest {
+	@Test
+	void filterRoundTrip() throws Exception {
+		filterRoundTrip(new PngtasticFilterHandler());
+
+		// only on the classpath when running the testJava17 task
+		final Class<?> vectorFilterHandler;
+		try {
+			vectorFilterHandler = Class.forName("me.andreroldan.featherpng.processing.VectorFilterHandler");
+		} catch (ClassNotFoundException e) {
+			return;
+		}
+		filterRoundTrip((PngFilterHandler) vectorFilterHandler.getConstructor().newInstance());
+	}
+
+	@Test
+	void rasterRoundTrip() throws Exception {
+		rasterRoundTrip(new PngtasticFilterHandler());
+
+		final Class<?> vectorFilterHandler;
+		try {
+			vectorFilterHandler = Class.forName("me.andreroldan.featherpng.processing.VectorFilterHandler");
+		} catch (ClassNotFoundException e) {
+			return;
+		}
+		rasterRoundTrip((PngFilterHandler) vectorFilterHandler.getConstructor().newInstance());
+	}
+
+	@Test
+	void kernelsMatchTheSpec() {
+		final PngtasticFilterHandler filterHandler = new PngtasticFilterHandler();
+		final Random random = new Random(0);
+		for (int sampleBitCount : new int[] { 1, 8, 16, 24, 32, 48, 64 }) {
+			final int bpp = Math.max(1, sampleBitCount / 8);
+			for (PngFilterType filterType : PngFilterType.standardValues()) {
+				final byte[] previousRow = new byte[1 + bpp * 37];
+				final byte[] row = new byte[previousRow.length];
+				random.nextBytes(previousRow);
+				random.nextBytes(row);
+				row[0] = filterType.getValue();
+
+				final byte[] expected = new byte[row.length];
+				expected[0] = row[0];
+				for (int x = 1; x < row.length; x++) {
+					final int a = (x > bpp) ? row[x - bpp] & 0xff : 0;
+					final int b = previousRow[x] & 0xff;
+					final int c = (x > bpp) ? previousRow[x - bpp] & 0xff : 0;
+					expected[x] = (byte) (row[x] - predictor(filterType, a, b, c));
+				}
+
+				final String message = filterType + " bpp " + bpp;
+				final byte[] filtered = row.clone();
+				filterHandler.filter(filtered, previousRow, sampleBitCount);
+				assertArrayEquals(expected, filtered, message);
+				filterHandler.deFilter(filtered, previousRow, sampleBitCount);
+				assertArrayEquals(row, filtered, message);
+			}
+		}
+	}
+
+	/* the predictors as the png spec defines them */
+	private static int predictor(PngFilterType filterType, int a, int b, int c) {
+		switch (filterType) {
+			case SUB:
+				return a;
+			case UP:
+				return b;
+			case AVERAGE:
+				return (a + b) / 2;
+			case PAETH:
+				final int p = a + b - c;
+				final int pa = Math.abs(p - a);
+				final int pb = Math.abs(p - b);
+				final int pc = Math.abs(p - c);
+				return (pa <= pb && pa <= pc) ? a : (pb <= pc) ? b : c;
+			default:
+				return 0;
+		}
+	}
+
+	@Test
+	void defaultRasterRoundTrip() {
+		// a handler that only implements the per line methods gets the raster ones from the interface
+		final PngFilterHandler lines = new PngtasticFilterHandler();
+		rasterRoundTrip(new PngFilterHandler() {
+			@Override
+			public void applyFiltering(PngFilterType filterType, List<byte[]> scanlines, int sampleBitCount) {
+				lines.applyFiltering(filterType, scanlines, sampleBitCount);
+			}
+
+			@Override
+			public void applyAdaptiveFiltering(PngByteArrayOutputStream inflatedImageData, List<byte[]> scanlines, Map<PngFilterType, List<byte[]>> filteredScanLines, int sampleSize) throws IOException {
+				lines.applyAdaptiveFiltering(inflatedImageData, scanlines, filteredScanLines, sampleSize);
+			}
+
+			@Override
+			public void filter(byte[] line, byte[] previousLine, int sampleBitCount) {
+				lines.filter(line, previousLine, sampleBitCount);
+			}
+
+			@Override
+			public void deFilter(byte[] line, byte[] previousLine, int sampleBitCount) {
+				lines.deFilter(line, previousLine, sampleBitCount);
+			}
+		});
+	}
+
+	/* filters random rasters in place and checks they match the rows filtered one by one, then defilters them */
+	private void rasterRoundTrip(PngFilterHandler filterHandler) {
+		final Random random = new Random(0);
+		for (int sampleBitCount : new int[] { 1, 8, 16, 24, 32, 48, 64 }) {
+			final int bpp = Math.max(1, sampleBitCount / 8);
+			for (PngFilterType filterType : PngFilterType.standardValues()) {
+				final List<byte[]> scanlines = new ArrayList<>();
+				for (int y = 0; y < 9; y++) {
+					final byte[] row = new byte[1 + bpp * 37];
+					random.nextBytes(row);
+					scanlines.add(row);
+				}
+				final PngRaster raster = PngRaster.of(scanlines);
+				final PngRaster original = raster.copy();
+				final String message = filterHandler.getClass().getSimpleName() + " " + filterType + " bpp " + bpp;
+
+				filterHandler.applyFiltering(filterType, raster, sampleBitCount);
+				filterHandler.applyFiltering(filterType, scanlines, sampleBitCount);
+				assertArrayEquals(PngRaster.of(scanlines).data(), raster.data(), message);
+
+				filterHandler.deFilter(raster, sampleBitCount);
+				for (int y = 0; y < raster.height(); y++) {
+					assertArrayEquals(Arrays.copyOfRange(original.row(y), 1, raster.rowLength()), Arrays.copyOfRange(raster.row(y), 1, raster.rowLength()), message + " row " + y);
+				}
+			}
+		}
+	}
+
+	@Test
+	void bruteForceRoundTrip() {
+		final PngtasticFilterHandler filterHandler = new PngtasticFilterHandler();
+		final Random random = new Random(0);
+
+		// vertical gradients with a little noise, which SUB and UP compress very differently
+		final List<byte[]> scanlines = new ArrayList<>();
+		final List<byte[]> filtered = new ArrayList<>();
+		for (int y = 0; y < 64; y++) {
+			final byte[] row = new byte[1 + 3 * 400];
+			for (int x = 1; x < row.length; x++) {
+				row[x] = (byte) (y * 3 + x % 3 + ((y % 8 == 0) ? random.nextInt(4) : 0));
+			}
+			scanlines.add(row);
+			filtered.add(row.clone());
+		}
+		filterHandler.applyFiltering(PngFilterType.BRUTE_FORCE, filtered, 24);
+
+		byte[] previousRow = new byte[scanlines.get(0).length];
+		boolean anyFiltered = false;
+		for (int y = 0; y < filtered.size(); y++) {
+			final byte[] row = filtered.get(y).clone();
+			assertTrue(row[0] >= PngFilterType.NONE.getValue() && row[0] <= PngFilterType.PAETH.getValue());
+			anyFiltered |= row[0] != PngFilterType.NONE.getValue();
+			filterHandler.deFilter(row, previousRow, 24);
+			assertArrayEquals(Arrays.copyOfRange(scanlines.get(y), 1, row.length), Arrays.copyOfRange(row, 1, row.length), "row " + y);
+			previousRow = row;
+		}
+		assertTrue(anyFiltered);
+	}
+
+	@Test
+	void scorers() {
+		// the filter type byte isn't scored
+		final byte[] constant = { 4, 7, 7, 7, 7 };
+		final byte[] mixed = { 0, -1, 2, -1, 2 };
+		assertEquals(28, FilterScorers.MIN_SUM_ABS.score(constant));
+		assertEquals(6, FilterScorers.MIN_SUM_ABS.score(mixed));
+		assertEquals(0, FilterScorers.ENTROPY.score(constant));
+		assertEquals(4, FilterScorers.ENTROPY.score(mixed), 1e-9);
+		assertEquals(0, FilterScorers.BIGRAM_ENTROPY.score(constant));
+		assertEquals(3 * Math.log(3) / Math.log(2) - 2, FilterScorers.BIGRAM_ENTROPY.score(mixed), 1e-9);
+		assertEquals(1, FilterScorers.DISTINCT_BYTES.score(constant));
+		assertEquals(2, FilterScorers.DISTINCT_BYTES.score(mixed));
+
+		// the counts are cleared again
+		assertEquals(4, FilterScorers.ENTROPY.score(mixed), 1e-9);
+		assertEquals(0, FilterScorers.BIGRAM_ENTROPY.score(constant));
+
+		final PngtasticFilterHandler filterHandler = new PngtasticFilterHandler();
+		final Random random = new Random(0);
+		for (FilterScorer scorer : new FilterScorer[] { FilterScorers.MIN_SUM_ABS, FilterScorers.ENTROPY, FilterScorers.BIGRAM_ENTROPY, FilterScorers.DISTINCT_BYTES }) {
+			final List<byte[]> scanlines = new ArrayList<>();
+			for (int y = 0; y < 16; y++) {
+				final byte[] row = new byte[1 + 4 * 50];
+				for (int x = 1; x < row.length; x++) {
+					row[x] = (byte) ((y % 4 == 0) ? random.nextInt(256) : x * y);
+				}
+				scanlines.add(row);
+			}
+
+			final Map<PngFilterType, List<byte[]>> filteredScanlines = new LinkedHashMap<>();
+			for (PngFilterType filterType : PngFilterType.standardValues()) {
+				final List<byte[]> filtered = copy(scanlines);
+				filterHandler.applyFiltering(filterType, filtered, 32);
+				filteredScanlines.put(filterType, filtered);
+			}
+			final List<byte[]> filtered = copy(scanlines);
+			filterHandler.applyAdaptiveFiltering(filtered, filteredScanlines, 32, scorer);
+
+			byte[] previousRow = new byte[scanlines.get(0).length];
+			for (int y = 0; y < filtered.size(); y++) {
+				final byte[] row = filtered.get(y).clone();
+				assertArrayEquals(filteredScanlines.get(PngFilterType.forValue(row[0])).get(y), row);
+				filterHandler.deFilter(row, previousRow, 32);
+				assertArrayEquals(Arrays.copyOfRange(scanlines.get(y), 1, row.length), Arrays.copyOfRange(row, 1, row.length));
+				previousRow = row;
+			}
+		}
+	}
+
+	/* */
+	private static List<byte[]> copy(List<byte[]> scanlines) {
+		final List<byte[]> copy = new ArrayList<>(scanlines.size());
+		for (byte[] scanline : scanlines) {
+			copy.add(scanline.clone());
+		}
+		return copy;
+	}
+
+	/* filters random lines of every filter type and bpp, then checks that defiltering restores them */
+	private void filterRoundTrip(PngFilterHandler filterHandler) {
+		final Random random = new Random(0);
+
+		// 1 bit greyscale, then 1, 2, 3, 4, 6 and 8 bytes per pixel
+		for (int sampleBitCount : new int[] { 1, 8, 16, 24, 32, 48, 64 }) {
+			final int bpp = Math.max(1, sampleBitCount / 8);
+			for (PngFilterType filterType : PngFilterType.standardValues()) {
+				final List<byte[]> scanlines = new ArrayList<>();
+				final List<byte[]> filtered = new ArrayList<>();
+				for (int y = 0; y < 9; y++) {
+					final byte[] row = new byte[1 + bpp * 37];
+					random.nextBytes(row);
+					row[0] = filterType.getValue();
+					scanlines.add(row);
+					filtered.add(row.clone());
+				}
+				filterHandler.applyFiltering(filterType, filtered, sampleBitCount);
+
+				byte[] previousRow = new byte[scanlines.get(0).length];
+				for (int y = 0; y < filtered.size(); y++) {
+					final byte[] row = filtered.get(y).clone();
+					filterHandler.deFilter(row, previousRow, sampleBitCount);
+					assertArrayEquals(scanlines.get(y), row, filterHandler.getClass().getSimpleName() + " " + filterType + " bpp " + bpp + " row " + y);
+					previousRow = row;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package me.andreroldan.featherpng.processing;
+
+import me.andreroldan.featherpng.processing.zopfli.CookiePool;
+import me.andreroldan.featherpng.processing.zopfli.Options;
+import me.andreroldan.featherpng.processing.zopfli.ZopfliStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ *
+ */
+class ZopfliCompressionHandlerTest {
+	@Test
+	void concurrentMatchesSerial() throws Exception {
+		final byte[] data = data();
+		final PngByteArrayOutputStream inflated = new PngByteArrayOutputStream(data);
+
+		final ZopfliCompressionHandler handler = new ZopfliCompressionHandler(1,
+				new CookiePool(1 << 20, 4, 0, 0, TimeUnit.SECONDS), PngExecutors.newBoundedExecutor(4, 16));
+		final byte[] serial = handler.deflate(inflated, null, false);
+		final byte[] concurrent = handler.deflate(inflated, null, true);
+		assertArrayEquals(serial, concurrent);
+
+		final Inflater inflater = new Inflater();
+		inflater.setInput(concurrent);
+		final byte[] result = new byte[data.length + 1];
+		final int length = inflater.inflate(result);
+		inflater.end();
+		assertTrue(inflater.finished());
+		assertArrayEquals(data, Arrays.copyOf(result, length));
+	}
+
+	@Test
+	void sharedByThreads() throws Exception {
+		final PngByteArrayOutputStream inflated = new PngByteArrayOutputStream(data());
+		final CookiePool cookies = new CookiePool(1 << 20, 2, 0, 0, TimeUnit.SECONDS);
+		final ZopfliCompressionHandler handler = new ZopfliCompressionHandler(1, cookies, Runnable::run);
+		final byte[] expected = handler.deflate(inflated, null, false);
+
+		final ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<byte[]>> results = new ArrayList<>();
+			for (int i = 0; i < 6; i++) {
+				final boolean concurrent = i % 2 == 0;
+				results.add(threads.submit(() -> handler.deflate(inflated, null, concurrent)));
+			}
+			for (Future<byte[]> result : results) {
+				assertArrayEquals(expected, result.get());
+			}
+		} finally {
+			threads.shutdown();
+		}
+		assertTrue(cookies.size() <= 2);
+	}
+
+	@Test
+	void reportsIterations() throws Exception {
+		final CookiePool cookies = new CookiePool(1 << 20, 1, 0, 0, TimeUnit.SECONDS);
+		final PngByteArrayOutputStream inflated = new PngByteArrayOutputStream(data());
+
+		final ZopfliStats fixed = new ZopfliStats();
+		new ZopfliCompressionHandler(5, cookies, Runnable::run).deflate(inflated, false, fixed);
+		assertEquals(5 * fixed.bestCosts().size(), fixed.iterations());
+
+		// no iteration improves by all of the cost, so every block stops after its second one
+		final ZopfliStats adaptive = new ZopfliStats();
+		final Options options = new Options(Options.OutputFormat.ZLIB, Options.BlockSplitting.FIRST, 5, 0, 1.0, 0);
+		new ZopfliCompressionHandler(options, cookies, Runnable::run).deflate(inflated, false, adaptive);
+		assertEquals(fixed.bestCosts().size(), adaptive.bestCosts().size());
+		for (int[] costs : adaptive.bestCosts()) {
+			assertEquals(2, costs.length);
+			assertTrue(costs[1] <= costs[0]);
+		}
+	}
+
+	@Test
+	void stopsOnTheTimeBudget() throws Exception {
+		final CookiePool cookies = new CookiePool(1 << 20, 1, 0, 0, TimeUnit.SECONDS);
+		final byte[] data = data();
+
+		// far more iterations than a millisecond allows, but every block still runs one
+		final ZopfliStats stats = new ZopfliStats();
+		final Options options = new Options(Options.OutputFormat.ZLIB, Options.BlockSplitting.FIRST, 1000, 1, 0, 0);
+		final byte[] deflated = new ZopfliCompressionHandler(options, cookies, Runnable::run).deflate(new PngByteArrayOutputStream(data), false, stats);
+		assertTrue(stats.isTimeBudgetSpent());
+		assertTrue(stats.bestCosts().size() > 1);
+		for (int[] costs : stats.bestCosts()) {
+			assertTrue(costs.length >= 1);
+		}
+		assertTrue(stats.iterations() < 1000 * stats.bestCosts().size());
+		assertArrayEquals(data, inflate(deflated, data.length));
+	}
+
+	@Test
+	void sharesIterationsPerMasterBlock() throws Exception {
+		final CookiePool cookies = new CookiePool(1 << 20, 1, 0, 0, TimeUnit.SECONDS);
+		final PngByteArrayOutputStream inflated = new PngByteArrayOutputStream(data());
+
+		// the data is a single master block, whose blocks share 8 iterations by size, rounded down
+		final ZopfliStats shared = new ZopfliStats();
+		Options options = new Options(Options.OutputFormat.ZLIB, Options.BlockSplitting.FIRST, 50, 0, 0, 8);
+		new ZopfliCompressionHandler(options, cookies, Runnable::run).deflate(inflated, false, shared);
+		final int blocks = shared.bestCosts().size();
+		assertTrue(blocks > 1);
+		assertTrue(shared.iterations() <= 8 + blocks, shared.iterations() + " iterations in " + blocks + " blocks");
+		for (int[] costs : shared.bestCosts()) {
+			assertTrue(costs.length >= 1);
+		}
+
+		// a share of less than one still gets an iteration
+		final ZopfliStats floor = new ZopfliStats();
+		options = new Options(Options.OutputFormat.ZLIB, Options.BlockSplitting.FIRST, 50, 0, 0, 1);
+		new ZopfliCompressionHandler(options, cookies, Runnable::run).deflate(inflated, false, floor);
+		assertEquals(blocks, floor.bestCosts().size());
+		assertEquals(blocks, floor.iterations());
+	}
+
+	/* */
+	private static byte[] inflate(byte[] deflated, int length) throws Exception {
+		final Inflater inflater = new Inflater();
+		inflater.setInput(deflated);
+		final byte[] result = new byte[length + 1];
+		final int inflatedLength = inflater.inflate(result);
+		assertTrue(inflater.finished());
+		inflater.end();
+		return Arrays.copyOf(result, inflatedLength);
+	}
+
+	/* runs of noise, gradients and repeats, so the data is split into several blocks */
+	private static byte[] data() {
+		final Random random = new Random(0);
+		final byte[] data = new byte[96 * 1024];
+		for (int offset = 0; offset < data.length; offset += 8 * 1024) {
+			for (int i = offset; i < offset + 8 * 1024; i++) {
+				switch ((offset >> 13) % 3) {
+					case 0: data[i] = (byte) random.nextInt(256); break;
+					case 1: data[i] = (byte) (i >> 4); break;
+					default: data[i] = (byte) (i % 7); break;
+				}
+			}
+		}
+		return data;
+	}
+}